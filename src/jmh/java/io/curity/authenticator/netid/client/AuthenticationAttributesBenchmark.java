@@ -0,0 +1,70 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.client;
+
+import com.secmaker.netid.nias.DeviceInfoType;
+import com.secmaker.netid.nias.ResultCollect;
+import com.secmaker.netid.nias.UserInfoType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures turning a completed collect into authentication attributes, which is done once per login.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AuthenticationAttributesBenchmark
+{
+    private ResultCollect _resultCollect;
+
+    @Setup
+    public void setUp()
+    {
+        var userInfo = new UserInfoType();
+        userInfo.setPersonalNumber("198212311234");
+        userInfo.setGivenName("Anna");
+        userInfo.setSurname("Andersson");
+        userInfo.setName("Anna Andersson");
+        userInfo.setUserUniqueName("anna.andersson");
+        userInfo.setNotBefore("2022-01-01T00:00:00Z");
+        userInfo.setNotAfter("2027-01-01T00:00:00Z");
+        userInfo.setThumbprint("3F8A2C");
+
+        var deviceInfo = new DeviceInfoType();
+        deviceInfo.setName("tPhone");
+        deviceInfo.setAddress("1.2.3.4");
+
+        _resultCollect = new ResultCollect();
+        _resultCollect.setProgressStatus(CollectStatus.COMPLETE.name());
+        _resultCollect.setUserInfo(userInfo);
+        _resultCollect.setDeviceInfo(deviceInfo);
+    }
+
+    @Benchmark
+    public NetIdAccessAuthenticationAttributes of()
+    {
+        return NetIdAccessAuthenticationAttributes.of(_resultCollect);
+    }
+}
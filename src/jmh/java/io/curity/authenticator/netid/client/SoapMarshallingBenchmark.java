@@ -0,0 +1,113 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.client;
+
+import com.secmaker.netid.nias.Collect;
+import com.secmaker.netid.nias.CollectResponse;
+import com.secmaker.netid.nias.ResultCollect;
+import com.secmaker.netid.nias.UserInfoType;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the (un)marshalling of the payloads of a collect, which JAX-WS does for every poll.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SoapMarshallingBenchmark
+{
+    private Marshaller _marshaller;
+    private Unmarshaller _unmarshaller;
+    private Collect _collect;
+    private byte[] _pendingResponse;
+    private byte[] _completedResponse;
+
+    @Setup
+    public void setUp() throws JAXBException
+    {
+        var context = JAXBContext.newInstance(Collect.class, CollectResponse.class);
+        _marshaller = context.createMarshaller();
+        _unmarshaller = context.createUnmarshaller();
+
+        _collect = new Collect();
+        _collect.setOrderRef("131daac9-16c6-4618-beb0-365768f37288");
+
+        var pending = new ResultCollect();
+        pending.setProgressStatus(CollectStatus.USER_SIGN.name());
+        _pendingResponse = marshal(response(pending));
+
+        var userInfo = new UserInfoType();
+        userInfo.setPersonalNumber("198212311234");
+        userInfo.setGivenName("Anna");
+        userInfo.setSurname("Andersson");
+        userInfo.setCertificate("MIIF" + "A".repeat(2000));
+        var completed = new ResultCollect();
+        completed.setProgressStatus(CollectStatus.COMPLETE.name());
+        completed.setUserInfo(userInfo);
+        completed.setSignature("PD94" + "B".repeat(6000));
+        completed.setOcspResponse("MIIH" + "C".repeat(2500));
+        _completedResponse = marshal(response(completed));
+    }
+
+    @Benchmark
+    public byte[] marshalCollect() throws JAXBException
+    {
+        return marshal(_collect);
+    }
+
+    @Benchmark
+    public Object unmarshalPendingResponse() throws JAXBException
+    {
+        return _unmarshaller.unmarshal(new ByteArrayInputStream(_pendingResponse));
+    }
+
+    @Benchmark
+    public Object unmarshalCompletedResponse() throws JAXBException
+    {
+        return _unmarshaller.unmarshal(new ByteArrayInputStream(_completedResponse));
+    }
+
+    private byte[] marshal(Object payload) throws JAXBException
+    {
+        var outputStream = new ByteArrayOutputStream(512);
+        _marshaller.marshal(payload, outputStream);
+
+        return outputStream.toByteArray();
+    }
+
+    private static CollectResponse response(ResultCollect result)
+    {
+        var response = new CollectResponse();
+        response.setCollectResult(result);
+
+        return response;
+    }
+}
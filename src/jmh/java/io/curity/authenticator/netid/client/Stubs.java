@@ -0,0 +1,58 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.client;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Stubs of SDK services, for benchmarks that run outside of the Curity Identity Server.
+ */
+final class Stubs
+{
+    private Stubs()
+    {
+    }
+
+    /**
+     * @param type    the interface to stub
+     * @param methods implementations of methods by name, given the arguments of the call. Other methods return null.
+     * @return a stub of the interface
+     */
+    static <T> T of(Class<T> type, Map<String, Function<Object[], Object>> methods)
+    {
+        Object stub = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) ->
+        {
+            switch (method.getName())
+            {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Stub of " + type.getSimpleName();
+                default:
+                    var implementation = methods.get(method.getName());
+
+                    return implementation == null ? null : implementation.apply(args);
+            }
+        });
+
+        return type.cast(stub);
+    }
+}
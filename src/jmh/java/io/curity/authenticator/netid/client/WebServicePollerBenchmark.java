@@ -0,0 +1,127 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.client;
+
+import com.google.common.base.Ticker;
+import io.curity.authenticator.netid.metrics.InMemoryMetricsRegistry;
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics;
+import io.curity.authenticator.netid.model.PollerPaths;
+import io.curity.authenticator.netid.tracing.Tracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import se.curity.identityserver.sdk.attribute.Attribute;
+import se.curity.identityserver.sdk.authentication.AuthenticatedState;
+import se.curity.identityserver.sdk.authentication.AuthenticationResult;
+import se.curity.identityserver.sdk.service.ExceptionFactory;
+import se.curity.identityserver.sdk.service.SessionManager;
+import se.curity.identityserver.sdk.service.authentication.AuthenticatorInformationProvider;
+import se.curity.identityserver.sdk.web.Response;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.ORDER_REF;
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.USE_SAME_DEVICE;
+
+/**
+ * Measures a poll of a transaction that is still pending, which is what almost every request to the poller is. The
+ * session is kept in memory and the server answers right away, so this is the overhead of the plugin itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WebServicePollerBenchmark
+{
+    private static final URI AUTHENTICATION_URI = URI.create("https://login.example.com/authn/authentication/netid");
+
+    private WebServicePoller _poller;
+    private Response _response;
+
+    @Setup
+    public void setUp()
+    {
+        Map<String, Attribute> session = new HashMap<>();
+        session.put(ORDER_REF, Attribute.of(ORDER_REF, "131daac9-16c6-4618-beb0-365768f37288"));
+        session.put(USE_SAME_DEVICE, Attribute.of(USE_SAME_DEVICE, true));
+
+        var sessionManager = Stubs.of(SessionManager.class, Map.of(
+                "get", args -> session.get((String) args[0]),
+                "put", args -> session.put(((Attribute) args[0]).getName().getValue(), (Attribute) args[0]),
+                "remove", args -> session.remove((String) args[0])));
+        var informationProvider = Stubs.of(AuthenticatorInformationProvider.class, Map.of(
+                "getFullyQualifiedAuthenticationUri", args -> AUTHENTICATION_URI));
+        var pendingResponse = new CollectResponse(CollectStatus.USER_SIGN);
+        var pollingClient = new PollingClient()
+        {
+            @Override
+            public AuthenticateResponse authenticate(String personalNumber, boolean useSameDevice)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public CollectResponse poll(String transactionId)
+            {
+                return pendingResponse;
+            }
+
+            @Override
+            public String getServiceName()
+            {
+                return "Benchmark";
+            }
+        };
+
+        // A second passes between polls, so that they are never throttled
+        var ticker = new Ticker()
+        {
+            private long _now;
+
+            @Override
+            public long read()
+            {
+                return _now += TimeUnit.SECONDS.toNanos(1);
+            }
+        };
+
+        _poller = new WebServicePoller(
+                pollingClient,
+                new TransactionRegistry(ticker),
+                new NetIdAccessMetrics(new InMemoryMetricsRegistry()),
+                Tracer.NOOP,
+                PollerPaths.getDefault(),
+                sessionManager,
+                informationProvider,
+                Stubs.of(ExceptionFactory.class, Map.of()),
+                Stubs.of(AuthenticatedState.class, Map.of()),
+                CustomPollerStatusCodes.INSTANCE);
+        _response = Stubs.of(Response.class, Map.of());
+    }
+
+    @Benchmark
+    public AuthenticationResult pollPendingTransaction()
+    {
+        return _poller.getAuthenticationResult(false, _response);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.model;
+
+import io.curity.authenticator.netid.client.CollectStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building the response model of a pending poll on every request with looking it up in
+ * {@link PollingResults}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PollingResultsBenchmark
+{
+    @Param({"true", "false"})
+    public boolean useSameDevice;
+
+    private URI _authenticationUri;
+    private PollerPaths _pollerPaths;
+    private CollectStatus _status;
+
+    @Setup
+    public void setUp()
+    {
+        _authenticationUri = URI.create("https://login.example.com/authn/authentication/netid");
+        _pollerPaths = PollerPaths.getDefault();
+        _status = CollectStatus.OUTSTANDING_TRANSACTION;
+    }
+
+    @Benchmark
+    public Map<String, Object> buildPendingOnEveryPoll()
+    {
+        String messageId = useSameDevice ? _status.getSameDeviceMessageId() : _status.getOtherDeviceMessageId();
+        var pollUrl = _authenticationUri + "/" + _pollerPaths.getPollerPath();
+        var cancelUrl = _authenticationUri + "/" + _pollerPaths.getCancelPath();
+
+        return new PollingResult.Pending(messageId, pollUrl, cancelUrl).getViewData();
+    }
+
+    @Benchmark
+    public Map<String, Object> lookUpPrecomputedPending()
+    {
+        return PollingResults.of(_authenticationUri, _pollerPaths).pending(_status, useSameDevice).getViewData();
+    }
+}
@@ -18,14 +18,28 @@ package io.curity.authenticator.netid;
 
 import com.secmaker.netid.nias.NetiDAccessServer;
 import com.secmaker.netid.nias.NetiDAccessServerSoap;
+import io.curity.authenticator.netid.balancing.EndpointBalancer;
+import io.curity.authenticator.netid.balancing.HealthChecker;
+import io.curity.authenticator.netid.balancing.NetIdAccessEndpoint;
+import io.curity.authenticator.netid.balancing.RequestTimeouts;
+import io.curity.authenticator.netid.capture.WireCapture;
+import io.curity.authenticator.netid.capture.WireCaptureHandler;
+import io.curity.authenticator.netid.client.Bulkhead;
+import io.curity.authenticator.netid.client.HedgeBudget;
+import io.curity.authenticator.netid.client.TransactionRegistry;
 import io.curity.authenticator.netid.config.NetIdAccessConfig;
-import jakarta.xml.soap.SOAPMessage;
+import io.curity.authenticator.netid.metrics.Diagnostics;
+import io.curity.authenticator.netid.metrics.InMemoryMetricsRegistry;
+import io.curity.authenticator.netid.metrics.JmxMetricsExporter;
+import io.curity.authenticator.netid.metrics.MetricsRegistry;
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics;
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics.Operation;
+import io.curity.authenticator.netid.tracing.LoggingSpanExporter;
+import io.curity.authenticator.netid.tracing.TraceContextHandler;
+import io.curity.authenticator.netid.tracing.Tracer;
 import jakarta.xml.ws.Binding;
 import jakarta.xml.ws.BindingProvider;
 import jakarta.xml.ws.handler.Handler;
-import jakarta.xml.ws.handler.MessageContext;
-import jakarta.xml.ws.handler.soap.SOAPHandler;
-import jakarta.xml.ws.handler.soap.SOAPMessageContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.curity.identityserver.sdk.ClassLoaderContextUtils;
@@ -40,43 +54,76 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
-import javax.xml.namespace.QName;
-import java.io.ByteArrayOutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
-import java.util.Collections;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
 
 import static javax.net.ssl.KeyManagerFactory.getDefaultAlgorithm;
 
 public final class NetIdAccessServerSoapClient extends ManagedObject<NetIdAccessConfig>
 {
-    private NetiDAccessServerSoap _netIDAccessServerSoap = null;
+    @Nullable
+    private EndpointBalancer _endpointBalancer = null;
+    @Nullable
+    private HealthChecker _healthChecker = null;
     private final NetIdAccessConfig _config;
+    private final TransactionRegistry _transactionRegistry = new TransactionRegistry();
+    private final NetIdAccessMetrics _metrics;
+    private final JmxMetricsExporter _metricsExporter;
+    private final WireCapture _wireCapture;
+    private final Tracer _tracer;
+    @Nullable
+    private final HedgeBudget _hedgeBudget;
+    private final Map<Operation, Bulkhead> _bulkheads = new EnumMap<>(Operation.class);
 
     private final ClassLoaderContextUtils _classLoaderContextUtils;
     private static final Logger _logger = LoggerFactory.getLogger(NetIdAccessServerSoapClient.class);
 
     private static final String JAXWS_PROPERTIES_SSL_SOCKET_FACTORY = "com.sun.xml.ws.transport.https.client.SSLSocketFactory";
-    private static final String JAXWS_PROPERTIES_CONNECT_TIMEOUT = "com.sun.xml.ws.connect.timeout";
-    private static final String JAXWS_PROPERTIES_REQUEST_TIMEOUT = "com.sun.xml.ws.request.timeout";
-
-    // Generous timeouts; we only want to make sure that the requesting thread isn't consumed indefinitely.
-    private static final int CONNECT_TIMEOUT = 3000;
-    private static final int REQUEST_TIMEOUT = 10000;
 
     public NetIdAccessServerSoapClient(NetIdAccessConfig configuration)
+    {
+        this(configuration, new InMemoryMetricsRegistry());
+    }
+
+    /**
+     * @param configuration the configuration of the authenticator
+     * @param registry      where the metrics of the authenticator are kept
+     */
+    public NetIdAccessServerSoapClient(NetIdAccessConfig configuration, MetricsRegistry registry)
     {
         super(configuration);
         _config = configuration;
+        _metrics = new NetIdAccessMetrics(registry);
         _classLoaderContextUtils = new ClassLoaderContextUtils(this.getClass().getClassLoader());
+        // Trace logging used to log every message in full, so capture them all if nothing else is configured
+        _wireCapture = new WireCapture(
+                configuration.getWireCaptureSamplePercent() == 0 && _logger.isTraceEnabled()
+                        ? 100
+                        : configuration.getWireCaptureSamplePercent(),
+                configuration.getWireCaptureMaxBytes());
+        _metricsExporter = JmxMetricsExporter.register(_metrics.getRegistry(),
+                configuration.isEnableDiagnostics() ? this::getDiagnostics : null,
+                _wireCapture.isDisabled() ? null : _wireCapture::dumpText, configuration.id());
+        _tracer = configuration.isEnableTracing() ? new Tracer(new LoggingSpanExporter()) : Tracer.NOOP;
+        _hedgeBudget = configuration.getHedgeBudgetPercent() > 0
+                ? new HedgeBudget(configuration.getHedgeBudgetPercent())
+                : null;
+        _bulkheads.put(Operation.AUTHENTICATE, new Bulkhead("authenticate",
+                configuration.getAuthenticateMaxConcurrentCalls(), configuration.getAuthenticateMaxQueuedCalls(),
+                _metrics.getRegistry()));
+        _bulkheads.put(Operation.COLLECT, new Bulkhead("collect",
+                configuration.getCollectMaxConcurrentCalls(), configuration.getCollectMaxQueuedCalls(),
+                _metrics.getRegistry()));
     }
 
     private SSLSocketFactory getSSLSocketFactory(Optional<ServerTrustCryptoStore> maybeTrustStore, Optional<ClientKeyCryptoStore> maybeClientKeyStore)
@@ -120,79 +167,41 @@ public final class NetIdAccessServerSoapClient extends ManagedObject<NetIdAccess
     }
 
     private void configureWebserviceClient(BindingProvider bindingProvider,
+                                           String endpointAddress,
                                            SSLSocketFactory socketFactory)
     {
         var bindingProviderRequestContext = bindingProvider.getRequestContext();
 
         //Override the endpoint in the WSDL with the configured endpoint
-        bindingProviderRequestContext.put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, buildEndpointAddress());
-
-        bindingProviderRequestContext.put(JAXWS_PROPERTIES_CONNECT_TIMEOUT, CONNECT_TIMEOUT);
-        bindingProviderRequestContext.put(JAXWS_PROPERTIES_REQUEST_TIMEOUT, REQUEST_TIMEOUT);
+        bindingProviderRequestContext.put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, endpointAddress);
 
         if (!_config.isDisableHttps())
         {
             bindingProvider.getRequestContext().put(JAXWS_PROPERTIES_SSL_SOCKET_FACTORY, socketFactory);
         }
 
-        if (_logger.isTraceEnabled())
+        Binding binding = bindingProvider.getBinding();
+        @SuppressWarnings("rawtypes") List<Handler> handlerChain = binding.getHandlerChain();
+
+        if (_tracer != Tracer.NOOP)
         {
-            Binding binding = bindingProvider.getBinding();
-            @SuppressWarnings("rawtypes") List<Handler> handlerChain = binding.getHandlerChain();
+            handlerChain.add(new TraceContextHandler());
+        }
 
-            handlerChain.add(new SOAPHandler<>()
-            {
-                @Override
-                public boolean handleMessage(SOAPMessageContext context)
-                {
-                    return _classLoaderContextUtils.withPluginClassLoader(() -> {
-                        SOAPMessage soapMessage = context.getMessage();
-
-                        try
-                        {
-                            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-
-                            soapMessage.writeTo(outputStream);
-
-                            _logger.trace(outputStream.toString(StandardCharsets.UTF_8));
-                        }
-                        catch (Exception ex)
-                        {
-                            _logger.debug("Could not log SOAP message", ex);
-                        }
-
-                        return true;
-                    });
-                }
-
-                @Override
-                public boolean handleFault(SOAPMessageContext context)
-                {
-                    return true;
-                }
-
-                @Override
-                public void close(MessageContext context)
-                {
-                }
-
-                @Override
-                public Set<QName> getHeaders()
-                {
-                    return Collections.emptySet();
-                }
-            });
-
-            binding.setHandlerChain(handlerChain);
+        if (!_wireCapture.isDisabled())
+        {
+            handlerChain.add(new WireCaptureHandler(_wireCapture, _classLoaderContextUtils));
         }
+
+        binding.setHandlerChain(handlerChain);
     }
 
-    private String buildEndpointAddress()
+    private String buildEndpointAddress(String hostName, int port, String path)
     {
         var scheme = _config.isDisableHttps() ? "http" : "https";
         try
         {
-            return new URL(scheme, _config.getHostName(), _config.getPort(), _config.getPath()).toString();
+            return new URL(scheme, hostName, port, path).toString();
         }
         catch (MalformedURLException e)
         {
@@ -200,21 +209,111 @@ public final class NetIdAccessServerSoapClient extends ManagedObject<NetIdAccess
         }
     }
 
-    public NetiDAccessServerSoap getNetIDAccessServerSoap(Optional<ServerTrustCryptoStore> maybeTrustStore, Optional<ClientKeyCryptoStore> maybeClientKeyStore)
+    public TransactionRegistry getTransactionRegistry()
+    {
+        return _transactionRegistry;
+    }
+
+    public NetIdAccessMetrics getMetrics()
+    {
+        return _metrics;
+    }
+
+    public Tracer getTracer()
+    {
+        return _tracer;
+    }
+
+    /**
+     * @return the diagnostics of the calls to the Net iD Access service on this node
+     * @see Diagnostics
+     */
+    public synchronized Map<String, Object> getDiagnostics()
+    {
+        return Diagnostics.of(_metrics, _transactionRegistry, _endpointBalancer);
+    }
+
+    /**
+     * @param operation an operation of the Net iD Access service
+     * @return the executor to make the calls of the operation with, shared by all requests on this node
+     */
+    public Bulkhead getBulkhead(Operation operation)
     {
-        if (_netIDAccessServerSoap == null)
+        return _bulkheads.get(operation);
+    }
+
+    /**
+     * @return the budget of hedged collects, shared by all requests on this node, or null if collects are not hedged
+     */
+    @Nullable
+    public HedgeBudget getHedgeBudget()
+    {
+        return _hedgeBudget;
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        _metricsExporter.close();
+        _bulkheads.values().forEach(Bulkhead::close);
+
+        if (_healthChecker != null)
         {
-            _netIDAccessServerSoap = _classLoaderContextUtils.withPluginClassLoader(() -> {
-                NetiDAccessServer accessServer = new NetiDAccessServer();
-                NetiDAccessServerSoap proxy = accessServer.getNetiDAccessServerSoap();
-                configureWebserviceClient(
-                        (BindingProvider) proxy,
-                        getSSLSocketFactory(maybeTrustStore, maybeClientKeyStore)
-                );
-                return proxy;
-            });
+            _healthChecker.close();
         }
+    }
 
-        return _netIDAccessServerSoap;
+    /**
+     * Get the Net iD Access servers to call: the configured one first, followed by any additional ones.
+     */
+    public synchronized EndpointBalancer getEndpoints(Optional<ServerTrustCryptoStore> maybeTrustStore,
+                                                      Optional<ClientKeyCryptoStore> maybeClientKeyStore)
+    {
+        if (_endpointBalancer == null)
+        {
+            var socketFactory = getSSLSocketFactory(maybeTrustStore, maybeClientKeyStore);
+            // Parsing the WSDL is expensive, so the proxies of all servers are created from the same service
+            NetiDAccessServer accessServer = _classLoaderContextUtils.withPluginClassLoader(() -> new NetiDAccessServer());
+            List<NetIdAccessEndpoint> endpoints = new ArrayList<>();
+            var timeouts = new RequestTimeouts(
+                    Duration.ofMillis(_config.getConnectTimeout()),
+                    Duration.ofMillis(_config.getAuthenticateTimeout()),
+                    Duration.ofMillis(_config.getCollectTimeout()),
+                    _config.isAdaptiveTimeouts(),
+                    Duration.ofMillis(_config.getAdaptiveTimeoutMinimum()));
+
+            endpoints.add(createEndpoint(accessServer, _config.getHostName(), _config.getPort(), _config.getPath(),
+                    timeouts, socketFactory));
+
+            for (NetIdAccessConfig.AdditionalServer server : _config.getAdditionalServers())
+            {
+                endpoints.add(createEndpoint(accessServer, server.getHostName(), server.getPort(), server.getPath(),
+                        timeouts, socketFactory));
+            }
+
+            _endpointBalancer = new EndpointBalancer(endpoints);
+
+            // With a single server, there is nothing else to send calls to, so its health makes no difference
+            if (endpoints.size() > 1 && _config.getHealthCheckInterval() > 0)
+            {
+                _healthChecker = new HealthChecker(endpoints, Duration.ofSeconds(_config.getHealthCheckInterval()));
+            }
+        }
+
+        return _endpointBalancer;
+    }
+
+    private NetIdAccessEndpoint createEndpoint(NetiDAccessServer accessServer, String hostName, int port, String path,
+                                               RequestTimeouts timeouts, SSLSocketFactory socketFactory)
+    {
+        String address = buildEndpointAddress(hostName, port, path);
+
+        return new NetIdAccessEndpoint(hostName + ":" + port, () ->
+                _classLoaderContextUtils.withPluginClassLoader(() -> {
+                    NetiDAccessServerSoap proxy = accessServer.getNetiDAccessServerSoap();
+                    configureWebserviceClient((BindingProvider) proxy, address, socketFactory);
+                    return proxy;
+                }),
+                timeouts, _metrics.getRegistry());
     }
 }
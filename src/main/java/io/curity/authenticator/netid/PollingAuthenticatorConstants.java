@@ -28,6 +28,7 @@ public class PollingAuthenticatorConstants
         public static final String LAUNCH = "launch";
         public static final String WAIT = "wait";
         public static final String CANCEL = "cancel";
+        public static final String DIAGNOSTICS = "diagnostics";
         // this is used as an alias for WAIT
         public static final String POLLER = "poller";
     }
@@ -152,6 +153,11 @@ public class PollingAuthenticatorConstants
          * An order is already in progress.
          */
         public static final String IN_PROGRESS = "inprogress";
+
+        /**
+         * Many people are logging in right now. Please try again in a moment
+         */
+        public static final String OVERLOADED = "overloaded";
     }
 
     public static class SessionKeys
@@ -165,6 +171,7 @@ public class PollingAuthenticatorConstants
         public static final String AUTOSTART_TOKEN = "POLLING_AUTOSTART_TOKEN";
         public static final String USE_SAME_DEVICE = "POLLING_USE_SAME_DEVICE";
         public static final String INIT_TIME = "POLLING_INIT_TIME";
+        public static final String ENDPOINT = "POLLING_ENDPOINT";
 
         public static final ImmutableCollection<String> all = ImmutableList.of(
                 AUTHENTICATION_STATE,
@@ -175,7 +182,8 @@ public class PollingAuthenticatorConstants
                 SESSION_LAUNCH_COUNT,
                 AUTOSTART_TOKEN,
                 USE_SAME_DEVICE,
-                INIT_TIME
+                INIT_TIME,
+                ENDPOINT
         );
     }
 }
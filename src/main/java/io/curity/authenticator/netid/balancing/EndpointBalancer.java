@@ -0,0 +1,131 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.balancing;
+
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Chooses the Net iD Access server to start a transaction on.
+ * <p>
+ * Two of the available servers are picked at random, and the one with the lowest {@link NetIdAccessEndpoint#getScore()
+ * score} is chosen. This spreads calls by latency and error rate, without sending them all to the server that
+ * happens to be fastest right now. If no server is available, the servers that are left out are tried anyway.
+ */
+public final class EndpointBalancer
+{
+    private final List<NetIdAccessEndpoint> _endpoints;
+
+    /**
+     * @param endpoints the servers, with the one that is used for transactions that have no known server first
+     */
+    public EndpointBalancer(List<NetIdAccessEndpoint> endpoints)
+    {
+        if (endpoints.isEmpty())
+        {
+            throw new IllegalArgumentException("At least one Net iD Access server is needed");
+        }
+
+        _endpoints = ImmutableList.copyOf(endpoints);
+    }
+
+    /**
+     * @param excluded servers not to choose, such as those that just failed
+     * @return the server to call, or null if all of them are excluded
+     */
+    @Nullable
+    public NetIdAccessEndpoint choose(Collection<NetIdAccessEndpoint> excluded)
+    {
+        if (_endpoints.size() == 1)
+        {
+            return excluded.isEmpty() ? _endpoints.get(0) : null;
+        }
+
+        List<NetIdAccessEndpoint> candidates = new ArrayList<>(_endpoints.size());
+        for (NetIdAccessEndpoint endpoint : _endpoints)
+        {
+            if (endpoint.isAvailable() && !excluded.contains(endpoint))
+            {
+                candidates.add(endpoint);
+            }
+        }
+
+        if (candidates.isEmpty())
+        {
+            for (NetIdAccessEndpoint endpoint : _endpoints)
+            {
+                if (!excluded.contains(endpoint))
+                {
+                    candidates.add(endpoint);
+                }
+            }
+        }
+
+        switch (candidates.size())
+        {
+            case 0:
+                return null;
+            case 1:
+                return candidates.get(0);
+            default:
+                var random = ThreadLocalRandom.current();
+                int first = random.nextInt(candidates.size());
+                int second = random.nextInt(candidates.size() - 1);
+                if (second >= first)
+                {
+                    second++;
+                }
+
+                NetIdAccessEndpoint a = candidates.get(first);
+                NetIdAccessEndpoint b = candidates.get(second);
+
+                return a.getScore() <= b.getScore() ? a : b;
+        }
+    }
+
+    /**
+     * Find the server that a transaction was started on.
+     *
+     * @param name the name of the server, or null if it is not known
+     * @return the server with that name, or the first one if there is none
+     */
+    public NetIdAccessEndpoint get(@Nullable String name)
+    {
+        if (name != null)
+        {
+            for (NetIdAccessEndpoint endpoint : _endpoints)
+            {
+                if (endpoint.getName().equals(name))
+                {
+                    return endpoint;
+                }
+            }
+        }
+
+        return _endpoints.get(0);
+    }
+
+    public List<NetIdAccessEndpoint> getEndpoints()
+    {
+        return _endpoints;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.balancing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An exponentially weighted moving average, that can be updated from many threads without locking.
+ */
+final class Ewma
+{
+    private final double _weight;
+    private final AtomicLong _bits;
+
+    /**
+     * @param weight  how much a new sample weighs, between 0 and 1
+     * @param initial the value before the first sample
+     */
+    Ewma(double weight, double initial)
+    {
+        _weight = weight;
+        _bits = new AtomicLong(Double.doubleToLongBits(initial));
+    }
+
+    void update(double sample)
+    {
+        long current;
+        long updated;
+
+        do
+        {
+            current = _bits.get();
+            double average = Double.longBitsToDouble(current);
+            updated = Double.doubleToLongBits(average + _weight * (sample - average));
+        }
+        while (!_bits.compareAndSet(current, updated));
+    }
+
+    double get()
+    {
+        return Double.longBitsToDouble(_bits.get());
+    }
+}
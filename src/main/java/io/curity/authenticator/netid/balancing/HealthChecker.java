@@ -0,0 +1,89 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.balancing;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes the Net iD Access servers in the background, so that a server that is down is left out before any user has
+ * to wait for a call to it to time out.
+ * <p>
+ * The servers are probed one at a time, on a thread of their own, with the given time between the rounds.
+ */
+public final class HealthChecker implements Closeable
+{
+    private static final Logger _logger = LoggerFactory.getLogger(HealthChecker.class);
+
+    private final List<NetIdAccessEndpoint> _endpoints;
+    private final ScheduledExecutorService _executor;
+
+    /**
+     * Start probing the servers.
+     *
+     * @param endpoints the servers to probe
+     * @param interval  the time between the end of one round of probes and the start of the next
+     */
+    public HealthChecker(List<NetIdAccessEndpoint> endpoints, Duration interval)
+    {
+        _endpoints = List.copyOf(endpoints);
+        ClassLoader pluginClassLoader = HealthChecker.class.getClassLoader();
+        _executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("netid-health-check-%d")
+                .setDaemon(true)
+                .setThreadFactory(runnable ->
+                {
+                    // The proxies have to be called with the class loader of the plugin
+                    var thread = Executors.defaultThreadFactory().newThread(runnable);
+                    thread.setContextClassLoader(pluginClassLoader);
+                    return thread;
+                })
+                .build());
+        _executor.scheduleWithFixedDelay(this::checkAll, interval.toMillis(), interval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    void checkAll()
+    {
+        for (NetIdAccessEndpoint endpoint : _endpoints)
+        {
+            try
+            {
+                endpoint.probe();
+            }
+            catch (RuntimeException e)
+            {
+                // A scheduled task that throws is not run again
+                _logger.warn("Could not check the health of Net iD Access server {}", endpoint.getName(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        _executor.shutdownNow();
+    }
+}
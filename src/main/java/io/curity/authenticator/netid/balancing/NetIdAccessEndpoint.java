@@ -0,0 +1,420 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.balancing;
+
+import com.secmaker.netid.nias.NetiDAccessServerSoap;
+import io.curity.authenticator.netid.metrics.MetricsRegistry;
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics.Operation;
+import io.curity.authenticator.netid.utils.Deadline;
+import jakarta.xml.ws.BindingProvider;
+import jakarta.xml.ws.WebServiceException;
+import jakarta.xml.ws.soap.SOAPFaultException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * One Net iD Access server, with a pool of proxies to call it with, and what has been seen of its health lately.
+ * <p>
+ * The latency and the error rate are moving averages of the calls. A SOAP fault counts as a success, since the server
+ * answered. When calls fail a number of times in a row, the server is left out of the balancing for a while. After
+ * that, it gets calls again, and one more failure leaves it out again.
+ * <p>
+ * When the server is {@link #probe() probed}, it is also left out after failing a number of probes in a row, until it
+ * passes as many in a row. Passing them also ends a time left out because of failed calls.
+ */
+public final class NetIdAccessEndpoint
+{
+    private static final Logger _logger = LoggerFactory.getLogger(NetIdAccessEndpoint.class);
+
+    private static final double WEIGHT = 0.2;
+    private static final int FAILURES_BEFORE_EJECTION = 3;
+    private static final Duration EJECTION_TIME = Duration.ofSeconds(30);
+    private static final int PROBES_TO_CHANGE_HEALTH = 2;
+    private static final int SAMPLES_FOR_LATENCY_P95 = 20;
+    private static final int SAMPLES_FOR_LATENCY_P99 = 100;
+    private static final String CONNECT_TIMEOUT_PROPERTY = "com.sun.xml.ws.connect.timeout";
+    private static final String REQUEST_TIMEOUT_PROPERTY = "com.sun.xml.ws.request.timeout";
+    // Not a real order reference, so the server answers with a fault without looking anything up
+    private static final String PROBE_ORDER_REF = "health-check";
+
+    private final String _name;
+    private final Supplier<NetiDAccessServerSoap> _proxyFactory;
+    private final RequestTimeouts _timeouts;
+    private final LongSupplier _nanoClock;
+    private final Queue<NetiDAccessServerSoap> _idleProxies = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _proxies = new AtomicInteger();
+    private final AtomicInteger _inFlight = new AtomicInteger();
+    private final AtomicInteger _consecutiveFailures = new AtomicInteger();
+    // Optimistic, so that a server that has not been called yet gets a chance
+    private final Ewma _latencyMillis = new Ewma(WEIGHT, 0);
+    private final Ewma _errorRate = new Ewma(WEIGHT, 0);
+    private final Quantile _latencyP95Millis = new Quantile(0.95);
+    private final Map<Operation, Quantile> _latencyP99Millis = new EnumMap<>(Operation.class);
+    private final MetricsRegistry.Timer _successLatency;
+    private final MetricsRegistry.Timer _failureLatency;
+    private final MetricsRegistry.Counter _ejections;
+    private volatile long _ejectedUntil;
+    private volatile boolean _healthy = true;
+    // Probes that disagree with the current health, in a row
+    private int _contraryProbes;
+
+    /**
+     * @param name         the name of the server in logs, metrics and sessions, usually its host and port
+     * @param proxyFactory creates the proxies to call the server with
+     * @param timeouts     how long to wait for the answers of the server
+     * @param registry     where the metrics of the server are kept, as {@code endpoint.<name>.<metric>}
+     */
+    public NetIdAccessEndpoint(String name, Supplier<NetiDAccessServerSoap> proxyFactory, RequestTimeouts timeouts,
+                               MetricsRegistry registry)
+    {
+        this(name, proxyFactory, timeouts, registry, System::nanoTime);
+    }
+
+    NetIdAccessEndpoint(String name, Supplier<NetiDAccessServerSoap> proxyFactory, RequestTimeouts timeouts,
+                        MetricsRegistry registry, LongSupplier nanoClock)
+    {
+        _name = name;
+        _proxyFactory = proxyFactory;
+        _timeouts = timeouts;
+        _nanoClock = nanoClock;
+        _ejectedUntil = nanoClock.getAsLong();
+
+        String prefix = "endpoint." + name + ".";
+        _successLatency = registry.timer(prefix + "latency.success");
+        _failureLatency = registry.timer(prefix + "latency.failure");
+        _ejections = registry.counter(prefix + "ejections");
+        registry.gauge(prefix + "inFlight", _inFlight::get);
+        registry.gauge(prefix + "available", () -> isAvailable() ? 1 : 0);
+        registry.gauge(prefix + "healthy", () -> _healthy ? 1 : 0);
+
+        for (Operation operation : Operation.values())
+        {
+            _latencyP99Millis.put(operation, new Quantile(0.99));
+            registry.gauge(prefix + operation.name().toLowerCase(Locale.ROOT) + ".timeoutMillis",
+                    () -> getRequestTimeoutMillis(operation));
+        }
+    }
+
+    /**
+     * Call the server, using a proxy from the pool.
+     *
+     * @param operation the operation that is called
+     * @param call      the call to make
+     * @return what the server answered
+     */
+    public <T> T call(Operation operation, Function<NetiDAccessServerSoap, T> call)
+    {
+        return call(operation, Deadline.NONE, call);
+    }
+
+    /**
+     * Call the server, using a proxy from the pool, and waiting for a connection and the answer until the deadline at
+     * the latest. A call that times out because of the deadline, rather than its own timeout, does not count against
+     * the server, and a call that is made after the deadline is not made at all.
+     *
+     * @param operation the operation that is called
+     * @param deadline  when the caller stops caring about the answer
+     * @param call      the call to make
+     * @return what the server answered
+     * @throws WebServiceException if the deadline has passed
+     */
+    public <T> T call(Operation operation, Deadline deadline, Function<NetiDAccessServerSoap, T> call)
+    {
+        // Checked before borrowing a proxy, since a timeout of what is left would be too short to be of any use
+        if (deadline.isExpired())
+        {
+            throw new WebServiceException("The deadline passed before calling Net iD Access server " + _name);
+        }
+
+        NetiDAccessServerSoap proxy = borrowProxy();
+        int timeoutMillis = getRequestTimeoutMillis(operation);
+        long cappedTimeoutMillis = Math.max(deadline.cap(timeoutMillis), 1);
+        setTimeouts(proxy, (int) Math.max(deadline.cap(_timeouts.getConnectMillis()), 1), (int) cappedTimeoutMillis);
+
+        _inFlight.incrementAndGet();
+        long startTime = _nanoClock.getAsLong();
+        boolean success = false;
+
+        try
+        {
+            T result = call.apply(proxy);
+            success = true;
+
+            return result;
+        }
+        catch (SOAPFaultException e)
+        {
+            success = true;
+
+            throw e;
+        }
+        finally
+        {
+            _inFlight.decrementAndGet();
+
+            if (success || cappedTimeoutMillis == timeoutMillis || !deadline.isExpired())
+            {
+                ended(operation, _nanoClock.getAsLong() - startTime, success);
+            }
+
+            _idleProxies.offer(proxy);
+        }
+    }
+
+    /**
+     * Check that the server answers, with a collect of an order reference that does not exist. The probe does not
+     * count as a call.
+     *
+     * @return true if the server answered
+     */
+    boolean probe()
+    {
+        NetiDAccessServerSoap proxy = borrowProxy();
+        setTimeouts(proxy, _timeouts.getConnectMillis(), getRequestTimeoutMillis(Operation.COLLECT));
+        boolean success;
+
+        try
+        {
+            proxy.collect(PROBE_ORDER_REF);
+            success = true;
+        }
+        catch (SOAPFaultException e)
+        {
+            success = true;
+        }
+        catch (WebServiceException e)
+        {
+            _logger.debug("Health check of Net iD Access server {} failed: {}", _name, e.getMessage());
+            success = false;
+        }
+        finally
+        {
+            _idleProxies.offer(proxy);
+        }
+
+        probed(success);
+
+        return success;
+    }
+
+    private synchronized void probed(boolean success)
+    {
+        if (success == _healthy)
+        {
+            _contraryProbes = 0;
+
+            return;
+        }
+
+        if (++_contraryProbes < PROBES_TO_CHANGE_HEALTH)
+        {
+            return;
+        }
+
+        _contraryProbes = 0;
+        _healthy = success;
+
+        if (success)
+        {
+            _consecutiveFailures.set(0);
+            _ejectedUntil = _nanoClock.getAsLong();
+            _logger.info("Net iD Access server {} passes health checks again", _name);
+        }
+        else
+        {
+            _logger.info("Net iD Access server {} fails health checks, leaving it out until it passes them", _name);
+        }
+    }
+
+    private NetiDAccessServerSoap borrowProxy()
+    {
+        // The pool grows to as many proxies as there have been calls at the same time, which the bulkheads limit
+        @Nullable NetiDAccessServerSoap proxy = _idleProxies.poll();
+
+        if (proxy == null)
+        {
+            proxy = _proxyFactory.get();
+            _proxies.incrementAndGet();
+        }
+
+        return proxy;
+    }
+
+    private static void setTimeouts(NetiDAccessServerSoap proxy, int connectTimeoutMillis, int requestTimeoutMillis)
+    {
+        // The proxy is not shared while it is borrowed, so its timeouts can be set for this call alone
+        if (proxy instanceof BindingProvider)
+        {
+            Map<String, Object> requestContext = ((BindingProvider) proxy).getRequestContext();
+            requestContext.put(CONNECT_TIMEOUT_PROPERTY, connectTimeoutMillis);
+            requestContext.put(REQUEST_TIMEOUT_PROPERTY, requestTimeoutMillis);
+        }
+    }
+
+    private void ended(Operation operation, long nanos, boolean success)
+    {
+        double millis = nanos / 1_000_000d;
+        _latencyMillis.update(millis);
+        _errorRate.update(success ? 0 : 1);
+        (success ? _successLatency : _failureLatency).record(nanos);
+
+        if (success)
+        {
+            _latencyP95Millis.update(millis);
+            _latencyP99Millis.get(operation).update(millis);
+            _consecutiveFailures.set(0);
+        }
+        else if (_consecutiveFailures.incrementAndGet() >= FAILURES_BEFORE_EJECTION)
+        {
+            _consecutiveFailures.set(FAILURES_BEFORE_EJECTION - 1);
+            _ejectedUntil = _nanoClock.getAsLong() + EJECTION_TIME.toNanos();
+            _ejections.increment();
+            _logger.info("Calls to Net iD Access server {} keep failing, leaving it out for {} seconds",
+                    _name, EJECTION_TIME.getSeconds());
+        }
+    }
+
+    /**
+     * @return false if the server is left out of the balancing, because of failed calls or health checks
+     */
+    public boolean isAvailable()
+    {
+        return _healthy && _nanoClock.getAsLong() - _ejectedUntil >= 0;
+    }
+
+    /**
+     * @return true if the server is left out of the balancing for a while, because its calls kept failing
+     */
+    public boolean isEjected()
+    {
+        return getEjectedForMillis() > 0;
+    }
+
+    /**
+     * @return how long the server is still left out because its calls kept failing, in milliseconds, or 0 if it is not
+     */
+    public long getEjectedForMillis()
+    {
+        return Math.max(TimeUnit.NANOSECONDS.toMillis(_ejectedUntil - _nanoClock.getAsLong()), 0);
+    }
+
+    /**
+     * @return the number of calls that failed in a row. The server is left out when it reaches
+     * {@value #FAILURES_BEFORE_EJECTION}, and after it is let back in, the next failure leaves it out again.
+     */
+    public int getConsecutiveFailures()
+    {
+        return _consecutiveFailures.get();
+    }
+
+    /**
+     * @return false if the server failed its latest health checks
+     */
+    public boolean isHealthy()
+    {
+        return _healthy;
+    }
+
+    /**
+     * The cost of sending a call to this server: the expected latency, grown by the calls that are already waiting for
+     * it and by the share of calls that fail. Lower is better.
+     */
+    double getScore()
+    {
+        double successRate = Math.max(1 - _errorRate.get(), 0.01);
+
+        return (_latencyMillis.get() + 1) * (_inFlight.get() + 1) / successRate;
+    }
+
+    public String getName()
+    {
+        return _name;
+    }
+
+    public int getInFlight()
+    {
+        return _inFlight.get();
+    }
+
+    public double getLatencyMillis()
+    {
+        return _latencyMillis.get();
+    }
+
+    /**
+     * @return the estimated 95th percentile of the latency of successful calls, in milliseconds, or NaN if too few
+     * calls have been made to tell
+     */
+    public double getLatencyP95Millis()
+    {
+        return _latencyP95Millis.getSamples() < SAMPLES_FOR_LATENCY_P95 ? Double.NaN : _latencyP95Millis.get();
+    }
+
+    /**
+     * @param operation the operation that is called
+     * @return how long to wait for the answer to a call, in milliseconds
+     */
+    public int getRequestTimeoutMillis(Operation operation)
+    {
+        Quantile latencyP99Millis = _latencyP99Millis.get(operation);
+
+        return _timeouts.getMillis(operation, latencyP99Millis.getSamples() < SAMPLES_FOR_LATENCY_P99
+                ? Double.NaN
+                : latencyP99Millis.get());
+    }
+
+    public double getErrorRate()
+    {
+        return _errorRate.get();
+    }
+
+    /**
+     * @return the number of proxies in the pool, that are not in use
+     */
+    public int getIdleProxies()
+    {
+        return _idleProxies.size();
+    }
+
+    /**
+     * @return the number of proxies of the pool that are in use, by calls or health checks
+     */
+    public int getProxiesInUse()
+    {
+        // The two are read one after the other, so a proxy that is borrowed or returned in between may be missed
+        return Math.max(_proxies.get() - _idleProxies.size(), 0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return _name;
+    }
+}
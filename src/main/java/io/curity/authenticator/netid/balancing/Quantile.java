@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.balancing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An estimate of a quantile of a stream of samples, such as the 95th percentile of latencies, that follows changes in
+ * the stream and can be updated from many threads without locking.
+ * <p>
+ * The estimate grows by a small factor for each sample above it, and shrinks for each one below it, by factors chosen
+ * so that it settles where the given share of the samples is below it.
+ */
+final class Quantile
+{
+    private static final double RATE = 0.1;
+
+    private final double _growth;
+    private final double _shrinkage;
+    private final AtomicLong _bits = new AtomicLong(Double.doubleToLongBits(Double.NaN));
+    private final AtomicLong _samples = new AtomicLong();
+
+    /**
+     * @param quantile the share of samples that should be below the estimate, between 0 and 1
+     */
+    Quantile(double quantile)
+    {
+        _growth = 1 + RATE * quantile;
+        _shrinkage = 1 - RATE * (1 - quantile);
+    }
+
+    void update(double sample)
+    {
+        long current;
+        long updated;
+
+        do
+        {
+            current = _bits.get();
+            double estimate = Double.longBitsToDouble(current);
+            // The first sample is the best guess there is, as long as it is not zero, which nothing could grow from
+            double next = Double.isNaN(estimate) ? Math.max(sample, 1) : estimate * (sample > estimate ? _growth : _shrinkage);
+            updated = Double.doubleToLongBits(next);
+        }
+        while (!_bits.compareAndSet(current, updated));
+
+        _samples.incrementAndGet();
+    }
+
+    /**
+     * @return the estimate, or NaN before the first sample
+     */
+    double get()
+    {
+        return Double.longBitsToDouble(_bits.get());
+    }
+
+    long getSamples()
+    {
+        return _samples.get();
+    }
+}
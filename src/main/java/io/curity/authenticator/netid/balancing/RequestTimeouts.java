@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.balancing;
+
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics.Operation;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * How long to wait for a connection to the server, and for the answer to a call, per operation.
+ * <p>
+ * The timeouts are fixed, or adaptive, in which case they are twice the latency that 99 percent of the recent calls
+ * of the server were faster than, kept between a minimum and the fixed timeout. This frees the threads of calls that
+ * have stalled soon after they have become unusually slow, while calls that are always slow still have time to finish.
+ */
+public final class RequestTimeouts
+{
+    // Before DEFAULT, which needs it when it is created
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(3);
+
+    public static final RequestTimeouts DEFAULT = new RequestTimeouts(Duration.ofSeconds(10), Duration.ofSeconds(10),
+            false, Duration.ofSeconds(10));
+
+    private static final int HEADROOM_FACTOR = 2;
+
+    private final int _connectMillis;
+    private final Map<Operation, Long> _maximumMillis = new EnumMap<>(Operation.class);
+    private final boolean _adaptive;
+    private final long _minimumMillis;
+
+    /**
+     * @param authenticate the timeout of authenticate calls, and the most an adaptive timeout can be
+     * @param collect      the timeout of collect calls, and the most an adaptive timeout can be
+     * @param adaptive     whether to adapt the timeouts to the latency of the calls
+     * @param minimum      the least an adaptive timeout can be
+     */
+    public RequestTimeouts(Duration authenticate, Duration collect, boolean adaptive, Duration minimum)
+    {
+        this(DEFAULT_CONNECT_TIMEOUT, authenticate, collect, adaptive, minimum);
+    }
+
+    /**
+     * @param connect      the timeout of connecting to the server
+     * @param authenticate the timeout of authenticate calls, and the most an adaptive timeout can be
+     * @param collect      the timeout of collect calls, and the most an adaptive timeout can be
+     * @param adaptive     whether to adapt the timeouts to the latency of the calls
+     * @param minimum      the least an adaptive timeout can be
+     */
+    public RequestTimeouts(Duration connect, Duration authenticate, Duration collect, boolean adaptive,
+                           Duration minimum)
+    {
+        _connectMillis = (int) connect.toMillis();
+        _maximumMillis.put(Operation.AUTHENTICATE, authenticate.toMillis());
+        _maximumMillis.put(Operation.COLLECT, collect.toMillis());
+        _adaptive = adaptive;
+        _minimumMillis = minimum.toMillis();
+    }
+
+    /**
+     * @return the timeout of connecting to the server, in milliseconds
+     */
+    public int getConnectMillis()
+    {
+        return _connectMillis;
+    }
+
+    /**
+     * @param operation        the operation that is called
+     * @param latencyP99Millis the 99th percentile of the latency of the operation, or NaN if it is not known
+     * @return the timeout of the call, in milliseconds
+     */
+    public int getMillis(Operation operation, double latencyP99Millis)
+    {
+        long maximum = _maximumMillis.get(operation);
+
+        if (!_adaptive || Double.isNaN(latencyP99Millis))
+        {
+            return (int) maximum;
+        }
+
+        long adapted = (long) Math.ceil(latencyP99Millis * HEADROOM_FACTOR);
+
+        return (int) Math.min(Math.max(adapted, Math.min(_minimumMillis, maximum)), maximum);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.capture;
+
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Captures a sample of the SOAP messages that are exchanged with the Net iD Access server, for troubleshooting.
+ * <p>
+ * Only a share of the exchanges is captured, and each message is cut off after a number of bytes. Only the text of
+ * the elements that are known not to hold personal data, such as the status of a transaction and its order reference,
+ * is kept, and the text of all other elements is redacted, as are personal numbers anywhere in what is kept. The
+ * captured messages are kept in a ring buffer of a fixed size, so that the most recent ones can be dumped on demand.
+ */
+public final class WireCapture
+{
+    public static final int CAPACITY = 64;
+
+    private static final String REDACTED = "[REDACTED]";
+    // The local names of the elements of the Net iD Access service and of SOAP faults whose text is kept
+    private static final Set<String> KEPT_ELEMENTS = Set.of("orderRef", "AuthenticateResult", "SignResult",
+            "progressStatus", "notBefore", "notAfter", "faultcode", "faultstring", "Value", "Text");
+    // A tag, with its prefix and local name if it is a start tag, followed by text
+    private static final Pattern TEXT = Pattern.compile("(<(?:(?:[\\w.-]+:)?([\\w.-]+)(?:\\s[^>]*)?|[^>]*)>)([^<]+)");
+    // Swedish personal and organisation numbers, with or without century and separator
+    private static final Pattern PERSONAL_NUMBER = Pattern.compile("(?<!\\d)(?:\\d{2})?\\d{6}[-+]?\\d{4}(?!\\d)");
+
+    private final int _samplePercent;
+    private final int _maxBytes;
+    private final AtomicReferenceArray<Message> _messages = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicLong _captured = new AtomicLong();
+
+    /**
+     * @param samplePercent the percentage of the exchanges to capture, from 0 (none) to 100 (all)
+     * @param maxBytes      the maximum number of bytes to keep of each message
+     */
+    public WireCapture(int samplePercent, int maxBytes)
+    {
+        _samplePercent = Math.max(0, Math.min(100, samplePercent));
+        _maxBytes = Math.max(0, maxBytes);
+    }
+
+    /**
+     * @return true if no exchanges are ever captured
+     */
+    public boolean isDisabled()
+    {
+        return _samplePercent == 0 || _maxBytes == 0;
+    }
+
+    /**
+     * @return true if the next exchange should be captured
+     */
+    public boolean sample()
+    {
+        return _samplePercent == 100
+                || (_samplePercent > 0 && ThreadLocalRandom.current().nextInt(100) < _samplePercent);
+    }
+
+    public int getMaxBytes()
+    {
+        return _maxBytes;
+    }
+
+    /**
+     * Keep a message, redacting it first.
+     *
+     * @param outbound   true if the message was sent to the server, false if it was received from it
+     * @param text       the start of the message, at most {@link #getMaxBytes()} bytes of it
+     * @param totalBytes the size of the whole message
+     * @return the message that was kept
+     */
+    public Message capture(boolean outbound, String text, long totalBytes)
+    {
+        var message = new Message(Instant.now(), outbound, redact(text), totalBytes);
+
+        _messages.set((int) (_captured.getAndIncrement() % CAPACITY), message);
+
+        return message;
+    }
+
+    /**
+     * @return the captured messages that are still kept, oldest first
+     */
+    public List<Message> dump()
+    {
+        long captured = _captured.get();
+        long first = Math.max(0, captured - CAPACITY);
+        List<Message> messages = new ArrayList<>((int) (captured - first));
+
+        for (long i = first; i < captured; i++)
+        {
+            @Nullable Message message = _messages.get((int) (i % CAPACITY));
+
+            if (message != null)
+            {
+                messages.add(message);
+            }
+        }
+
+        return messages;
+    }
+
+    /**
+     * @return the captured messages that are still kept, oldest first, each as a line of text starting with the time
+     * it was captured
+     */
+    public List<String> dumpText()
+    {
+        List<Message> messages = dump();
+        List<String> lines = new ArrayList<>(messages.size());
+
+        for (Message message : messages)
+        {
+            lines.add(message.getTime() + " " + message);
+        }
+
+        return lines;
+    }
+
+    static String redact(String text)
+    {
+        String redacted = TEXT.matcher(text).replaceAll(element -> isKept(element.group(2), element.group(3))
+                ? Matcher.quoteReplacement(element.group())
+                : Matcher.quoteReplacement(element.group(1)) + REDACTED);
+
+        return PERSONAL_NUMBER.matcher(redacted).replaceAll(REDACTED);
+    }
+
+    /**
+     * @param localName the local name of the start tag before the text, or null if the tag is not a start tag
+     */
+    private static boolean isKept(@Nullable String localName, String text)
+    {
+        return text.isBlank() || (localName != null && KEPT_ELEMENTS.contains(localName));
+    }
+
+    public static final class Message
+    {
+        private final Instant _time;
+        private final boolean _outbound;
+        private final String _text;
+        private final long _totalBytes;
+
+        private Message(Instant time, boolean outbound, String text, long totalBytes)
+        {
+            _time = time;
+            _outbound = outbound;
+            _text = text;
+            _totalBytes = totalBytes;
+        }
+
+        public Instant getTime()
+        {
+            return _time;
+        }
+
+        public boolean isOutbound()
+        {
+            return _outbound;
+        }
+
+        /**
+         * @return the redacted start of the message
+         */
+        public String getText()
+        {
+            return _text;
+        }
+
+        public long getTotalBytes()
+        {
+            return _totalBytes;
+        }
+
+        @Override
+        public String toString()
+        {
+            return (_outbound ? "Sent " : "Received ") + _totalBytes + " bytes: " + _text;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.capture;
+
+import jakarta.xml.ws.handler.MessageContext;
+import jakarta.xml.ws.handler.soap.SOAPHandler;
+import jakarta.xml.ws.handler.soap.SOAPMessageContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.curity.identityserver.sdk.ClassLoaderContextUtils;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Hands a sample of the exchanged SOAP messages to a {@link WireCapture}, and logs them on trace level.
+ * <p>
+ * Whether an exchange is captured is decided when the request is sent, so that a response is captured exactly when
+ * its request was.
+ */
+public final class WireCaptureHandler implements SOAPHandler<SOAPMessageContext>
+{
+    private static final Logger _logger = LoggerFactory.getLogger(WireCaptureHandler.class);
+
+    private static final String SAMPLED = WireCaptureHandler.class.getName() + ".sampled";
+
+    private final WireCapture _wireCapture;
+    private final ClassLoaderContextUtils _classLoaderContextUtils;
+
+    public WireCaptureHandler(WireCapture wireCapture, ClassLoaderContextUtils classLoaderContextUtils)
+    {
+        _wireCapture = wireCapture;
+        _classLoaderContextUtils = classLoaderContextUtils;
+    }
+
+    @Override
+    public boolean handleMessage(SOAPMessageContext context)
+    {
+        boolean outbound = Boolean.TRUE.equals(context.get(MessageContext.MESSAGE_OUTBOUND_PROPERTY));
+
+        if (outbound)
+        {
+            context.put(SAMPLED, _wireCapture.sample());
+        }
+
+        if (Boolean.TRUE.equals(context.get(SAMPLED)))
+        {
+            _classLoaderContextUtils.withPluginClassLoader(() -> {
+                capture(context, outbound);
+
+                return null;
+            });
+        }
+
+        return true;
+    }
+
+    private void capture(SOAPMessageContext context, boolean outbound)
+    {
+        var outputStream = new BoundedOutputStream(_wireCapture.getMaxBytes());
+
+        try
+        {
+            context.getMessage().writeTo(outputStream);
+
+            var message = _wireCapture.capture(outbound, outputStream.toString(), outputStream.getTotalBytes());
+
+            _logger.trace("{}", message);
+        }
+        catch (Exception e)
+        {
+            _logger.debug("Could not capture SOAP message", e);
+        }
+    }
+
+    @Override
+    public boolean handleFault(SOAPMessageContext context)
+    {
+        return handleMessage(context);
+    }
+
+    @Override
+    public void close(MessageContext context)
+    {
+    }
+
+    @Override
+    public Set<QName> getHeaders()
+    {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Keeps the first bytes that are written to it, and only counts the rest.
+     */
+    private static final class BoundedOutputStream extends OutputStream
+    {
+        private final ByteArrayOutputStream _kept;
+        private final int _maxBytes;
+        private long _totalBytes;
+
+        private BoundedOutputStream(int maxBytes)
+        {
+            _kept = new ByteArrayOutputStream(Math.min(maxBytes, 1024));
+            _maxBytes = maxBytes;
+        }
+
+        @Override
+        public void write(int b)
+        {
+            if (_totalBytes++ < _maxBytes)
+            {
+                _kept.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length)
+        {
+            long room = _maxBytes - _totalBytes;
+
+            if (room > 0)
+            {
+                _kept.write(bytes, offset, (int) Math.min(room, length));
+            }
+
+            _totalBytes += length;
+        }
+
+        private long getTotalBytes()
+        {
+            return _totalBytes;
+        }
+
+        @Override
+        public String toString()
+        {
+            return _kept.toString(StandardCharsets.UTF_8);
+        }
+    }
+}
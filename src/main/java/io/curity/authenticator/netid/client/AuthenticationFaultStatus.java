@@ -36,7 +36,11 @@ public enum AuthenticationFaultStatus
     RETRY(PollingAuthenticatorConstants.EndUserMessageKeys.INTERNAL_ERROR),
     INTERNAL_ERROR(PollingAuthenticatorConstants.EndUserMessageKeys.INTERNAL_ERROR),
     ALREADY_IN_PROGRESS(PollingAuthenticatorConstants.EndUserMessageKeys.IN_PROGRESS),
-    USER_BLOCKED(PollingAuthenticatorConstants.EndUserMessageKeys.USER_BLOCKED);
+    USER_BLOCKED(PollingAuthenticatorConstants.EndUserMessageKeys.USER_BLOCKED),
+    /**
+     * Not sent by the server, but used when this node is too busy to start another transaction
+     */
+    OVERLOADED(PollingAuthenticatorConstants.EndUserMessageKeys.OVERLOADED);
     /**
      * Message key to show user
      */
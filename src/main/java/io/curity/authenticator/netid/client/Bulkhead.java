@@ -0,0 +1,235 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.client;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.curity.authenticator.netid.metrics.MetricsRegistry;
+
+import java.io.Closeable;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs the calls of one operation to the Net iD Access server, with threads and a queue of its own, so that a surge of
+ * calls of one operation cannot hold up the calls of another.
+ * <p>
+ * At most a given number of calls run at the same time, and a given number wait their turn. Calls of a higher
+ * {@link Priority} get their turn first, and calls of the same priority are first come, first served. Calls of low
+ * priority may only fill half of the queue, so that there is room for the others when the bulkhead is busy. Calls
+ * that do not fit are rejected at once with {@link BulkheadFullException}, and how that is handled is up to the
+ * caller. Threads are started when needed, and stop after having been idle for a while.
+ * <p>
+ * A call that is {@link #supply(Supplier, Priority) supplied} and cancelled while it waits its turn is taken out of
+ * the queue, so that a call nobody waits for any more neither holds a place in the queue nor is made.
+ */
+public final class Bulkhead implements Executor, Closeable
+{
+    private static final long IDLE_THREAD_SECONDS = 60;
+
+    private final String _name;
+    private final ThreadPoolExecutor _executor;
+    private final MetricsRegistry.Counter _rejected;
+    private final AtomicLong _sequence = new AtomicLong();
+    private final Map<Priority, Executor> _prioritizedExecutors = new EnumMap<>(Priority.class);
+
+    /**
+     * @param name               the name of the bulkhead, in thread names and metrics, as {@code <name>.queued} and
+     *                           {@code <name>.rejected}
+     * @param maxConcurrentCalls the most calls that run at the same time
+     * @param maxQueuedCalls     the most calls that wait their turn
+     * @param registry           where the metrics of the bulkhead are kept
+     */
+    public Bulkhead(String name, int maxConcurrentCalls, int maxQueuedCalls, MetricsRegistry registry)
+    {
+        _name = name;
+        BlockingQueue<Runnable> queue = maxQueuedCalls > 0
+                ? new CallQueue(maxQueuedCalls)
+                : new SynchronousQueue<>(true);
+        _executor = new ThreadPoolExecutor(maxConcurrentCalls, maxConcurrentCalls,
+                IDLE_THREAD_SECONDS, TimeUnit.SECONDS, queue,
+                new ThreadFactoryBuilder().setNameFormat("netid-" + name + "-%d").setDaemon(true).build());
+        _executor.allowCoreThreadTimeOut(true);
+        _rejected = registry.counter(name + ".rejected");
+        registry.gauge(name + ".queued", () -> _executor.getQueue().size());
+
+        for (Priority priority : Priority.values())
+        {
+            _prioritizedExecutors.put(priority, command -> execute(command, priority));
+        }
+    }
+
+    /**
+     * Run a call of normal priority.
+     *
+     * @throws BulkheadFullException if there is no room for the call
+     */
+    @Override
+    public void execute(Runnable command)
+    {
+        execute(command, Priority.NORMAL);
+    }
+
+    /**
+     * @param priority the priority of the calls
+     * @return an executor that runs calls of the given priority in this bulkhead
+     */
+    public Executor withPriority(Priority priority)
+    {
+        return _prioritizedExecutors.get(priority);
+    }
+
+    /**
+     * Make a call, and get its answer when it has run. Cancelling the answer before the call has had its turn takes
+     * the call out of the queue.
+     *
+     * @param call     the call to make
+     * @param priority the priority of the call
+     * @return the answer of the call
+     * @throws BulkheadFullException if there is no room for the call
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> call, Priority priority)
+    {
+        var answer = new CompletableFuture<T>();
+        var queued = new Call(() ->
+        {
+            if (answer.isDone())
+            {
+                return;
+            }
+
+            try
+            {
+                answer.complete(call.get());
+            }
+            catch (Throwable e)
+            {
+                answer.completeExceptionally(e);
+            }
+        }, priority, _sequence.getAndIncrement());
+
+        execute(queued);
+        answer.whenComplete((value, error) ->
+        {
+            if (answer.isCancelled())
+            {
+                _executor.remove(queued);
+            }
+        });
+
+        return answer;
+    }
+
+    private void execute(Runnable command, Priority priority)
+    {
+        execute(new Call(command, priority, _sequence.getAndIncrement()));
+    }
+
+    private void execute(Call call)
+    {
+        try
+        {
+            _executor.execute(call);
+        }
+        catch (RejectedExecutionException e)
+        {
+            _rejected.increment();
+            throw new BulkheadFullException(_name);
+        }
+    }
+
+    public String getName()
+    {
+        return _name;
+    }
+
+    @Override
+    public void close()
+    {
+        _executor.shutdown();
+    }
+
+    public enum Priority
+    {
+        HIGH, NORMAL, LOW
+    }
+
+    private static final class Call implements Runnable
+    {
+        private static final Comparator<Runnable> ORDER = Comparator
+                .comparing((Runnable call) -> ((Call) call)._priority)
+                .thenComparingLong(call -> ((Call) call)._sequence);
+
+        private final Runnable _command;
+        private final Priority _priority;
+        private final long _sequence;
+
+        private Call(Runnable command, Priority priority, long sequence)
+        {
+            _command = command;
+            _priority = priority;
+            _sequence = sequence;
+        }
+
+        @Override
+        public void run()
+        {
+            _command.run();
+        }
+    }
+
+    /**
+     * A bounded queue, that hands out the calls of the highest priority first, and the oldest of those first.
+     */
+    private static final class CallQueue extends PriorityBlockingQueue<Runnable>
+    {
+        private final int _capacity;
+
+        private CallQueue(int capacity)
+        {
+            super(capacity, Call.ORDER);
+            _capacity = capacity;
+        }
+
+        /**
+         * Synchronized, so that concurrent offers cannot overfill the queue. Taking from it only makes more room.
+         */
+        @Override
+        public synchronized boolean offer(Runnable call)
+        {
+            int limit = ((Call) call)._priority == Priority.LOW ? _capacity / 2 : _capacity;
+
+            return size() < limit && super.offer(call);
+        }
+
+        @Override
+        public int remainingCapacity()
+        {
+            return Math.max(_capacity - size(), 0);
+        }
+    }
+}
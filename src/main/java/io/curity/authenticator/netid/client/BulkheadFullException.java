@@ -0,0 +1,37 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.client;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown when a call is not made, because its {@link Bulkhead} has as many calls running and waiting as it allows.
+ */
+public class BulkheadFullException extends RejectedExecutionException
+{
+    public BulkheadFullException(String bulkheadName)
+    {
+        // Rejections happen in bursts, and the stack trace tells nothing new
+        super("Too many " + bulkheadName + " calls in progress", null);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace()
+    {
+        return this;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the extra calls that hedging makes, at a share of the calls.
+ * <p>
+ * Each call earns a fraction of a hedge, and each hedge spends a whole one. A few hedges can be saved up for bursts of
+ * slow calls, but no more, so that a server that is slow for everyone does not get twice the calls.
+ */
+public final class HedgeBudget
+{
+    // Hundredths of a hedge
+    private static final long HEDGE_COST = 100;
+    private static final long MAX_SAVED = 10 * HEDGE_COST;
+
+    private final long _earnedPerCall;
+    private final AtomicLong _balance = new AtomicLong();
+
+    /**
+     * @param percent how many hedges may be made per hundred calls
+     */
+    public HedgeBudget(int percent)
+    {
+        _earnedPerCall = percent;
+    }
+
+    /**
+     * Call for each call that may be hedged.
+     */
+    public void called()
+    {
+        _balance.accumulateAndGet(_earnedPerCall, (balance, earned) -> Math.min(balance + earned, MAX_SAVED));
+    }
+
+    /**
+     * @return true if a hedge may be made, which is then spent
+     */
+    public boolean tryHedge()
+    {
+        long balance;
+
+        do
+        {
+            balance = _balance.get();
+
+            if (balance < HEDGE_COST)
+            {
+                return false;
+            }
+        }
+        while (!_balance.compareAndSet(balance, balance - HEDGE_COST));
+
+        return true;
+    }
+}
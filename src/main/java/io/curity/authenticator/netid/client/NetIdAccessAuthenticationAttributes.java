@@ -30,6 +30,7 @@ import se.curity.identityserver.sdk.attribute.scim.v2.ComplexAttribute;
 import se.curity.identityserver.sdk.attribute.scim.v2.Name;
 import se.curity.identityserver.sdk.attribute.scim.v2.multivalued.X509Certificates;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -45,10 +46,14 @@ import static se.curity.identityserver.sdk.attribute.SubjectAttributes.SUBJECT;
 
 public class NetIdAccessAuthenticationAttributes extends AuthenticationAttributes
 {
-    private NetIdAccessAuthenticationAttributes(SubjectAttributes subjectAttributes,
-                                                ContextAttributes contextAttributes)
+    // Serialized with the attributes, so that they can still be encoded after having been deserialized
+    private final CollectedValues _collectedValues;
+
+    private NetIdAccessAuthenticationAttributes(CollectedValues collectedValues)
     {
-        super(subjectAttributes, contextAttributes);
+        super(getSubjectAttributes(collectedValues), getContextAttributes(collectedValues));
+
+        _collectedValues = collectedValues;
     }
 
     /**
@@ -68,29 +73,41 @@ public class NetIdAccessAuthenticationAttributes extends AuthenticationAttribute
             throw new IllegalArgumentException("Authentication was not completed: " + result.getProgressStatus());
         }
 
-        return new NetIdAccessAuthenticationAttributes(getSubjectAttributes(result), getContextAttributes(result));
+        return of(CollectedValues.of(result));
     }
 
-    private static SubjectAttributes getSubjectAttributes(ResultCollect result)
+    static NetIdAccessAuthenticationAttributes of(CollectedValues collectedValues)
+    {
+        return new NetIdAccessAuthenticationAttributes(collectedValues);
+    }
+
+    /**
+     * The values collected from Net iD that these attributes were created from. These are what
+     * {@link NetIdAccessAuthenticationAttributesCodec} writes, as the attributes can be recreated from them.
+     */
+    CollectedValues getCollectedValues()
     {
-        UserInfoType userInfo = valueOrError(result.getUserInfo(), "Did not get UserInfo in response");
+        return _collectedValues;
+    }
 
+    private static SubjectAttributes getSubjectAttributes(CollectedValues values)
+    {
         List<Attribute> subjectAttributes = new ArrayList<>(3);
-        handleSubject(userInfo, result.getRequestedUserId(), subjectAttributes);
+        handleSubject(values, subjectAttributes);
 
         Map<String, String> nameMap = new HashMap<>();
-        ifNotNull(userInfo.getGivenName(), givenName -> nameMap.put(Name.GIVEN_NAME, givenName));
-        ifNotNull(userInfo.getSurname(), name -> nameMap.put(Name.FAMILY_NAME, name));
-        ifNotNull(userInfo.getName(), name -> nameMap.put(Name.FORMATTED, name));
+        ifNotNull(values.getGivenName(), givenName -> nameMap.put(Name.GIVEN_NAME, givenName));
+        ifNotNull(values.getSurname(), name -> nameMap.put(Name.FAMILY_NAME, name));
+        ifNotNull(values.getName(), name -> nameMap.put(Name.FORMATTED, name));
 
         if (!nameMap.isEmpty())
         {
             subjectAttributes.add(Attribute.of(NAME, Name.of(nameMap)));
         }
 
-        if (userInfo.getCertificate() != null)
+        if (values.getCertificate() != null)
         {
-            X509Certificates certificate = X509Certificates.of(userInfo.getCertificate(), true);
+            X509Certificates certificate = X509Certificates.of(values.getCertificate(), true);
             ListAttributeValue certificateList = ListAttributeValue.of(Collections.singleton(certificate));
             ComplexAttribute<X509Certificates> certificates = ComplexAttribute.of(AttributeName.of(X509_CERTIFICATES),
                     certificateList, Attribute.NO_AUTHORITY, X509Certificates::of);
@@ -100,11 +117,12 @@ public class NetIdAccessAuthenticationAttributes extends AuthenticationAttribute
         return SubjectAttributes.of(subjectAttributes);
     }
 
-    private static void handleSubject(UserInfoType userInfo, @Nullable String requestedUserId, List<Attribute> subjectAttributes)
+    private static void handleSubject(CollectedValues values, List<Attribute> subjectAttributes)
     {
-        @Nullable String personalNumber = userInfo.getPersonalNumber();
-        @Nullable String userId = userInfo.getUserId();
-        @Nullable String userUniqueName = userInfo.getUserUniqueName();
+        @Nullable String personalNumber = values.getPersonalNumber();
+        @Nullable String userId = values.getUserId();
+        @Nullable String userUniqueName = values.getUserUniqueName();
+        @Nullable String requestedUserId = values.getRequestedUserId();
         if (personalNumber == null && userId == null && userUniqueName == null && requestedUserId == null)
         {
             throw new RuntimeException("Did not get a user identifier in NetiD response");
@@ -118,19 +136,156 @@ public class NetIdAccessAuthenticationAttributes extends AuthenticationAttribute
         ifNotNull(requestedUserId, ruid -> subjectAttributes.add(Attribute.of("requestedUserId", ruid)));
     }
 
-    private static ContextAttributes getContextAttributes(ResultCollect result)
+    private static ContextAttributes getContextAttributes(CollectedValues values)
     {
         List<Attribute> contextAttributes = new ArrayList<>(4);
 
-        DeviceInfoType deviceInfo = valueOrError(result.getDeviceInfo(), "Did not get DeviceInfo in response");
+        contextAttributes.add(Attribute.of("deviceType", values.getDeviceName()));
+        contextAttributes.add(Attribute.of("ipAddress", values.getDeviceAddress()));
 
-        contextAttributes.add(Attribute.of("deviceType", deviceInfo.getName()));
-        contextAttributes.add(Attribute.of("ipAddress", deviceInfo.getAddress()));
-
-        if (isNotEmpty(result.getOcspResponse()))
+        if (isNotEmpty(values.getOcspResponse()))
         {
-            contextAttributes.add(Attribute.of("ocspResponse", result.getOcspResponse()));
+            contextAttributes.add(Attribute.of("ocspResponse", values.getOcspResponse()));
         }
         return ContextAttributes.of(contextAttributes);
     }
+
+    /**
+     * The raw values of a completed collect that the authentication attributes are built from.
+     */
+    static final class CollectedValues implements Serializable
+    {
+        @Nullable
+        private final String _personalNumber;
+        @Nullable
+        private final String _userId;
+        @Nullable
+        private final String _userUniqueName;
+        @Nullable
+        private final String _requestedUserId;
+        @Nullable
+        private final String _givenName;
+        @Nullable
+        private final String _surname;
+        @Nullable
+        private final String _name;
+        @Nullable
+        private final String _certificate;
+        @Nullable
+        private final String _deviceName;
+        @Nullable
+        private final String _deviceAddress;
+        @Nullable
+        private final String _ocspResponse;
+
+        CollectedValues(@Nullable String personalNumber,
+                        @Nullable String userId,
+                        @Nullable String userUniqueName,
+                        @Nullable String requestedUserId,
+                        @Nullable String givenName,
+                        @Nullable String surname,
+                        @Nullable String name,
+                        @Nullable String certificate,
+                        @Nullable String deviceName,
+                        @Nullable String deviceAddress,
+                        @Nullable String ocspResponse)
+        {
+            _personalNumber = personalNumber;
+            _userId = userId;
+            _userUniqueName = userUniqueName;
+            _requestedUserId = requestedUserId;
+            _givenName = givenName;
+            _surname = surname;
+            _name = name;
+            _certificate = certificate;
+            _deviceName = deviceName;
+            _deviceAddress = deviceAddress;
+            _ocspResponse = ocspResponse;
+        }
+
+        static CollectedValues of(ResultCollect result)
+        {
+            UserInfoType userInfo = valueOrError(result.getUserInfo(), "Did not get UserInfo in response");
+            DeviceInfoType deviceInfo = valueOrError(result.getDeviceInfo(), "Did not get DeviceInfo in response");
+
+            return new CollectedValues(
+                    userInfo.getPersonalNumber(),
+                    userInfo.getUserId(),
+                    userInfo.getUserUniqueName(),
+                    result.getRequestedUserId(),
+                    userInfo.getGivenName(),
+                    userInfo.getSurname(),
+                    userInfo.getName(),
+                    userInfo.getCertificate(),
+                    deviceInfo.getName(),
+                    deviceInfo.getAddress(),
+                    result.getOcspResponse());
+        }
+
+        @Nullable
+        String getPersonalNumber()
+        {
+            return _personalNumber;
+        }
+
+        @Nullable
+        String getUserId()
+        {
+            return _userId;
+        }
+
+        @Nullable
+        String getUserUniqueName()
+        {
+            return _userUniqueName;
+        }
+
+        @Nullable
+        String getRequestedUserId()
+        {
+            return _requestedUserId;
+        }
+
+        @Nullable
+        String getGivenName()
+        {
+            return _givenName;
+        }
+
+        @Nullable
+        String getSurname()
+        {
+            return _surname;
+        }
+
+        @Nullable
+        String getName()
+        {
+            return _name;
+        }
+
+        @Nullable
+        String getCertificate()
+        {
+            return _certificate;
+        }
+
+        @Nullable
+        String getDeviceName()
+        {
+            return _deviceName;
+        }
+
+        @Nullable
+        String getDeviceAddress()
+        {
+            return _deviceAddress;
+        }
+
+        @Nullable
+        String getOcspResponse()
+        {
+            return _ocspResponse;
+        }
+    }
 }
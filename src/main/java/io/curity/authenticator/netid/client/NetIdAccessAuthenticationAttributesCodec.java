@@ -0,0 +1,363 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.client;
+
+import io.curity.authenticator.netid.client.NetIdAccessAuthenticationAttributes.CollectedValues;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact encoding of {@link NetIdAccessAuthenticationAttributes}, used to keep completed authentications in the
+ * session.
+ * <p>
+ * Rather than storing the attribute maps, only the values collected from Net iD are written, each prefixed with its
+ * length. The certificate and OCSP response are stored as the bytes they encode rather than as Base64 text, and when
+ * the values are large enough (which they usually are, because of those two) they are deflated. Decoding recreates
+ * the authentication attributes directly from the values.
+ * <p>
+ * Layout, before Base64 encoding: one version byte, one flags byte, followed by the (possibly deflated) values. Each
+ * value starts with a varint holding its length in bytes, shifted left two bits, with the kind of value
+ * ({@code null}, UTF-8 text or Base64 decoded bytes) in the lower two bits.
+ */
+public final class NetIdAccessAuthenticationAttributesCodec
+{
+    private static final byte VERSION = 1;
+    private static final int FLAG_DEFLATED = 1;
+    private static final int HEADER_LENGTH = 2;
+    private static final int FIELD_COUNT = 11;
+
+    private static final int KIND_NULL = 0;
+    private static final int KIND_TEXT = 1;
+    private static final int KIND_BASE64 = 2;
+    private static final int KIND_BITS = 2;
+    private static final int KIND_MASK = 3;
+
+    // Below this size, deflating does not pay off
+    private static final int COMPRESSION_THRESHOLD = 256;
+
+    private NetIdAccessAuthenticationAttributesCodec()
+    {
+    }
+
+    /**
+     * Encode the attributes into a string that can be stored in the session.
+     *
+     * @param attributes the attributes to encode
+     * @return the encoded attributes
+     */
+    public static String encode(NetIdAccessAuthenticationAttributes attributes)
+    {
+        return Base64.getEncoder().encodeToString(encodeToBytes(attributes));
+    }
+
+    /**
+     * Decode attributes that were encoded using {@link #encode(NetIdAccessAuthenticationAttributes)}.
+     *
+     * @param encoded the encoded attributes
+     * @return the decoded attributes
+     * @throws IllegalArgumentException if the input is not a valid encoding
+     */
+    public static NetIdAccessAuthenticationAttributes decode(String encoded)
+    {
+        return decodeFromBytes(Base64.getDecoder().decode(encoded));
+    }
+
+    static byte[] encodeToBytes(NetIdAccessAuthenticationAttributes attributes)
+    {
+        CollectedValues values = attributes.getCollectedValues();
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(512);
+
+        writeString(payload, values.getPersonalNumber());
+        writeString(payload, values.getUserId());
+        writeString(payload, values.getUserUniqueName());
+        writeString(payload, values.getRequestedUserId());
+        writeString(payload, values.getGivenName());
+        writeString(payload, values.getSurname());
+        writeString(payload, values.getName());
+        writeBase64(payload, values.getCertificate());
+        writeString(payload, values.getDeviceName());
+        writeString(payload, values.getDeviceAddress());
+        writeBase64(payload, values.getOcspResponse());
+
+        byte[] raw = payload.toByteArray();
+        int flags = 0;
+        byte[] body = raw;
+
+        if (raw.length >= COMPRESSION_THRESHOLD)
+        {
+            byte[] deflated = deflate(raw);
+
+            if (deflated.length < raw.length)
+            {
+                flags |= FLAG_DEFLATED;
+                body = deflated;
+            }
+        }
+
+        byte[] result = new byte[HEADER_LENGTH + body.length];
+        result[0] = VERSION;
+        result[1] = (byte) flags;
+        System.arraycopy(body, 0, result, HEADER_LENGTH, body.length);
+
+        return result;
+    }
+
+    static NetIdAccessAuthenticationAttributes decodeFromBytes(byte[] encoded)
+    {
+        if (encoded.length < HEADER_LENGTH || encoded[0] != VERSION)
+        {
+            throw new IllegalArgumentException("Unsupported encoding of authentication attributes");
+        }
+
+        byte[] body = Arrays.copyOfRange(encoded, HEADER_LENGTH, encoded.length);
+
+        if ((encoded[1] & FLAG_DEFLATED) != 0)
+        {
+            body = inflate(body);
+        }
+
+        var reader = new Reader(body);
+        String[] fields = new String[FIELD_COUNT];
+
+        for (int i = 0; i < FIELD_COUNT; i++)
+        {
+            fields[i] = reader.readString();
+        }
+
+        if (reader.hasRemaining())
+        {
+            throw new IllegalArgumentException("Trailing data after encoded authentication attributes");
+        }
+
+        return NetIdAccessAuthenticationAttributes.of(new CollectedValues(
+                fields[0], fields[1], fields[2], fields[3], fields[4], fields[5],
+                fields[6], fields[7], fields[8], fields[9], fields[10]));
+    }
+
+    private static void writeString(ByteArrayOutputStream out, @Nullable String value)
+    {
+        if (value == null)
+        {
+            writeVarInt(out, KIND_NULL);
+            return;
+        }
+
+        writeBytes(out, KIND_TEXT, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBase64(ByteArrayOutputStream out, @Nullable String value)
+    {
+        @Nullable byte[] decoded = decodeCanonicalBase64(value);
+
+        if (decoded == null)
+        {
+            writeString(out, value);
+            return;
+        }
+
+        writeBytes(out, KIND_BASE64, decoded);
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, int kind, byte[] bytes)
+    {
+        writeVarInt(out, (bytes.length << KIND_BITS) | kind);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Decode the value if it is Base64 that re-encodes to exactly the same string; anything else (line breaks,
+     * missing padding and so on) is kept as text so that decoding gives back the value exactly.
+     */
+    @Nullable
+    private static byte[] decodeCanonicalBase64(@Nullable String value)
+    {
+        if (value == null || value.isEmpty())
+        {
+            return null;
+        }
+
+        try
+        {
+            byte[] decoded = Base64.getDecoder().decode(value);
+
+            return Base64.getEncoder().encodeToString(decoded).equals(value) ? decoded : null;
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+
+    private static byte[] deflate(byte[] input)
+    {
+        var deflater = new Deflater(Deflater.BEST_SPEED, true);
+
+        try
+        {
+            deflater.setInput(input);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length);
+            byte[] buffer = new byte[1024];
+
+            while (!deflater.finished())
+            {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+
+            return out.toByteArray();
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] input)
+    {
+        var inflater = new Inflater(true);
+
+        try
+        {
+            inflater.setInput(input);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length * 2);
+            byte[] buffer = new byte[1024];
+
+            while (!inflater.finished())
+            {
+                int count = inflater.inflate(buffer);
+
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                {
+                    throw new IllegalArgumentException("Truncated encoding of authentication attributes");
+                }
+
+                out.write(buffer, 0, count);
+            }
+
+            return out.toByteArray();
+        }
+        catch (DataFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid encoding of authentication attributes", e);
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+    private static final class Reader
+    {
+        private final byte[] _bytes;
+        private int _position = 0;
+
+        Reader(byte[] bytes)
+        {
+            _bytes = bytes;
+        }
+
+        boolean hasRemaining()
+        {
+            return _position < _bytes.length;
+        }
+
+        @Nullable
+        String readString()
+        {
+            int header = readVarInt();
+            int kind = header & KIND_MASK;
+            int length = header >>> KIND_BITS;
+
+            if (kind == KIND_NULL)
+            {
+                return null;
+            }
+
+            if (length > _bytes.length - _position)
+            {
+                throw new IllegalArgumentException("Truncated encoding of authentication attributes");
+            }
+
+            String value;
+
+            switch (kind)
+            {
+                case KIND_TEXT:
+                    value = new String(_bytes, _position, length, StandardCharsets.UTF_8);
+                    break;
+                case KIND_BASE64:
+                    value = Base64.getEncoder().encodeToString(Arrays.copyOfRange(_bytes, _position, _position + length));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown value kind in encoding of authentication attributes");
+            }
+
+            _position += length;
+
+            return value;
+        }
+
+        private int readVarInt()
+        {
+            int value = 0;
+
+            for (int shift = 0; shift < 32; shift += 7)
+            {
+                if (!hasRemaining())
+                {
+                    throw new IllegalArgumentException("Truncated encoding of authentication attributes");
+                }
+
+                byte b = _bytes[_position++];
+                value |= (b & 0x7F) << shift;
+
+                if ((b & 0x80) == 0)
+                {
+                    if (value < 0)
+                    {
+                        throw new IllegalArgumentException("Invalid length in encoding of authentication attributes");
+                    }
+
+                    return value;
+                }
+            }
+
+            throw new IllegalArgumentException("Invalid length in encoding of authentication attributes");
+        }
+    }
+}
@@ -17,53 +17,152 @@
 package io.curity.authenticator.netid.client;
 
 import com.google.common.base.Strings;
-import com.secmaker.netid.nias.NetiDAccessServerSoap;
 import com.secmaker.netid.nias.ResultCollect;
 import io.curity.authenticator.netid.NetIdAccessServerSoapClient;
+import io.curity.authenticator.netid.balancing.EndpointBalancer;
+import io.curity.authenticator.netid.balancing.NetIdAccessEndpoint;
 import io.curity.authenticator.netid.config.NetIdAccessConfig;
+import io.curity.authenticator.netid.jfr.BackendCallEvent;
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics;
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics.Operation;
+import io.curity.authenticator.netid.tracing.Span;
+import io.curity.authenticator.netid.tracing.Tracer;
+import io.curity.authenticator.netid.utils.Deadline;
+import jakarta.xml.ws.WebServiceException;
 import jakarta.xml.ws.soap.SOAPFaultException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import se.curity.identityserver.sdk.ClassLoaderContextUtils;
 import se.curity.identityserver.sdk.Nullable;
+import se.curity.identityserver.sdk.attribute.Attribute;
+import se.curity.identityserver.sdk.attribute.AttributeName;
 import se.curity.identityserver.sdk.plugin.ManagedObject;
 import se.curity.identityserver.sdk.service.ExceptionFactory;
+import se.curity.identityserver.sdk.service.SessionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.google.common.base.Enums.getIfPresent;
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.ENDPOINT;
 import static io.curity.authenticator.netid.client.CollectFaultStatus.INTERNAL_ERROR;
 import static io.curity.authenticator.netid.utils.WebServiceUtils.callWebServiceWithRetry;
 import static se.curity.identityserver.sdk.errors.ErrorCode.EXTERNAL_SERVICE_ERROR;
 
 public class NetIdAccessClient extends ManagedObject<NetIdAccessConfig> implements PollingClient
 {
+    private static final Logger _logger = LoggerFactory.getLogger(NetIdAccessClient.class);
     private static final String SERVICE_NAME = "Net iD Access";
-    private final NetiDAccessServerSoap _proxy;
+    private static final String SUCCESS_OUTCOME = "OK";
+    private static final String UNKNOWN_OUTCOME = "EXCEPTION";
+    private static final String DEADLINE_OUTCOME = "DEADLINE_EXCEEDED";
+    private static final String OVERLOADED_OUTCOME = "OVERLOADED";
+    // Hedging answers that come within this time would mostly add load
+    private static final long MIN_HEDGE_DELAY_MILLIS = 50;
+    private final EndpointBalancer _endpoints;
+    private final TransactionRegistry _transactionRegistry;
+    private final SessionManager _sessionManager;
     private final ExceptionFactory _exceptionFactory;
     private final ClassLoaderContextUtils _classLoaderContextUtils;
+    private final NetIdAccessMetrics _metrics;
+    private final Tracer _tracer;
+    @Nullable
+    private final HedgeBudget _hedgeBudget;
+    private final Bulkhead _authenticateBulkhead;
+    private final Bulkhead _collectBulkhead;
 
     public NetIdAccessClient(NetIdAccessConfig configuration,
                              NetIdAccessServerSoapClient proxyClient)
     {
         super(configuration);
         _exceptionFactory = configuration.getExceptionFactory();
-        _proxy = proxyClient.getNetIDAccessServerSoap(configuration.getTrustStore(), configuration.getClientKeyStore());
+        _endpoints = proxyClient.getEndpoints(configuration.getTrustStore(), configuration.getClientKeyStore());
+        _transactionRegistry = proxyClient.getTransactionRegistry();
+        _sessionManager = configuration.getSessionManager();
         _classLoaderContextUtils = new ClassLoaderContextUtils(this.getClass().getClassLoader());
+        _metrics = proxyClient.getMetrics();
+        _tracer = proxyClient.getTracer();
+        _hedgeBudget = proxyClient.getHedgeBudget();
+        _authenticateBulkhead = proxyClient.getBulkhead(Operation.AUTHENTICATE);
+        _collectBulkhead = proxyClient.getBulkhead(Operation.COLLECT);
+    }
+
+    @Override
+    public CollectResponse poll(String transactionId) throws PollingClientException
+    {
+        return poll(transactionId, Deadline.NONE);
     }
 
     @Override
-    public CollectResponse poll(String transactionId) throws PollingClientCollectException
+    public CollectResponse poll(String transactionId, Deadline deadline) throws PollingClientException
     {
         ResultCollect response;
+        long startTime = _metrics.callStarted(Operation.COLLECT);
+        var event = new BackendCallEvent();
+        event.begin();
+        Span span = _tracer.startSpan("netid.backend.collect").setOrderRef(transactionId);
+        String outcome = UNKNOWN_OUTCOME;
+        boolean success = false;
         try
         {
-            response = callWebServiceWithRetry(
-                    () -> _classLoaderContextUtils.withPluginClassLoader(() -> _proxy.collect(transactionId)),
-                    () -> _exceptionFactory.
-                            internalServerException(EXTERNAL_SERVICE_ERROR, "Failed to poll for status")).join();
+            if (deadline.isExpired())
+            {
+                outcome = DEADLINE_OUTCOME;
+                throw new PollingClientDeadlineException("The deadline passed before collecting");
+            }
+
+            NetIdAccessEndpoint endpoint = getEndpoint(transactionId);
+            span.setAttribute("endpoint", endpoint.getName());
+            response = collect(span, endpoint, transactionId, deadline);
+            outcome = response.getProgressStatus();
+            success = true;
+        }
+        catch (TimeoutException e)
+        {
+            outcome = DEADLINE_OUTCOME;
+            throw new PollingClientDeadlineException("No answer to collect before the deadline", e);
+        }
+        catch (BulkheadFullException e)
+        {
+            outcome = OVERLOADED_OUTCOME;
+            throw new PollingClientOverloadedException("Did not collect", e);
+        }
+        catch (CompletionException e)
+        {
+            span.setError(e);
+
+            if (deadline.isExpired())
+            {
+                // The call was given until the deadline, and failed because it ran out
+                outcome = DEADLINE_OUTCOME;
+                throw new PollingClientDeadlineException("No answer to collect before the deadline", e.getCause());
+            }
+
+            throw e;
         }
         catch (SOAPFaultException e)
         {
             String faultString = e.getFault().getFaultString();
+            outcome = faultString;
+            span.setError(e);
             throw new PollingClientCollectException(e.getMessage(), e, faultString);
         }
+        finally
+        {
+            _metrics.callEnded(Operation.COLLECT, startTime, success);
+            commit(event, Operation.COLLECT, transactionId, outcome);
+            span.setAttribute("outcome", outcome).close();
+        }
 
         @Nullable CollectStatus status = getIfPresent(CollectStatus.class, response.getProgressStatus()).orNull();
         if (status == null)
@@ -92,27 +191,334 @@ public class NetIdAccessClient extends ManagedObject<NetIdAccessConfig> implemen
     public AuthenticateResponse authenticate(@Nullable String userName, boolean useSameDevice)
             throws PollingClientAuthenticateException
     {
+        long startTime = _metrics.callStarted(Operation.AUTHENTICATE);
+        var event = new BackendCallEvent();
+        event.begin();
+        Span span = _tracer.startSpan("netid.backend.authenticate");
+        @Nullable String transactionId = null;
+        String outcome = UNKNOWN_OUTCOME;
+        boolean success = false;
         try
         {
-            String finalUserName = Strings.nullToEmpty(userName);
-            String transactionId = callWebServiceWithRetry(
-                    () -> _classLoaderContextUtils.withPluginClassLoader(() -> _proxy.authenticate(finalUserName, null, null, null)),
-                    () -> _exceptionFactory.
-                            internalServerException(EXTERNAL_SERVICE_ERROR, "Failed to start authentication")).join();
+            transactionId = startTransaction(span, Strings.nullToEmpty(userName));
+            span.setOrderRef(transactionId);
+            outcome = SUCCESS_OUTCOME;
+            success = true;
             return new AuthenticateResponse.Builder(transactionId, useSameDevice ? transactionId : "").build();
         }
+        catch (BulkheadFullException e)
+        {
+            // Fail fast, with a message that asks the user to try again, rather than wait for calls that are too slow
+            _metrics.authenticationFailed(AuthenticationFaultStatus.OVERLOADED);
+            outcome = AuthenticationFaultStatus.OVERLOADED.name();
+            throw new PollingClientAuthenticateException(e.getMessage(), AuthenticationFaultStatus.OVERLOADED, e);
+        }
         catch (RuntimeException e)
         {
+            span.setError(e);
             Throwable cause = e.getCause();
             if (cause instanceof SOAPFaultException)
             {
                 SOAPFaultException fault = (SOAPFaultException) e.getCause();
                 AuthenticationFaultStatus status = getIfPresent(AuthenticationFaultStatus.class,
                         fault.getFault().getFaultString()).or(AuthenticationFaultStatus.UNKNOWN);
+                _metrics.authenticationFailed(status);
+                outcome = status.name();
                 throw new PollingClientAuthenticateException(fault.getMessage(), status, fault);
             }
 
             throw e;
         }
+        finally
+        {
+            _metrics.callEnded(Operation.AUTHENTICATE, startTime, success);
+            commit(event, Operation.AUTHENTICATE, transactionId, outcome);
+            span.setAttribute("outcome", outcome).close();
+        }
+    }
+
+    /**
+     * Collect the status of a transaction. If hedging is on, and the answer takes longer than most answers of the
+     * server, the collect is made again, on another connection to the same server, and the first answer is used.
+     * Collecting does not change the transaction, so it is safe to do twice.
+     * <p>
+     * When many collects wait their turn, those of transactions that are closest to completing go first. Collects
+     * that are not answered before the deadline are cancelled, so that those still waiting their turn are not made.
+     *
+     * @throws TimeoutException      if there was no answer before the deadline
+     * @throws BulkheadFullException if there were too many collects in progress to make another one
+     */
+    private ResultCollect collect(Span span, NetIdAccessEndpoint endpoint, String transactionId, Deadline deadline)
+            throws TimeoutException
+    {
+        Bulkhead.Priority priority = getCollectPriority(_transactionRegistry.getLastStatus(transactionId));
+        Function<Supplier<ResultCollect>, CompletableFuture<ResultCollect>> submit =
+                call -> _collectBulkhead.supply(call, priority);
+        Supplier<CompletableFuture<ResultCollect>> collect = () -> callWebServiceWithRetry(
+                () -> attempt(span, () -> endpoint.call(Operation.COLLECT, deadline,
+                        proxy -> proxy.collect(transactionId))),
+                submit,
+                () -> _exceptionFactory.
+                        internalServerException(EXTERNAL_SERVICE_ERROR, "Failed to poll for status"));
+        CompletableFuture<ResultCollect> first = collect.get();
+
+        if (_hedgeBudget == null)
+        {
+            return awaitOrCancel(first, deadline);
+        }
+
+        _hedgeBudget.called();
+        double latencyP95Millis = endpoint.getLatencyP95Millis();
+        long hedgeDelayMillis = Math.max((long) latencyP95Millis, MIN_HEDGE_DELAY_MILLIS);
+
+        // Nothing to gain from a hedge that would be made after the deadline
+        if (Double.isNaN(latencyP95Millis) || hedgeDelayMillis >= deadline.remainingMillis())
+        {
+            return awaitOrCancel(first, deadline);
+        }
+
+        try
+        {
+            return await(first, Deadline.after(Duration.ofMillis(hedgeDelayMillis)));
+        }
+        catch (TimeoutException e)
+        {
+            if (!_hedgeBudget.tryHedge())
+            {
+                return awaitOrCancel(first, deadline);
+            }
+        }
+
+        CompletableFuture<ResultCollect> hedge;
+        try
+        {
+            hedge = collect.get();
+        }
+        catch (BulkheadFullException e)
+        {
+            return awaitOrCancel(first, deadline);
+        }
+
+        _metrics.hedged();
+        span.setAttribute("hedged", "true");
+        ResultCollect response;
+        try
+        {
+            response = await(firstSuccessful(first, hedge), deadline);
+        }
+        catch (TimeoutException e)
+        {
+            first.cancel(true);
+            hedge.cancel(true);
+
+            throw e;
+        }
+
+        if (hedge.getNow(null) == response)
+        {
+            _metrics.hedgeWon();
+            // The call cannot be interrupted, but its answer is not waited for
+            first.cancel(true);
+        }
+        else
+        {
+            hedge.cancel(true);
+        }
+
+        return response;
+    }
+
+    /**
+     * Wait for a call to be answered, until the deadline.
+     *
+     * @throws CompletionException if the call failed
+     * @throws TimeoutException    if the call was not answered before the deadline
+     */
+    private static <T> T await(CompletableFuture<T> call, Deadline deadline) throws TimeoutException
+    {
+        if (deadline.isNone())
+        {
+            return call.join();
+        }
+
+        try
+        {
+            return call.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException e)
+        {
+            throw new CompletionException(e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Wait for a call to be answered, until the deadline, and cancel it if it was not.
+     *
+     * @throws CompletionException if the call failed
+     * @throws TimeoutException    if the call was not answered before the deadline
+     */
+    private static <T> T awaitOrCancel(CompletableFuture<T> call, Deadline deadline) throws TimeoutException
+    {
+        try
+        {
+            return await(call, deadline);
+        }
+        catch (TimeoutException e)
+        {
+            call.cancel(true);
+
+            throw e;
+        }
+    }
+
+    private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> first, CompletableFuture<T> second)
+    {
+        var result = new CompletableFuture<T>();
+        var failures = new AtomicInteger();
+        BiConsumer<T, Throwable> completion = (value, error) ->
+        {
+            if (error == null)
+            {
+                result.complete(value);
+            }
+            else if (failures.incrementAndGet() == 2)
+            {
+                result.completeExceptionally(error);
+            }
+        };
+
+        first.whenComplete(completion);
+        second.whenComplete(completion);
+
+        return result;
+    }
+
+    /**
+     * Start a transaction on the server chosen by the balancer. If the server cannot be reached, the transaction is
+     * started on another one. The server is remembered, so that the transaction is collected from it, on this node or
+     * on any other.
+     */
+    private String startTransaction(Span span, String userName)
+    {
+        List<NetIdAccessEndpoint> failed = new ArrayList<>(1);
+        @Nullable NetIdAccessEndpoint next = _endpoints.choose(failed);
+
+        while (true)
+        {
+            NetIdAccessEndpoint endpoint = next;
+            span.setAttribute("endpoint", endpoint.getName());
+
+            try
+            {
+                String transactionId = callWebServiceWithRetry(
+                        () -> attempt(span, () -> endpoint.call(Operation.AUTHENTICATE,
+                                proxy -> proxy.authenticate(userName, null, null, null))),
+                        _authenticateBulkhead,
+                        () -> _exceptionFactory.
+                                internalServerException(EXTERNAL_SERVICE_ERROR, "Failed to start authentication"))
+                        .join();
+
+                _transactionRegistry.putEndpoint(transactionId, endpoint.getName());
+                _sessionManager.put(Attribute.of(AttributeName.of(ENDPOINT), endpoint.getName()));
+
+                return transactionId;
+            }
+            catch (CompletionException e)
+            {
+                failed.add(endpoint);
+                // A SOAP fault is an answer, which another server would give as well
+                boolean unreachable = e.getCause() instanceof WebServiceException
+                        && !(e.getCause() instanceof SOAPFaultException);
+                next = unreachable ? _endpoints.choose(failed) : null;
+
+                if (next == null)
+                {
+                    throw e;
+                }
+
+                _logger.info("Could not start a transaction on Net iD Access server {}, trying {}: {}",
+                        endpoint.getName(), next.getName(), e.getCause().getMessage());
+            }
+        }
+    }
+
+    /**
+     * A user who is signing is about to complete the transaction, and waits for it. Until the user opens the app, the
+     * transaction may sit idle for a long time, and a late answer goes unnoticed.
+     */
+    private static Bulkhead.Priority getCollectPriority(@Nullable CollectStatus lastStatus)
+    {
+        if (lastStatus == null)
+        {
+            return Bulkhead.Priority.NORMAL;
+        }
+
+        switch (lastStatus)
+        {
+            case USER_SIGN:
+                return Bulkhead.Priority.HIGH;
+            case OUTSTANDING_TRANSACTION:
+            case NO_CLIENT:
+                return Bulkhead.Priority.LOW;
+            default:
+                return Bulkhead.Priority.NORMAL;
+        }
+    }
+
+    /**
+     * Find the server that a transaction was started on. Transactions that were started before there were several
+     * servers, have no server recorded, and were started on the first one.
+     */
+    private NetIdAccessEndpoint getEndpoint(String transactionId)
+    {
+        if (_endpoints.getEndpoints().size() == 1)
+        {
+            return _endpoints.get(null);
+        }
+
+        @Nullable String name = _transactionRegistry.getEndpoint(transactionId);
+        if (name == null)
+        {
+            @Nullable Attribute attribute = _sessionManager.get(ENDPOINT);
+            name = attribute == null ? null : attribute.getOptionalValueOfType(String.class);
+        }
+
+        return _endpoints.get(name);
+    }
+
+    /**
+     * Make one attempt of a call, in a span of its own, that is current while the SOAP handlers run.
+     */
+    private <T> T attempt(Span call, Supplier<T> webServiceCall)
+    {
+        try (var span = _tracer.startSpan(call.getName() + ".attempt", call))
+        {
+            try
+            {
+                return _classLoaderContextUtils.withPluginClassLoader(webServiceCall);
+            }
+            catch (RuntimeException e)
+            {
+                span.setError(e);
+                throw e;
+            }
+        }
+    }
+
+    private static void commit(BackendCallEvent event, Operation operation, @Nullable String orderRef,
+                               String outcome)
+    {
+        event.end();
+
+        if (event.shouldCommit())
+        {
+            event.set(operation.name(), orderRef, outcome);
+            event.commit();
+        }
     }
 }
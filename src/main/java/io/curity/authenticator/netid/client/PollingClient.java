@@ -17,6 +17,8 @@
 
 package io.curity.authenticator.netid.client;
 
+import io.curity.authenticator.netid.utils.Deadline;
+
 import javax.annotation.Nullable;
 
 public interface PollingClient
@@ -25,5 +27,15 @@ public interface PollingClient
 
     CollectResponse poll(String transactionId) throws PollingClientException;
 
+    /**
+     * Poll, giving up when the deadline has passed.
+     *
+     * @throws PollingClientDeadlineException if the server did not answer before the deadline
+     */
+    default CollectResponse poll(String transactionId, Deadline deadline) throws PollingClientException
+    {
+        return poll(transactionId);
+    }
+
     String getServiceName();
 }
@@ -0,0 +1,34 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.client;
+
+/**
+ * Thrown when the server did not answer before the deadline of the request, which does not say anything about the
+ * transaction, so the request can be answered as if it were still pending.
+ */
+public class PollingClientDeadlineException extends PollingClientException
+{
+    public PollingClientDeadlineException(String message)
+    {
+        super(message);
+    }
+
+    public PollingClientDeadlineException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+}
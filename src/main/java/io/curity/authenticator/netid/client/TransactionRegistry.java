@@ -0,0 +1,237 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.client;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+
+/**
+ * Node-local state about the Net iD transactions that are in progress, keyed by order reference.
+ * <p>
+ * The session is always the source of truth, as the requests of a transaction may be handled by different nodes.
+ * This registry only holds what this node has seen, so that requests that land on the same node can skip work.
+ * Entries that are not touched for a while are evicted. The results of completed transactions are not kept here, since
+ * the node that completes a transaction cannot know which node picks up the result, so they are in the session only.
+ */
+public final class TransactionRegistry
+{
+    // Net iD Access transactions expire well before this
+    private static final Duration IDLE_EXPIRY = Duration.ofMinutes(10);
+    private static final long MAXIMUM_SIZE = 100_000;
+    // Well above what the poller of the login page does, even when the page is shown again and polls right away
+    private static final int POLL_BURST = 3;
+    private static final long POLL_REFILL_NANOS = Duration.ofSeconds(1).toNanos();
+
+    private final Ticker _ticker;
+    private final Cache<String, Entry> _entries;
+
+    public TransactionRegistry()
+    {
+        this(Ticker.systemTicker());
+    }
+
+    TransactionRegistry(Ticker ticker)
+    {
+        _ticker = ticker;
+        _entries = CacheBuilder.newBuilder()
+                .expireAfterAccess(IDLE_EXPIRY)
+                .maximumSize(MAXIMUM_SIZE)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Record the status that the server reported for a transaction.
+     *
+     * @param orderRef the order reference of the transaction
+     * @param status   the status of the transaction
+     */
+    public void recordStatus(String orderRef, CollectStatus status)
+    {
+        Entry entry = getOrCreate(orderRef);
+
+        // Written in this order, and read in the opposite order, so a reader never sees a new status with an old time
+        entry._lastStatusAt = _ticker.read();
+        entry._lastStatus = status;
+    }
+
+    /**
+     * Check if this node recently learned that a transaction is still in progress, in which case there is no need to
+     * ask the server again.
+     *
+     * @param orderRef the order reference of the transaction
+     * @param maxAge   how old the last known status may be
+     * @return true if the transaction was known to be in progress within the given time
+     */
+    public boolean isRecentlyPending(String orderRef, Duration maxAge)
+    {
+        @Nullable Entry entry = _entries.getIfPresent(orderRef);
+
+        if (entry == null)
+        {
+            return false;
+        }
+
+        @Nullable CollectStatus status = entry._lastStatus;
+
+        return status != null
+                && status != CollectStatus.COMPLETE
+                && status != CollectStatus.FAILED
+                && _ticker.read() - entry._lastStatusAt < maxAge.toNanos();
+    }
+
+    /**
+     * @param orderRef the order reference of the transaction
+     * @return the status that the server last reported for the transaction to this node, or null if none
+     */
+    @Nullable
+    public CollectStatus getLastStatus(String orderRef)
+    {
+        @Nullable Entry entry = _entries.getIfPresent(orderRef);
+
+        return entry == null ? null : entry._lastStatus;
+    }
+
+    /**
+     * Take a token from the bucket of polls of a transaction. The bucket holds a few tokens, and gets a new one every
+     * second, so a client that polls more often than that runs out.
+     *
+     * @param orderRef the order reference of the transaction
+     * @return true if the poll may be made, false if the transaction has been polled too often on this node
+     */
+    public boolean tryAcquirePoll(String orderRef)
+    {
+        Entry entry = getOrCreate(orderRef);
+        long now = _ticker.read();
+
+        synchronized (entry)
+        {
+            long refills = entry._pollTokens < POLL_BURST ? (now - entry._pollTokensAt) / POLL_REFILL_NANOS : 0;
+
+            if (refills > 0)
+            {
+                entry._pollTokens = (int) Math.min(POLL_BURST, entry._pollTokens + refills);
+                entry._pollTokensAt += refills * POLL_REFILL_NANOS;
+            }
+
+            if (entry._pollTokens == 0)
+            {
+                return false;
+            }
+
+            if (entry._pollTokens == POLL_BURST)
+            {
+                // A full bucket gets no more tokens, so its refills start when a token is taken
+                entry._pollTokensAt = now;
+            }
+
+            entry._pollTokens--;
+
+            return true;
+        }
+    }
+
+    /**
+     * Record the Net iD Access server that a transaction was started on, so that it can be collected from there.
+     *
+     * @param orderRef the order reference of the transaction
+     * @param endpoint the name of the server
+     */
+    public void putEndpoint(String orderRef, String endpoint)
+    {
+        getOrCreate(orderRef)._endpoint = endpoint;
+    }
+
+    /**
+     * @param orderRef the order reference of the transaction
+     * @return the name of the server that the transaction was started on, or null if it was not started on this node
+     */
+    @Nullable
+    public String getEndpoint(String orderRef)
+    {
+        @Nullable Entry entry = _entries.getIfPresent(orderRef);
+
+        return entry == null ? null : entry._endpoint;
+    }
+
+    /**
+     * @param orderRef the order reference of the transaction
+     * @return the timeline of the transaction, as seen by this node
+     */
+    public TransactionTimeline getTimeline(String orderRef)
+    {
+        return getOrCreate(orderRef)._timeline;
+    }
+
+    /**
+     * Look up the timeline of a transaction without starting one, for a node that may not have seen the transaction.
+     *
+     * @param orderRef the order reference of the transaction
+     * @return the timeline of the transaction, or null if this node knows nothing about it
+     */
+    @Nullable
+    public TransactionTimeline findTimeline(String orderRef)
+    {
+        @Nullable Entry entry = _entries.getIfPresent(orderRef);
+
+        return entry == null ? null : entry._timeline;
+    }
+
+    /**
+     * Forget everything about a transaction.
+     *
+     * @param orderRef the order reference of the transaction
+     */
+    public void remove(String orderRef)
+    {
+        _entries.invalidate(orderRef);
+    }
+
+    /**
+     * @return the approximate number of transactions this node knows about
+     */
+    public long size()
+    {
+        return _entries.size();
+    }
+
+    private Entry getOrCreate(String orderRef)
+    {
+        // The cache allocates on every computeIfAbsent, even when the entry is there, which it almost always is
+        @Nullable Entry entry = _entries.getIfPresent(orderRef);
+
+        return entry != null ? entry : _entries.asMap().computeIfAbsent(orderRef, key -> new Entry());
+    }
+
+    private static final class Entry
+    {
+        private final TransactionTimeline _timeline = new TransactionTimeline();
+
+        @Nullable
+        private volatile String _endpoint;
+        @Nullable
+        private volatile CollectStatus _lastStatus;
+        private volatile long _lastStatusAt;
+        // Guarded by the entry
+        private int _pollTokens = POLL_BURST;
+        private long _pollTokensAt;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * When a transaction started, and when this node first saw each of its statuses, in epoch milliseconds.
+ * <p>
+ * The start is taken from the node that started the transaction when possible, and otherwise from
+ * {@link io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys#INIT_TIME}, which only has a
+ * precision of seconds.
+ */
+public final class TransactionTimeline
+{
+    private static final long UNKNOWN = 0;
+
+    private final AtomicLong _startedAt = new AtomicLong(UNKNOWN);
+    private final AtomicLongArray _firstSeenAt = new AtomicLongArray(CollectStatus.values().length);
+
+    TransactionTimeline()
+    {
+    }
+
+    /**
+     * @return true if the start of the transaction is known
+     */
+    public boolean isStartKnown()
+    {
+        return _startedAt.get() != UNKNOWN;
+    }
+
+    /**
+     * Set when the transaction started, unless it is already known.
+     *
+     * @param startedAt the start of the transaction, in epoch milliseconds
+     */
+    public void startedAt(long startedAt)
+    {
+        _startedAt.compareAndSet(UNKNOWN, startedAt);
+    }
+
+    /**
+     * Record that a status was seen.
+     *
+     * @param status the status that was seen
+     * @param now    the current time, in epoch milliseconds
+     * @return true if this is the first time the status was seen
+     */
+    public boolean seen(CollectStatus status, long now)
+    {
+        return _firstSeenAt.compareAndSet(status.ordinal(), UNKNOWN, now);
+    }
+
+    /**
+     * @param status a status
+     * @return the milliseconds from the start of the transaction until the status was first seen, or -1 if either is
+     * not known
+     */
+    public long millisUntil(CollectStatus status)
+    {
+        long startedAt = _startedAt.get();
+        long seenAt = _firstSeenAt.get(status.ordinal());
+
+        return startedAt == UNKNOWN || seenAt == UNKNOWN ? -1 : Math.max(0, seenAt - startedAt);
+    }
+
+    /**
+     * @param from the earlier status
+     * @param to   the later status
+     * @return the milliseconds between when the statuses were first seen, or -1 if either was not seen
+     */
+    public long millisBetween(CollectStatus from, CollectStatus to)
+    {
+        long fromAt = _firstSeenAt.get(from.ordinal());
+        long toAt = _firstSeenAt.get(to.ordinal());
+
+        return fromAt == UNKNOWN || toAt == UNKNOWN ? -1 : Math.max(0, toAt - fromAt);
+    }
+
+    /**
+     * @param status a status
+     * @param now    the current time, in epoch milliseconds
+     * @return the milliseconds since the status was first seen, or -1 if it was not seen
+     */
+    public long millisSince(CollectStatus status, long now)
+    {
+        long seenAt = _firstSeenAt.get(status.ordinal());
+
+        return seenAt == UNKNOWN ? -1 : Math.max(0, now - seenAt);
+    }
+}
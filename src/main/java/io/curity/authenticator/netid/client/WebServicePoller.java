@@ -18,8 +18,16 @@ package io.curity.authenticator.netid.client;
 
 import io.curity.authenticator.netid.GenericError;
 import io.curity.authenticator.netid.PollingAuthenticatorConstants;
+import io.curity.authenticator.netid.jfr.PollEvent;
+import io.curity.authenticator.netid.jfr.SessionOperationEvent;
+import io.curity.authenticator.netid.jfr.TransactionTransitionEvent;
+import io.curity.authenticator.netid.jfr.TransactionTransitionEvent.Transition;
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics;
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics.Step;
 import io.curity.authenticator.netid.model.PollerPaths;
-import io.curity.authenticator.netid.model.PollingResult;
+import io.curity.authenticator.netid.model.PollingResults;
+import io.curity.authenticator.netid.tracing.Tracer;
+import io.curity.authenticator.netid.utils.Deadline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Marker;
@@ -40,13 +48,16 @@ import se.curity.identityserver.sdk.service.authentication.AuthenticatorInformat
 import se.curity.identityserver.sdk.web.Response;
 
 import javax.annotation.Nullable;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.EndUserMessageKeys.GENERAL_ERROR;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.FormValueNames.RESTART_URL;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.AUTHENTICATION_STATE;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.ERROR_MESSAGE;
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.INIT_TIME;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.ORDER_REF;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.RESULT_ATTRIBUTES;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.RESULT_SUBJECT;
@@ -59,7 +70,13 @@ public class WebServicePoller
     private static final Logger _logger = LoggerFactory.getLogger(WebServicePoller.class);
     private static final Marker MASK_MARKER = MarkerFactory.getMarker("MASK");
 
+    // About the interval of the poller, so that a page render does not add a collect to the ones made by polling
+    private static final Duration RECENTLY_PENDING_MAX_AGE = Duration.ofSeconds(2);
+
     private final PollingClient _pollingClient;
+    private final TransactionRegistry _transactionRegistry;
+    private final NetIdAccessMetrics _metrics;
+    private final Tracer _tracer;
     private final PollerPaths _pollerPaths;
     private final SessionManager _sessionManager;
     private final AuthenticatorInformationProvider _informationProvider;
@@ -67,7 +84,13 @@ public class WebServicePoller
     private final ExceptionFactory _exceptionFactory;
     private final StatusCodeMapping _statusCodeMapping;
 
+    // Resolved on first use, so that a poll builds the fully qualified URI and looks up the shared results only once
+    private @Nullable PollingResults _pollingResults;
+
     public WebServicePoller(PollingClient pollingClient,
+                            TransactionRegistry transactionRegistry,
+                            NetIdAccessMetrics metrics,
+                            Tracer tracer,
                             PollerPaths pollerPaths,
                             SessionManager sessionManager,
                             AuthenticatorInformationProvider informationProvider,
@@ -76,6 +99,9 @@ public class WebServicePoller
                             StatusCodeMapping statusCodeMapping)
     {
         _pollingClient = pollingClient;
+        _transactionRegistry = transactionRegistry;
+        _metrics = metrics;
+        _tracer = tracer;
         _pollerPaths = pollerPaths;
         _sessionManager = sessionManager;
         _informationProvider = informationProvider;
@@ -84,34 +110,74 @@ public class WebServicePoller
         _statusCodeMapping = statusCodeMapping;
     }
 
-    private void poll(Response response, String transactionId, boolean useSameDevice)
+    /**
+     * @return the outcome of the poll, for diagnostics
+     */
+    private String poll(Response response, String transactionId, boolean useSameDevice, Deadline deadline)
     {
         _logger.trace("Polling for authentication status for transaction ID/OrderRef {}", transactionId);
 
+        if (!_transactionRegistry.tryAcquirePoll(transactionId))
+        {
+            @Nullable CollectStatus lastStatus = _transactionRegistry.getLastStatus(transactionId);
+
+            // Only a pending status can be repeated, the others change the session when they are first answered
+            if (lastStatus != null && lastStatus != CollectStatus.COMPLETE && lastStatus != CollectStatus.FAILED)
+            {
+                _logger.debug("Transaction ID/OrderRef {} is polled too often, not collecting", transactionId);
+                _metrics.pollThrottled();
+                keepPollingLater(response, transactionId, useSameDevice);
+
+                return PollOutcome.THROTTLED.name();
+            }
+        }
+
         CollectResponse collectResponse;
         try
         {
-            collectResponse = _pollingClient.poll(transactionId);
+            collectResponse = _pollingClient.poll(transactionId, deadline);
+        }
+        catch (PollingClientDeadlineException e)
+        {
+            // The answer would come too late to matter, and the poller is told to ask again instead
+            _logger.debug("No status for transaction ID/OrderRef {} before the deadline", transactionId);
+            keepPollingLater(response, transactionId, useSameDevice);
+
+            return PollOutcome.DEADLINE_EXCEEDED.name();
+        }
+        catch (PollingClientOverloadedException e)
+        {
+            // The transaction is not affected, and the poller asks again later, when there may be room for the call
+            _logger.debug("Too many collects in progress to collect transaction ID/OrderRef {}", transactionId);
+            keepPollingLater(response, transactionId, useSameDevice);
+
+            return PollOutcome.OVERLOADED.name();
         }
         catch (PollingClientCollectException e)
         {
             _logger.debug("Polling failed with status {}", e.getStatus());
+            _metrics.collectFailed(e.getStatus());
 
             pollFailed(response, e.getStatus()); // Sets status to 201
 
-            return;
+            return e.getStatus().name();
         }
         catch (PollingClientException e)
         {
             _logger.debug("Polling failed with unexpected error", e);
+            _metrics.collectFailed(CollectFaultStatus.INTERNAL_ERROR);
 
             pollFailed(response, null); // Sets status to 201
 
-            return;
+            return CollectStatus.FAILED.name();
         }
 
         _logger.trace("Polling status from server: {}", collectResponse.getStatus());
 
+        _transactionRegistry.recordStatus(transactionId, collectResponse.getStatus());
+        _metrics.collected(collectResponse.getStatus());
+        recordTimeline(transactionId, collectResponse.getStatus(), useSameDevice);
+
         if (collectResponse.getStatus() == CollectStatus.COMPLETE)
         {
             _logger.trace("Indicating to poller that authentication has completed");
@@ -119,14 +185,15 @@ public class WebServicePoller
             //Tell the poller we're ready
             pollSuccess(response); // Sets status to 202 (depending on mapping)
 
-            // Store identity in Session
-            _sessionManager.put(Attribute.of(RESULT_ATTRIBUTES, AttributeValue.of(collectResponse.getAuthenticationAttributes(collectResponse.getSubject()))));
-            _sessionManager.put(Attribute.of(RESULT_SUBJECT, collectResponse.getSubject()));
+            // Store identity in Session, since the result may be picked up by any node
+            String subject = collectResponse.getSubject();
+            putInSession(toSessionAttribute(collectResponse.getAuthenticationAttributes(subject)));
+            putInSession(Attribute.of(RESULT_SUBJECT, subject));
             // Set a flag that we got done flag from server
-            _sessionManager.put(Attribute.of(AUTHENTICATION_STATE, true));
+            putInSession(Attribute.of(AUTHENTICATION_STATE, true));
+            TransactionTransitionEvent.record(transactionId, Transition.COMPLETED, useSameDevice);
 
-            // Still in progress
-            return;
+            return CollectStatus.COMPLETE.name();
         }
 
         String messageId = useSameDevice
@@ -136,10 +203,29 @@ public class WebServicePoller
         _logger.debug("Mapped collect response status {} to message ID {}{} using same device",
                 collectResponse.getStatus(), messageId, useSameDevice ? "" : " not");
 
+        keepPolling(response, collectResponse.getStatus(), useSameDevice);
+
+        return collectResponse.getStatus().name();
+    }
+
+    private void keepPolling(Response response, CollectStatus status, boolean useSameDevice)
+    {
+        HttpStatus httpStatus = _statusCodeMapping.keepPolling();
+        response.setResponseModel(getPollingResults().pending(status, useSameDevice), httpStatus);
+        response.setHttpStatus(httpStatus);
+    }
+
+    /**
+     * Tell the poller that the transaction is still pending as far as is known, and to back off, since the server or
+     * this node is too busy to tell, or the poller polls too often. The poller sees the same as when the transaction
+     * is pending, in both status code mappings, with a delay to wait before polling again.
+     */
+    private void keepPollingLater(Response response, String transactionId, boolean useSameDevice)
+    {
+        @Nullable CollectStatus lastStatus = _transactionRegistry.getLastStatus(transactionId);
         HttpStatus httpStatus = _statusCodeMapping.keepPolling();
-        var pollUrl = _informationProvider.getFullyQualifiedAuthenticationUri() + "/" + _pollerPaths.getPollerPath();
-        var cancelUrl = _informationProvider.getFullyQualifiedAuthenticationUri() + "/" + _pollerPaths.getCancelPath();
-        response.setResponseModel(new PollingResult.Pending(messageId, pollUrl, cancelUrl), httpStatus);
+        response.setResponseModel(getPollingResults().busy(lastStatus == null ? CollectStatus.PENDING : lastStatus,
+                useSameDevice), httpStatus);
         response.setHttpStatus(httpStatus);
     }
 
@@ -151,18 +237,13 @@ public class WebServicePoller
 
         _logger.trace("Saving error message: {}", messageId);
 
-        _sessionManager.put(Attribute.of(AttributeName.of(ERROR_MESSAGE), messageId));
-
-        var pollUrl = _informationProvider.getFullyQualifiedAuthenticationUri() + "/" + _pollerPaths.getPollerPath();
-        var cancelUrl = _informationProvider.getFullyQualifiedAuthenticationUri() + "/" + _pollerPaths.getCancelPath();
-        var failUrl = _informationProvider.getFullyQualifiedAuthenticationUri(
-                // The poller error is the only resource which does not abide by ErrorReportingStrategy.
-                // Instead, we only consider the StatusCodeMapping to define the HTTP status code.
-        ) + "/" + _pollerPaths.getFailedPath();
+        putInSession(Attribute.of(AttributeName.of(ERROR_MESSAGE), messageId));
 
+        // The poller error is the only resource which does not abide by ErrorReportingStrategy.
+        // Instead, we only consider the StatusCodeMapping to define the HTTP status code.
         boolean fatalError = collectFaultStatus == null || collectFaultStatus.isFatal();
         HttpStatus httpStatus = _statusCodeMapping.pollingFailure(fatalError);
-        response.setResponseModel(new PollingResult.Failed(failUrl, pollUrl, cancelUrl, messageId, collectFaultStatus), httpStatus);
+        response.setResponseModel(getPollingResults().failed(collectFaultStatus), httpStatus);
 
         // this http status may be an error code... In case it is, we need to let general-purpose error templates
         // know about the reason of this failure, so we add the failure message to the FAILURE scope.
@@ -175,11 +256,53 @@ public class WebServicePoller
     private void pollSuccess(Response response)
     {
         HttpStatus httpStatus = _statusCodeMapping.pollingDone();
-        String finishOffUrl = _informationProvider.getFullyQualifiedAuthenticationUri() + "/" + _pollerPaths.getPollerPath();
-        response.setResponseModel(new PollingResult.Success(finishOffUrl), httpStatus);
+        response.setResponseModel(getPollingResults().success(), httpStatus);
         response.setHttpStatus(httpStatus);
     }
 
+    private PollingResults getPollingResults()
+    {
+        if (_pollingResults == null)
+        {
+            _pollingResults = PollingResults.of(_informationProvider.getFullyQualifiedAuthenticationUri(),
+                    _pollerPaths);
+        }
+
+        return _pollingResults;
+    }
+
+    /**
+     * Make sure that the authentication state in the session is up to date before rendering a page, by polling like
+     * {@link #getAuthenticationResult(boolean, Response)} does. Polling is skipped if this node recently learned that
+     * the transaction is still in progress, since the server would only tell the same.
+     *
+     * @param response http response
+     */
+    public void refreshAuthenticationState(Response response)
+    {
+        @Nullable String transactionId = Optional.ofNullable(getFromSession(ORDER_REF))
+                .map(attribute -> attribute.getOptionalValueOfType(String.class))
+                .orElse(null);
+        boolean authenticationComplete = Optional.ofNullable(getFromSession(AUTHENTICATION_STATE))
+                .map(attribute -> attribute.getOptionalValueOfType(Boolean.class))
+                .orElse(false);
+
+        if (transactionId != null && !authenticationComplete)
+        {
+            boolean recentlyPending = _transactionRegistry.isRecentlyPending(transactionId, RECENTLY_PENDING_MAX_AGE);
+            _metrics.refreshed(recentlyPending);
+
+            if (recentlyPending)
+            {
+                _logger.trace("Transaction ID/OrderRef {} was recently pending, not polling", transactionId);
+
+                return;
+            }
+        }
+
+        getAuthenticationResult(false, response);
+    }
+
     /**
      * Poll for authentication result
      *
@@ -191,18 +314,60 @@ public class WebServicePoller
     public AuthenticationResult getAuthenticationResult(
             boolean isPollingDone, Response response)
     {
-        boolean authenticationComplete = Optional.ofNullable(_sessionManager.get(AUTHENTICATION_STATE))
+        return getAuthenticationResult(isPollingDone, response, Deadline.NONE);
+    }
+
+    /**
+     * Poll for authentication result, giving up on the server when the deadline has passed. The poller is then told
+     * that the transaction is still pending, so that it polls again.
+     *
+     * @param isPollingDone true if the client claims its finished
+     * @param response      http response
+     * @param deadline      when the poller stops caring about the answer
+     * @return result if the authentication was finished, null otherwise
+     */
+    @Nullable
+    public AuthenticationResult getAuthenticationResult(
+            boolean isPollingDone, Response response, Deadline deadline)
+    {
+        var event = new PollEvent();
+        event.begin();
+
+        try
+        {
+            return getAuthenticationResult(isPollingDone, response, deadline, event);
+        }
+        finally
+        {
+            event.end();
+
+            if (event.shouldCommit())
+            {
+                event.commit();
+            }
+        }
+    }
+
+    @Nullable
+    private AuthenticationResult getAuthenticationResult(
+            boolean isPollingDone, Response response, Deadline deadline, PollEvent event)
+    {
+        boolean authenticationComplete = Optional.ofNullable(getFromSession(AUTHENTICATION_STATE))
                 .map(attribute -> attribute.getOptionalValueOfType(Boolean.class))
                 .orElse(false);
-        var transactionId = Optional.ofNullable(_sessionManager.get(ORDER_REF))
+        var transactionId = Optional.ofNullable(getFromSession(ORDER_REF))
                 .map(attribute -> attribute.getOptionalValueOfType(String.class))
                 .orElse("");
-        boolean useSameDevice = Optional.ofNullable(_sessionManager.get(USE_SAME_DEVICE))
+        boolean useSameDevice = Optional.ofNullable(getFromSession(USE_SAME_DEVICE))
                 .map(attribute -> attribute.getOptionalValueOfType(Boolean.class))
                 .orElse(false);
 
+        event.setOrderRef(transactionId);
+        event.pollingDone = isPollingDone;
+
         if (isEmpty(transactionId))
         {
+            event.outcome = PollOutcome.MISSING_TRANSACTION.name();
             _logger.debug("Tried to poll without a transaction id.");
             throw _exceptionFactory.badRequestException(ErrorCode.MISSING_PARAMETERS);
         }
@@ -211,17 +376,26 @@ public class WebServicePoller
             _logger.debug("Getting authenticated user from state...");
 
             // Get Authentication Result from state
-            @Nullable var sessionAttributes = _sessionManager.get(RESULT_ATTRIBUTES);
-            @Nullable var sessionSubject = _sessionManager.get(RESULT_SUBJECT);
+            @Nullable var sessionAttributes = getFromSession(RESULT_ATTRIBUTES);
+            @Nullable var sessionSubject = getFromSession(RESULT_SUBJECT);
 
             if (sessionAttributes != null)
             {
-                var sessionAttributesMap = sessionAttributes.getValueOfType(Map.class);
-                var authenticationAttributes =  AuthenticationAttributes.of(
-                        SubjectAttributes.of((Map<?, ?>) sessionAttributesMap.get("subject")),
-                        ContextAttributes.of((Map<?, ?>) sessionAttributesMap.get("context"))
-                );
+                var authenticationAttributes = fromSessionAttribute(sessionAttributes);
                 var subject = sessionSubject != null ? sessionSubject.getOptionalValueOfType(String.class) : null;
+                // Only the node that saw the transaction complete knows how long the pickup took
+                @Nullable var timeline = _transactionRegistry.findTimeline(transactionId);
+                long pickupDelay = timeline == null
+                        ? -1
+                        : timeline.millisSince(CollectStatus.COMPLETE, System.currentTimeMillis());
+                if (pickupDelay >= 0)
+                {
+                    _metrics.transactionStep(Step.PICKUP_DELAY, useSameDevice, pickupDelay);
+                }
+                _transactionRegistry.remove(transactionId);
+                event.outcome = PollOutcome.PICKED_UP.name();
+                TransactionTransitionEvent.record(transactionId, Transition.PICKED_UP, useSameDevice);
+
                 return getAuthenticationResultWhenSuccess(_authenticatedState,
                         authenticationAttributes,
                         subject);
@@ -229,6 +403,7 @@ public class WebServicePoller
             else
             {
                 _logger.info("The session ID was not found");
+                event.outcome = PollOutcome.MISSING_RESULT.name();
 
                 throw _exceptionFactory.internalServerException(ErrorCode.INVALID_SERVER_STATE);
             }
@@ -241,6 +416,7 @@ public class WebServicePoller
             _logger.info("Authentication failed, and the form was posted. This could be an " +
                     "attempt to subvert the system or an odd development error, as there is no normal way the form " +
                     "should have been submitted.");
+            event.outcome = PollOutcome.NOT_DONE.name();
 
             response.putViewData(RESTART_URL, _informationProvider.getFullyQualifiedAuthenticationUri().getPath(),
                     Response.ResponseModelScope.ANY);
@@ -248,17 +424,157 @@ public class WebServicePoller
         }
         else
         {
-            poll(response, transactionId, useSameDevice);
+            try (var span = _tracer.startSpan("netid.poll").setOrderRef(transactionId))
+            {
+                event.outcome = poll(response, transactionId, useSameDevice, deadline);
+                span.setAttribute("outcome", event.outcome);
+            }
         }
 
         return null;
     }
 
+    /**
+     * Time the steps of the transaction that the status is the first sign of. The timeline is anchored at the start
+     * of the transaction on this node, or at the {@code INIT_TIME} in the session if it was started on another one.
+     */
+    private void recordTimeline(String transactionId, CollectStatus status, boolean useSameDevice)
+    {
+        var timeline = _transactionRegistry.getTimeline(transactionId);
+
+        if (!timeline.seen(status, System.currentTimeMillis()))
+        {
+            return;
+        }
+
+        if (!timeline.isStartKnown())
+        {
+            Optional.ofNullable(getFromSession(INIT_TIME))
+                    .map(attribute -> attribute.getOptionalValueOfType(Long.class))
+                    .ifPresent(initTime -> timeline.startedAt(TimeUnit.SECONDS.toMillis(initTime)));
+        }
+
+        switch (status)
+        {
+            case STARTED:
+                recordStep(Step.TIME_TO_APP_START, useSameDevice, timeline.millisUntil(status));
+                break;
+            case USER_SIGN:
+                recordStep(Step.TIME_TO_USER_SIGN, useSameDevice, timeline.millisUntil(status));
+                break;
+            case COMPLETE:
+                recordStep(Step.TIME_TO_COMPLETE, useSameDevice, timeline.millisUntil(status));
+                recordStep(Step.TIME_IN_USER_SIGN, useSameDevice,
+                        timeline.millisBetween(CollectStatus.USER_SIGN, CollectStatus.COMPLETE));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void recordStep(Step step, boolean useSameDevice, long millis)
+    {
+        if (millis >= 0)
+        {
+            _metrics.transactionStep(step, useSameDevice, millis);
+        }
+    }
+
+    @Nullable
+    private Attribute getFromSession(String name)
+    {
+        var event = new SessionOperationEvent();
+        event.begin();
+
+        try (var ignored = _tracer.startSpan("netid.session.get").setAttribute("attribute", name))
+        {
+            return _sessionManager.get(name);
+        }
+        finally
+        {
+            commit(event, SessionOperationEvent.Operation.GET, name);
+        }
+    }
+
+    private void putInSession(Attribute attribute)
+    {
+        var event = new SessionOperationEvent();
+        event.begin();
+
+        try (var ignored = _tracer.startSpan("netid.session.put")
+                .setAttribute("attribute", attribute.getName().getValue()))
+        {
+            _sessionManager.put(attribute);
+        }
+        finally
+        {
+            commit(event, SessionOperationEvent.Operation.PUT, attribute.getName().getValue());
+        }
+    }
+
+    private void removeFromSession(String name)
+    {
+        var event = new SessionOperationEvent();
+        event.begin();
+
+        try (var ignored = _tracer.startSpan("netid.session.remove").setAttribute("attribute", name))
+        {
+            _sessionManager.remove(name);
+        }
+        finally
+        {
+            commit(event, SessionOperationEvent.Operation.REMOVE, name);
+        }
+    }
+
+    private static void commit(SessionOperationEvent event, SessionOperationEvent.Operation operation, String name)
+    {
+        event.end();
+
+        if (event.shouldCommit())
+        {
+            event.set(operation, name);
+            event.commit();
+        }
+    }
+
+    private static Attribute toSessionAttribute(AuthenticationAttributes authenticationAttributes)
+    {
+        if (authenticationAttributes instanceof NetIdAccessAuthenticationAttributes)
+        {
+            String encoded = NetIdAccessAuthenticationAttributesCodec.encode(
+                    (NetIdAccessAuthenticationAttributes) authenticationAttributes);
+
+            _logger.debug("Storing {} bytes of authentication attributes in session", encoded.length());
+
+            return Attribute.of(RESULT_ATTRIBUTES, encoded);
+        }
+
+        return Attribute.of(RESULT_ATTRIBUTES, AttributeValue.of(authenticationAttributes));
+    }
+
+    private static AuthenticationAttributes fromSessionAttribute(Attribute sessionAttributes)
+    {
+        @Nullable String encoded = sessionAttributes.getOptionalValueOfType(String.class);
+
+        if (encoded != null)
+        {
+            return NetIdAccessAuthenticationAttributesCodec.decode(encoded);
+        }
+
+        // Stored as a map, by a node that has not been upgraded to the compact encoding
+        var sessionAttributesMap = sessionAttributes.getValueOfType(Map.class);
+        return AuthenticationAttributes.of(
+                SubjectAttributes.of((Map<?, ?>) sessionAttributesMap.get("subject")),
+                ContextAttributes.of((Map<?, ?>) sessionAttributesMap.get("context"))
+        );
+    }
+
     private AuthenticationResult getAuthenticationResultWhenSuccess(AuthenticatedState authenticatedState,
                                                                     @Nullable AuthenticationAttributes authenticationAttributes,
                                                                     @Nullable String subject)
     {
-        PollingAuthenticatorConstants.SessionKeys.all.forEach(_sessionManager::remove);
+        PollingAuthenticatorConstants.SessionKeys.all.forEach(this::removeFromSession);
 
         if (authenticationAttributes == null)
         {
@@ -300,6 +616,14 @@ public class WebServicePoller
         return new AuthenticationResult(authenticationAttributes);
     }
 
+    /**
+     * Outcomes of a poll that did not call the server. Otherwise, the outcome is the collect status or fault status.
+     */
+    private enum PollOutcome
+    {
+        MISSING_TRANSACTION, PICKED_UP, MISSING_RESULT, NOT_DONE, DEADLINE_EXCEEDED, OVERLOADED, THROTTLED
+    }
+
     /**
      * Mapping between different polling results and HTTP status codes.
      * <p>
@@ -29,6 +29,7 @@ import se.curity.identityserver.sdk.service.authentication.AuthenticatorInformat
 import se.curity.identityserver.sdk.service.crypto.ClientKeyCryptoStore;
 import se.curity.identityserver.sdk.service.crypto.ServerTrustCryptoStore;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface NetIdAccessConfig extends Configuration
@@ -49,6 +50,65 @@ public interface NetIdAccessConfig extends Configuration
     @Description("Sets the full path to the Net iD Access service.")
     String getPath();
 
+    @Name("additional-server")
+    @Description("Other Net iD Access servers to spread the calls across, together with the one above. Transactions are started on the servers that have been fastest and most reliable lately, and servers whose calls keep failing are left out for a while. Transactions are always collected from the server that started them.")
+    List<AdditionalServer> getAdditionalServers();
+
+    @Name("health-check-interval")
+    @DefaultInteger(10)
+    @Description("How often, in seconds, to check that each Net iD Access server answers, when there are additional servers. A server that fails two checks in a row is left out until it passes two in a row. Set to 0 to judge the servers only by the calls made to them.")
+    int getHealthCheckInterval();
+
+    @Name("connect-timeout")
+    @DefaultInteger(3000)
+    @Description("How long to wait, in milliseconds, for a connection to the Net iD Access service.")
+    int getConnectTimeout();
+
+    @Name("authenticate-timeout")
+    @DefaultInteger(10000)
+    @Description("How long to wait, in milliseconds, for the answer to an authenticate call. With adaptive timeouts, the most to wait.")
+    int getAuthenticateTimeout();
+
+    @Name("collect-timeout")
+    @DefaultInteger(10000)
+    @Description("How long to wait, in milliseconds, for the answer to a collect call. With adaptive timeouts, the most to wait.")
+    int getCollectTimeout();
+
+    @Name("adaptive-timeouts")
+    @DefaultBoolean(false)
+    @Description("Whether to wait for the answer to a call for twice the time that 99 percent of the recent calls of the same operation to the same server took, within the timeouts above. A call that has stalled then frees its thread sooner.")
+    Boolean isAdaptiveTimeouts();
+
+    @Name("adaptive-timeout-minimum")
+    @DefaultInteger(1000)
+    @Description("The least time to wait, in milliseconds, for the answer to a call, with adaptive timeouts.")
+    int getAdaptiveTimeoutMinimum();
+
+    @Name("poll-deadline")
+    @DefaultInteger(3000)
+    @Description("How long, in milliseconds, a poll of the browser waits for the Net iD Access service to answer, before telling the browser to poll again. Set to 0 to wait as long as the timeout of collect calls.")
+    int getPollDeadline();
+
+    @Name("authenticate-max-concurrent-calls")
+    @DefaultInteger(16)
+    @Description("The most authenticate calls to the Net iD Access service that a node makes at the same time. Authenticate calls have threads of their own, so that polls cannot hold up new logins.")
+    int getAuthenticateMaxConcurrentCalls();
+
+    @Name("authenticate-max-queued-calls")
+    @DefaultInteger(64)
+    @Description("The most authenticate calls that wait for their turn on a node. When the queue is full, new logins fail at once.")
+    int getAuthenticateMaxQueuedCalls();
+
+    @Name("collect-max-concurrent-calls")
+    @DefaultInteger(32)
+    @Description("The most collect calls to the Net iD Access service that a node makes at the same time.")
+    int getCollectMaxConcurrentCalls();
+
+    @Name("collect-max-queued-calls")
+    @DefaultInteger(64)
+    @Description("The most collect calls that wait for their turn on a node. When the queue is full, polls are answered as pending, and the browser polls again.")
+    int getCollectMaxQueuedCalls();
+
     @Description("The Net iD Access service trust store. Either the server certificate or a Certificate Authority. If left empty then the default Java trust store will be used (cacerts).")
     Optional<ServerTrustCryptoStore> getTrustStore();
 
@@ -59,6 +119,53 @@ public interface NetIdAccessConfig extends Configuration
     @Description("Whether to use an HTTP connection to the Net iD Access service. Defaults to an HTTPS connection.")
     Boolean isDisableHttps();
 
+    @Name("enable-tracing")
+    @DefaultBoolean(false)
+    @Description("Whether to trace the handling of requests and the calls to the Net iD Access service. Finished spans are logged on debug level, and the trace context is sent to the service in a traceparent header.")
+    Boolean isEnableTracing();
+
+    @Name("wire-capture-sample-percent")
+    @DefaultInteger(0)
+    @Description("The percentage (0-100) of the exchanges with the Net iD Access service to capture for troubleshooting. Captured messages are redacted and logged on trace level, and the most recent ones are reported by the wireCapture operation of the metrics MBean.")
+    int getWireCaptureSamplePercent();
+
+    @Name("wire-capture-max-bytes")
+    @DefaultInteger(8192)
+    @Description("The maximum number of bytes to capture of each message.")
+    int getWireCaptureMaxBytes();
+
+    @Name("hedge-budget-percent")
+    @DefaultInteger(0)
+    @Description("The percentage (0-100) of extra collect calls that may be made when a collect is slower than usual, to the same server, taking whichever answer comes first. Set to 0 to never make extra calls.")
+    int getHedgeBudgetPercent();
+
+    @Name("validate-personal-number")
+    @DefaultBoolean(false)
+    @Description("Whether to check that the personal number entered by the user is a valid Swedish personal identity number or coordination number, before starting a transaction. Valid numbers are sent to the service as 12 digits, and invalid ones are rejected without calling the service.")
+    Boolean isValidatePersonalNumber();
+
+    @Name("enable-diagnostics")
+    @DefaultBoolean(false)
+    @Description("Whether to expose the diagnostics endpoint of the authenticator, and the diagnostics operation of its metrics MBean, which report the state of the calls to the Net iD Access service on the node. The endpoint answers with access denied when this is off.")
+    Boolean isEnableDiagnostics();
+
+    interface AdditionalServer extends Configuration
+    {
+        @Name("hostname")
+        @Description("Sets the hostname or ip-address of the Net iD Access service.")
+        String getHostName();
+
+        @Name("port")
+        @DefaultInteger(443)
+        @Description("Sets the port of the Net iD Access service.")
+        int getPort();
+
+        @Name("path")
+        @DefaultString("/nias/ServiceServer.asmx")
+        @Description("Sets the full path to the Net iD Access service.")
+        String getPath();
+    }
+
     SessionManager getSessionManager();
 
     ExceptionFactory getExceptionFactory();
@@ -20,6 +20,7 @@ import com.google.common.collect.ImmutableMap;
 import io.curity.authenticator.netid.NetIdAccessServerSoapClient;
 import io.curity.authenticator.netid.config.NetIdAccessConfig;
 import io.curity.authenticator.netid.endpoints.authenticate.CancelRequestHandler;
+import io.curity.authenticator.netid.endpoints.authenticate.DiagnosticsRequestHandler;
 import io.curity.authenticator.netid.endpoints.authenticate.EnterUserNameRequestHandler;
 import io.curity.authenticator.netid.endpoints.authenticate.FailedRequestHandler;
 import io.curity.authenticator.netid.endpoints.authenticate.LaunchRequestHandler;
@@ -31,6 +32,7 @@ import se.curity.identityserver.sdk.plugin.descriptor.AuthenticatorPluginDescrip
 import java.util.Optional;
 
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.Endpoints.CANCEL;
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.Endpoints.DIAGNOSTICS;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.Endpoints.FAILED;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.Endpoints.LAUNCH;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.Endpoints.WAIT;
@@ -51,7 +53,8 @@ public final class NetIdAccessAuthenticatorPluginDescriptor
                 WAIT, WaitRequestHandler.class,
                 FAILED, FailedRequestHandler.class,
                 LAUNCH, LaunchRequestHandler.class,
-                CANCEL, CancelRequestHandler.class
+                CANCEL, CancelRequestHandler.class,
+                DIAGNOSTICS, DiagnosticsRequestHandler.class
         );
     }
 
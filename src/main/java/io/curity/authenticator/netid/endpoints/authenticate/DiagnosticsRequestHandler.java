@@ -0,0 +1,82 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.endpoints.authenticate;
+
+import io.curity.authenticator.netid.NetIdAccessServerSoapClient;
+import io.curity.authenticator.netid.config.NetIdAccessConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.curity.identityserver.sdk.authentication.AuthenticationResult;
+import se.curity.identityserver.sdk.authentication.AuthenticatorRequestHandler;
+import se.curity.identityserver.sdk.errors.ErrorCode;
+import se.curity.identityserver.sdk.http.HttpStatus;
+import se.curity.identityserver.sdk.service.ExceptionFactory;
+import se.curity.identityserver.sdk.web.Request;
+import se.curity.identityserver.sdk.web.Response;
+
+import java.util.Optional;
+
+import static se.curity.identityserver.sdk.web.ResponseModel.mapResponseModel;
+
+/**
+ * Reports the state of the calls to the Net iD Access server on the node that handles the request, if enabled in
+ * the configuration.
+ *
+ * @see io.curity.authenticator.netid.metrics.Diagnostics
+ */
+public final class DiagnosticsRequestHandler implements AuthenticatorRequestHandler<Request>
+{
+    private static final Logger _logger = LoggerFactory.getLogger(DiagnosticsRequestHandler.class);
+
+    private final ExceptionFactory _exceptionFactory;
+    private final boolean _enabled;
+    private final NetIdAccessServerSoapClient _soapClient;
+
+    public DiagnosticsRequestHandler(NetIdAccessConfig configuration, NetIdAccessServerSoapClient soapClient)
+    {
+        _exceptionFactory = configuration.getExceptionFactory();
+        _enabled = configuration.isEnableDiagnostics();
+        _soapClient = soapClient;
+    }
+
+    @Override
+    public Request preProcess(Request request, Response response)
+    {
+        if (!_enabled)
+        {
+            _logger.debug("Diagnostics were requested, but are not enabled");
+
+            throw _exceptionFactory.forbiddenException(ErrorCode.ACCESS_DENIED);
+        }
+
+        return request;
+    }
+
+    @Override
+    public Optional<AuthenticationResult> get(Request request, Response response)
+    {
+        response.setResponseModel(mapResponseModel(_soapClient.getDiagnostics()), HttpStatus.OK);
+
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<AuthenticationResult> post(Request request, Response response)
+    {
+        throw _exceptionFactory.methodNotAllowed();
+    }
+}
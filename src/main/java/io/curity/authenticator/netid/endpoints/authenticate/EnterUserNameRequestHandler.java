@@ -23,16 +23,25 @@ import io.curity.authenticator.netid.NetIdAccessServerSoapClient;
 import io.curity.authenticator.netid.client.NetIdAccessClient;
 import io.curity.authenticator.netid.PollingAuthenticatorConstants;
 import io.curity.authenticator.netid.client.AuthenticateResponse;
+import io.curity.authenticator.netid.client.AuthenticationFaultStatus;
+import io.curity.authenticator.netid.client.CollectStatus;
 import io.curity.authenticator.netid.client.PollingClient;
 import io.curity.authenticator.netid.client.PollingClientAuthenticateException;
 import io.curity.authenticator.netid.client.PollingClientException;
+import io.curity.authenticator.netid.client.TransactionRegistry;
 import io.curity.authenticator.netid.client.UnknownUserNameException;
 import io.curity.authenticator.netid.ErrorReportingStrategy;
 import io.curity.authenticator.netid.model.PollerPaths;
 import io.curity.authenticator.netid.model.UserNameGetModel;
 import io.curity.authenticator.netid.model.UserNamePostModel;
 import io.curity.authenticator.netid.config.NetIdAccessConfig;
+import io.curity.authenticator.netid.jfr.TransactionTransitionEvent;
+import io.curity.authenticator.netid.jfr.TransactionTransitionEvent.Transition;
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics;
 import io.curity.authenticator.netid.model.NonValidatingUserNameRequestModel;
+import io.curity.authenticator.netid.tracing.Span;
+import io.curity.authenticator.netid.tracing.Tracer;
+import io.curity.authenticator.netid.utils.PersonalNumberValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.curity.identityserver.sdk.Nullable;
@@ -77,6 +86,11 @@ public final class EnterUserNameRequestHandler
     private final AuthenticatorInformationProvider _informationProvider;
     private final SessionManager _sessionManager;
     private final PollingClient _netIdAccessClient;
+    private final TransactionRegistry _transactionRegistry;
+    private final Tracer _tracer;
+    private final NetIdAccessMetrics _metrics;
+    @Nullable
+    private final PersonalNumberValidator _personalNumberValidator;
     private PollerPaths _pollerPaths;
     private ErrorReportingStrategy _errorReportingStrategy;
 
@@ -90,6 +104,10 @@ public final class EnterUserNameRequestHandler
         _sessionManager = configuration.getSessionManager();
         _userPreferenceManager = configuration.getUserPreferenceManager();
         _netIdAccessClient = new NetIdAccessClient(configuration, soapClient);
+        _transactionRegistry = soapClient.getTransactionRegistry();
+        _tracer = soapClient.getTracer();
+        _metrics = soapClient.getMetrics();
+        _personalNumberValidator = configuration.isValidatePersonalNumber() ? new PersonalNumberValidator() : null;
     }
 
     @Override
@@ -106,7 +124,7 @@ public final class EnterUserNameRequestHandler
         );
 
 
-        return createRequestModel(request, _userPreferenceManager, _authenticatedState);
+        return createRequestModel(request);
     }
 
     @Override
@@ -149,7 +167,7 @@ public final class EnterUserNameRequestHandler
     @Override
     public Optional<AuthenticationResult> post(NonValidatingUserNameRequestModel requestModel, Response response)
     {
-        try
+        try (var ignored = _tracer.startSpan("netid.enterUserName.post"))
         {
             @Nullable UserNamePostModel model = requestModel.getPostRequestModel();
 
@@ -161,6 +179,14 @@ public final class EnterUserNameRequestHandler
 
                 throw _exceptionFactory.badRequestException(ErrorCode.INVALID_INPUT);
             }
+            else if (!model.isValid())
+            {
+                // The service would only say that the user is unknown
+                _logger.debug("Not starting a transaction, as the personal number is missing or not valid");
+                _metrics.authenticateAvoided();
+
+                throw new UnknownUserNameException(AuthenticationFaultStatus.UNKNOWN_USER);
+            }
             else
             {
                 userName = model.getUserName();
@@ -189,7 +215,7 @@ public final class EnterUserNameRequestHandler
     @Override
     public void onRequestModelValidationFailure(Request request, Response response, Set<ErrorMessage> errorMessages)
     {
-        NonValidatingUserNameRequestModel model = createRequestModel(request, _userPreferenceManager, _authenticatedState);
+        NonValidatingUserNameRequestModel model = createRequestModel(request);
         if (model.getPostRequestModel() != null)
         {
             if (request.isPostRequest())
@@ -201,11 +227,10 @@ public final class EnterUserNameRequestHandler
         }
     }
 
-    private static NonValidatingUserNameRequestModel createRequestModel(Request request,
-                                                                        UserPreferenceManager userPreferenceManager,
-                                                                        AuthenticatedState authenticatedState)
+    private NonValidatingUserNameRequestModel createRequestModel(Request request)
     {
-        return new NonValidatingUserNameRequestModel(request, authenticatedState, userPreferenceManager);
+        return new NonValidatingUserNameRequestModel(request, _authenticatedState, _userPreferenceManager,
+                _personalNumberValidator);
     }
 
     private void setResponseModel(Request request, Response response)
@@ -235,8 +260,20 @@ public final class EnterUserNameRequestHandler
 
     private RuntimeException redirectToStartAppPage(boolean useSameDevice, @Nullable String personalNumber)
     {
+        Instant initTime = Instant.now();
         AuthenticateResponse authenticateResponse = authenticate(personalNumber, useSameDevice);
 
+        @Nullable Span span = Span.current();
+        if (span != null)
+        {
+            span.setOrderRef(authenticateResponse.getTransactionId());
+        }
+
+        // The transaction was just started, so the launch page does not need to ask the server about it
+        _transactionRegistry.recordStatus(authenticateResponse.getTransactionId(), CollectStatus.OUTSTANDING_TRANSACTION);
+        _transactionRegistry.getTimeline(authenticateResponse.getTransactionId()).startedAt(initTime.toEpochMilli());
+        TransactionTransitionEvent.record(authenticateResponse.getTransactionId(), Transition.STARTED, useSameDevice);
+
         // Save info in session and clear old data
         _sessionManager.put(Attribute.of(
                 AttributeName.of(AUTOSTART_TOKEN),
@@ -251,7 +288,7 @@ public final class EnterUserNameRequestHandler
         ));
         _sessionManager.put(Attribute.of(
                 AttributeName.of(INIT_TIME),
-                Instant.now().getEpochSecond()
+                initTime.getEpochSecond()
         ));
         _sessionManager.remove(AUTHENTICATION_STATE);
         _sessionManager.remove(RESULT_SUBJECT);
@@ -19,14 +19,19 @@ package io.curity.authenticator.netid.endpoints.authenticate;
 import com.google.common.collect.ImmutableMap;
 import io.curity.authenticator.netid.NetIdAccessServerSoapClient;
 import io.curity.authenticator.netid.client.NetIdAccessClient;
+import io.curity.authenticator.netid.client.TransactionRegistry;
 import io.curity.authenticator.netid.PollingAuthenticatorConstants;
 import io.curity.authenticator.netid.client.WebServicePoller;
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics;
 import io.curity.authenticator.netid.model.AuthenticationCompletedResponseModel;
 import io.curity.authenticator.netid.model.LaunchRequestModel;
 import io.curity.authenticator.netid.model.LaunchResponseModel;
 import io.curity.authenticator.netid.model.PollerPaths;
 import io.curity.authenticator.netid.model.PollingResult;
 import io.curity.authenticator.netid.config.NetIdAccessConfig;
+import io.curity.authenticator.netid.jfr.TransactionTransitionEvent;
+import io.curity.authenticator.netid.jfr.TransactionTransitionEvent.Transition;
+import io.curity.authenticator.netid.tracing.Tracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.curity.identityserver.sdk.attribute.Attribute;
@@ -55,6 +60,7 @@ import static io.curity.authenticator.netid.PollingAuthenticatorConstants.FormVa
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.FormValueNames.RESTART_URL;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.FormValueNames.RETURN_TO_URL;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.AUTHENTICATION_STATE;
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.ORDER_REF;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.SESSION_LAUNCH_COUNT;
 import static io.curity.authenticator.netid.utils.SdkConstants.ACTION;
 import static io.curity.authenticator.netid.utils.SdkConstants.CSP_OVERRIDE_CHILD_SRC;
@@ -70,6 +76,9 @@ public final class LaunchRequestHandler implements AuthenticatorRequestHandler<L
     private PollerPaths _pollerPaths;
     private final SessionManager _sessionManager;
     private final NetIdAccessClient _netIdAccessClient;
+    private final TransactionRegistry _transactionRegistry;
+    private final NetIdAccessMetrics _metrics;
+    private final Tracer _tracer;
     private final ExceptionFactory _exceptionFactory;
     private final AuthenticatedState _authenticatedState;
 
@@ -80,6 +89,9 @@ public final class LaunchRequestHandler implements AuthenticatorRequestHandler<L
         _authenticatedState = authenticatedState;
         _exceptionFactory = configuration.getExceptionFactory();
         _netIdAccessClient = new NetIdAccessClient(configuration, soapClient);
+        _transactionRegistry = soapClient.getTransactionRegistry();
+        _metrics = soapClient.getMetrics();
+        _tracer = soapClient.getTracer();
     }
 
     @Override
@@ -88,6 +100,9 @@ public final class LaunchRequestHandler implements AuthenticatorRequestHandler<L
         _pollerPaths = getPollerPaths(request);
         _webservicePoller = new WebServicePoller(
                 _netIdAccessClient,
+                _transactionRegistry,
+                _metrics,
+                _tracer,
                 _pollerPaths,
                 _sessionManager,
                 _informationProvider,
@@ -105,11 +120,32 @@ public final class LaunchRequestHandler implements AuthenticatorRequestHandler<L
 
     @Override
     public Optional<AuthenticationResult> get(LaunchRequestModel requestModel, Response response)
+    {
+        try (var span = _tracer.startSpan("netid.launch.get"))
+        {
+            if (span.isRecording())
+            {
+                span.setOrderRef(getOrderRef());
+            }
+
+            return showLaunchPage(requestModel, response);
+        }
+    }
+
+    @Nullable
+    private String getOrderRef()
+    {
+        @Nullable Attribute orderRef = _sessionManager.get(ORDER_REF);
+
+        return orderRef == null ? null : orderRef.getOptionalValueOfType(String.class);
+    }
+
+    private Optional<AuthenticationResult> showLaunchPage(LaunchRequestModel requestModel, Response response)
     {
         LaunchRequestModel.Get model = requestModel.getGetRequestModel();
 
-        // Check if we're already done
-        _webservicePoller.getAuthenticationResult(false, response);
+        // Check if we're already done, unless the transaction was just seen to be in progress
+        _webservicePoller.refreshAuthenticationState(response);
 
         var authenticationUri = _informationProvider.getFullyQualifiedAuthenticationUri();
 
@@ -171,6 +207,13 @@ public final class LaunchRequestHandler implements AuthenticatorRequestHandler<L
                 launchCount + 1
         ));
 
+        @Nullable Attribute orderRef = TransactionTransitionEvent.isRecorded() ? _sessionManager.get(ORDER_REF) : null;
+
+        if (orderRef != null)
+        {
+            TransactionTransitionEvent.record(orderRef.getValueOfType(String.class), Transition.LAUNCHED, true);
+        }
+
         return Optional.empty();
     }
 
@@ -19,11 +19,16 @@ package io.curity.authenticator.netid.endpoints.authenticate;
 import com.google.common.collect.ImmutableMap;
 import io.curity.authenticator.netid.NetIdAccessServerSoapClient;
 import io.curity.authenticator.netid.client.NetIdAccessClient;
+import io.curity.authenticator.netid.client.TransactionRegistry;
 import io.curity.authenticator.netid.client.WebServicePoller;
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics;
 import io.curity.authenticator.netid.model.PollerPaths;
 import io.curity.authenticator.netid.model.WaitRequestModel;
 import io.curity.authenticator.netid.model.WaitResponseModel;
 import io.curity.authenticator.netid.config.NetIdAccessConfig;
+import io.curity.authenticator.netid.tracing.Tracer;
+import io.curity.authenticator.netid.utils.Deadline;
+import se.curity.identityserver.sdk.attribute.Attribute;
 import se.curity.identityserver.sdk.authentication.AuthenticatedState;
 import se.curity.identityserver.sdk.authentication.AuthenticationResult;
 import se.curity.identityserver.sdk.authentication.AuthenticatorRequestHandler;
@@ -33,6 +38,7 @@ import se.curity.identityserver.sdk.web.Response;
 import se.curity.identityserver.sdk.web.ResponseModel;
 
 import javax.annotation.Nullable;
+import java.time.Duration;
 import java.util.Optional;
 
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.EndUserMessageKeys.START_APP;
@@ -41,6 +47,7 @@ import static io.curity.authenticator.netid.PollingAuthenticatorConstants.FormVa
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.FormValueNames.POLL_URL;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.FormValueNames.RESTART_URL;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.FormValueNames.SERVICE_MESSAGE;
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.ORDER_REF;
 import static io.curity.authenticator.netid.utils.SdkConstants.ACTION;
 import static io.curity.authenticator.netid.config.PluginComposer.getPollerPaths;
 import static io.curity.authenticator.netid.config.PluginComposer.getStatusCodeMapping;
@@ -50,6 +57,9 @@ public final class WaitRequestHandler implements AuthenticatorRequestHandler<Wai
     private final NetIdAccessConfig _config;
     private final AuthenticatedState _authenticatedState;
     private final NetIdAccessClient _netIdAccessClient;
+    private final TransactionRegistry _transactionRegistry;
+    private final NetIdAccessMetrics _metrics;
+    private final Tracer _tracer;
     private WebServicePoller _webservicePoller;
     private PollerPaths _pollerPaths;
 
@@ -58,6 +68,9 @@ public final class WaitRequestHandler implements AuthenticatorRequestHandler<Wai
         _config = configuration;
         _authenticatedState = authenticatedState;
         _netIdAccessClient = new NetIdAccessClient(configuration, soapClient);
+        _transactionRegistry = soapClient.getTransactionRegistry();
+        _metrics = soapClient.getMetrics();
+        _tracer = soapClient.getTracer();
     }
 
     @Override
@@ -69,6 +82,9 @@ public final class WaitRequestHandler implements AuthenticatorRequestHandler<Wai
         {
             _webservicePoller = new WebServicePoller(
                     _netIdAccessClient,
+                    _transactionRegistry,
+                    _metrics,
+                    _tracer,
                     _pollerPaths,
                     _config.getSessionManager(),
                     _config.getAuthenticatorInformationProvider(),
@@ -103,8 +119,29 @@ public final class WaitRequestHandler implements AuthenticatorRequestHandler<Wai
     @Override
     public Optional<AuthenticationResult> post(WaitRequestModel requestModel, Response response)
     {
-        @Nullable AuthenticationResult result = _webservicePoller.getAuthenticationResult(
-                requestModel.getPostRequestModel().isPollingDone(), response);
-        return Optional.ofNullable(result);
+        // The poller asks again shortly, and an answer after that is of no use to it
+        Deadline deadline = _config.getPollDeadline() > 0
+                ? Deadline.after(Duration.ofMillis(_config.getPollDeadline()))
+                : Deadline.NONE;
+
+        try (var span = _tracer.startSpan("netid.wait.post"))
+        {
+            if (span.isRecording())
+            {
+                span.setOrderRef(getOrderRef());
+            }
+
+            @Nullable AuthenticationResult result = _webservicePoller.getAuthenticationResult(
+                    requestModel.getPostRequestModel().isPollingDone(), response, deadline);
+            return Optional.ofNullable(result);
+        }
+    }
+
+    @Nullable
+    private String getOrderRef()
+    {
+        @Nullable Attribute orderRef = _config.getSessionManager().get(ORDER_REF);
+
+        return orderRef == null ? null : orderRef.getOptionalValueOfType(String.class);
     }
 }
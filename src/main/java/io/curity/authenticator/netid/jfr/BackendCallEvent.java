@@ -0,0 +1,63 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.jfr;
+
+import io.curity.authenticator.netid.utils.OrderRefs;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import javax.annotation.Nullable;
+
+/**
+ * A call to the Net iD Access server.
+ */
+@Name("io.curity.netid.BackendCall")
+@Label("Net iD Access Call")
+@Category({"Curity", "Net iD Access"})
+@Description("A SOAP call to the Net iD Access server")
+@StackTrace(false)
+public final class BackendCallEvent extends Event
+{
+    @Label("Operation")
+    public String operation;
+
+    @Label("Order Reference Hash")
+    @Description("Hash of the order reference of the transaction, if known")
+    public int orderRefHash;
+
+    @Label("Outcome")
+    @Description("The collect status or fault status, or the exception if there was no status")
+    public String outcome;
+
+    /**
+     * Set the fields, if the event is going to be committed.
+     *
+     * @param operation the operation that was called
+     * @param orderRef  the order reference of the transaction, or null if it is not known yet
+     * @param outcome   the outcome of the call
+     */
+    public void set(String operation, @Nullable String orderRef, String outcome)
+    {
+        this.operation = operation;
+        this.orderRefHash = OrderRefs.hash(orderRef);
+        this.outcome = outcome;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.jfr;
+
+import io.curity.authenticator.netid.utils.OrderRefs;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import javax.annotation.Nullable;
+
+/**
+ * The handling of a poll, from reading the session to setting the response.
+ */
+@Name("io.curity.netid.Poll")
+@Label("Net iD Access Poll")
+@Category({"Curity", "Net iD Access"})
+@Description("Handling of a poll for the result of a Net iD Access transaction")
+@StackTrace(false)
+public final class PollEvent extends Event
+{
+    @Label("Order Reference Hash")
+    public int orderRefHash;
+
+    @Label("Polling Done")
+    @Description("Whether the client claimed that polling is done")
+    public boolean pollingDone;
+
+    @Label("Outcome")
+    public String outcome;
+
+    /**
+     * Set the order reference, if the event is enabled.
+     *
+     * @param orderRef the order reference of the transaction
+     */
+    public void setOrderRef(@Nullable String orderRef)
+    {
+        if (isEnabled())
+        {
+            orderRefHash = OrderRefs.hash(orderRef);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A read or write of an attribute in the session.
+ */
+@Name("io.curity.netid.SessionOperation")
+@Label("Net iD Access Session Operation")
+@Category({"Curity", "Net iD Access"})
+@Description("A get, put or remove of a session attribute by the Net iD Access authenticator")
+@StackTrace(false)
+public final class SessionOperationEvent extends Event
+{
+    public enum Operation
+    {
+        GET, PUT, REMOVE
+    }
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Attribute")
+    public String attribute;
+
+    public void set(Operation operation, String attribute)
+    {
+        this.operation = operation.name();
+        this.attribute = attribute;
+    }
+}
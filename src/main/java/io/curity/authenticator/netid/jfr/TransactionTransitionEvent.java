@@ -0,0 +1,81 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.jfr;
+
+import io.curity.authenticator.netid.utils.OrderRefs;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A step in the life of a Net iD Access transaction.
+ */
+@Name("io.curity.netid.TransactionTransition")
+@Label("Net iD Access Transaction Transition")
+@Category({"Curity", "Net iD Access"})
+@Description("A Net iD Access transaction was started, launched, completed or picked up")
+@StackTrace(false)
+public final class TransactionTransitionEvent extends Event
+{
+    public enum Transition
+    {
+        STARTED, LAUNCHED, COMPLETED, PICKED_UP
+    }
+
+    private static final EventType EVENT_TYPE = EventType.getEventType(TransactionTransitionEvent.class);
+
+    @Label("Order Reference Hash")
+    public int orderRefHash;
+
+    @Label("Transition")
+    public String transition;
+
+    @Label("Same Device")
+    public boolean useSameDevice;
+
+    /**
+     * @return true if transitions are recorded, so that it is worth collecting the data of one
+     */
+    public static boolean isRecorded()
+    {
+        return EVENT_TYPE.isEnabled();
+    }
+
+    /**
+     * Record a transition, if the event is enabled.
+     *
+     * @param orderRef      the order reference of the transaction
+     * @param transition    the transition
+     * @param useSameDevice whether the same device flow is used
+     */
+    public static void record(String orderRef, Transition transition, boolean useSameDevice)
+    {
+        var event = new TransactionTransitionEvent();
+
+        if (event.isEnabled())
+        {
+            event.orderRefHash = OrderRefs.hash(orderRef);
+            event.transition = transition.name();
+            event.useSameDevice = useSameDevice;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.metrics;
+
+import io.curity.authenticator.netid.balancing.EndpointBalancer;
+import io.curity.authenticator.netid.balancing.NetIdAccessEndpoint;
+import io.curity.authenticator.netid.client.TransactionRegistry;
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics.Operation;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A summary of the current state of the calls to the Net iD Access server on this node, for operators who want to
+ * know if Net iD is what makes logins slow.
+ * <p>
+ * The percentiles of the calls cover the calls of the last minute, so that a server that became slow stands out. The
+ * latency of each server is a moving average, and the 95th percentile an estimate, of its recent calls.
+ */
+public final class Diagnostics
+{
+    private Diagnostics()
+    {
+    }
+
+    /**
+     * @param metrics             the metrics of the authenticator
+     * @param transactionRegistry the transactions of the authenticator
+     * @param endpoints           the Net iD Access servers of the authenticator, or null if none has been called yet
+     * @return the diagnostics, as a tree of maps that can be rendered as JSON
+     */
+    public static Map<String, Object> of(NetIdAccessMetrics metrics, TransactionRegistry transactionRegistry,
+                                         @Nullable EndpointBalancer endpoints)
+    {
+        Map<String, Number> snapshot = metrics.getRegistry().snapshot();
+        Map<String, Object> diagnostics = new LinkedHashMap<>();
+        Map<String, Object> calls = new LinkedHashMap<>();
+
+        for (Operation operation : Operation.values())
+        {
+            String prefix = operation.name().toLowerCase(Locale.ROOT);
+            Map<String, Object> call = new LinkedHashMap<>();
+
+            call.put("inFlight", snapshot.get(prefix + ".inFlight"));
+            call.put("queued", snapshot.get(prefix + ".queued"));
+            call.put("rejected", snapshot.get(prefix + ".rejected"));
+            call.put("success", latency(snapshot, prefix + ".latency.success"));
+            call.put("failure", latency(snapshot, prefix + ".latency.failure"));
+            calls.put(prefix, call);
+        }
+
+        diagnostics.put("outstandingTransactions", transactionRegistry.size());
+        diagnostics.put("calls", calls);
+        diagnostics.put("endpoints", endpoints == null ? List.of() : endpoints(endpoints));
+        diagnostics.put("recentStatusHitRatio",
+                ratio(snapshot.get("refresh.skipped"), snapshot.get("refresh.collected")));
+
+        return diagnostics;
+    }
+
+    private static Map<String, Object> latency(Map<String, Number> snapshot, String timer)
+    {
+        Map<String, Object> latency = new LinkedHashMap<>();
+
+        latency.put("count", snapshot.get(timer + ".count"));
+        latency.put("recentCount", snapshot.get(timer + ".recentCount"));
+        latency.put("recentP50Millis", snapshot.get(timer + ".recentP50Millis"));
+        latency.put("recentP99Millis", snapshot.get(timer + ".recentP99Millis"));
+
+        return latency;
+    }
+
+    private static List<Map<String, Object>> endpoints(EndpointBalancer balancer)
+    {
+        List<Map<String, Object>> endpoints = new ArrayList<>();
+
+        for (NetIdAccessEndpoint endpoint : balancer.getEndpoints())
+        {
+            Map<String, Object> state = new LinkedHashMap<>();
+
+            state.put("name", endpoint.getName());
+            state.put("available", endpoint.isAvailable());
+            state.put("healthy", endpoint.isHealthy());
+            state.put("ejected", endpoint.isEjected());
+            state.put("ejectedForMillis", endpoint.getEjectedForMillis());
+            state.put("consecutiveFailures", endpoint.getConsecutiveFailures());
+            state.put("inFlight", endpoint.getInFlight());
+            state.put("latencyMillis", endpoint.getLatencyMillis());
+            state.put("latencyP95Millis", endpoint.getLatencyP95Millis());
+            state.put("errorRate", endpoint.getErrorRate());
+            state.put("proxiesInUse", endpoint.getProxiesInUse());
+            state.put("idleProxies", endpoint.getIdleProxies());
+            endpoints.add(state);
+        }
+
+        return endpoints;
+    }
+
+    /**
+     * @return the share of hits, or -1 if there has been nothing to hit
+     */
+    private static double ratio(Number hits, Number misses)
+    {
+        long total = hits.longValue() + misses.longValue();
+
+        return total == 0 ? -1 : (double) hits.longValue() / total;
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps metrics in memory.
+ * <p>
+ * Timers keep a histogram with fixed buckets, from one millisecond to half a minute unless the timer is created with
+ * a longer maximum, from which percentiles are estimated. For each timer, the snapshot contains the count, mean, maximum and the 50th, 95th and 99th percentiles,
+ * in milliseconds, of everything it recorded. It also contains the count, and the 50th and 99th percentiles, of what
+ * it recorded in the last minute, as {@code .recentCount}, {@code .recentP50Millis} and {@code .recentP99Millis}.
+ */
+public final class InMemoryMetricsRegistry implements MetricsRegistry
+{
+    private static final long DEFAULT_MAX_MILLIS = 30000;
+
+    private final LongSupplier _nanoClock;
+    private final ConcurrentMap<String, InMemoryCounter> _counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, InMemoryTimer> _timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongSupplier> _gauges = new ConcurrentHashMap<>();
+
+    public InMemoryMetricsRegistry()
+    {
+        this(System::nanoTime);
+    }
+
+    InMemoryMetricsRegistry(LongSupplier nanoClock)
+    {
+        _nanoClock = nanoClock;
+    }
+
+    @Override
+    public Counter counter(String name)
+    {
+        return _counters.computeIfAbsent(name, key -> new InMemoryCounter());
+    }
+
+    @Override
+    public Timer timer(String name)
+    {
+        return timer(name, DEFAULT_MAX_MILLIS);
+    }
+
+    @Override
+    public Timer timer(String name, long maxMillis)
+    {
+        return _timers.computeIfAbsent(name, key -> new InMemoryTimer(maxMillis, _nanoClock));
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier value)
+    {
+        _gauges.put(name, value);
+    }
+
+    @Override
+    public Map<String, Number> snapshot()
+    {
+        Map<String, Number> snapshot = new TreeMap<>();
+
+        _counters.forEach((name, counter) -> snapshot.put(name, counter.getCount()));
+        _gauges.forEach((name, gauge) -> snapshot.put(name, gauge.getAsLong()));
+        _timers.forEach((name, timer) -> timer.addTo(name, snapshot));
+
+        return snapshot;
+    }
+
+    private static final class InMemoryCounter implements Counter
+    {
+        private final LongAdder _count = new LongAdder();
+
+        @Override
+        public void increment()
+        {
+            _count.increment();
+        }
+
+        @Override
+        public long getCount()
+        {
+            return _count.sum();
+        }
+    }
+
+    static final class InMemoryTimer implements Timer
+    {
+        // Upper bounds of the buckets that a timer picks from, in milliseconds, up to its maximum
+        private static final long[] BUCKET_BOUNDS_MILLIS = {
+                1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000, 300000, 600000,
+                1800000, 3600000
+        };
+        // The recent percentiles cover the last minute, give or take a slice
+        private static final int RECENT_SLICES = 6;
+        private static final long RECENT_SLICE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+        // Upper bounds of the buckets of this timer. The last bucket has no upper bound.
+        private final long[] _boundsMillis;
+        private final long[] _boundsNanos;
+        private final AtomicLongArray _buckets;
+        private final LongAdder _count = new LongAdder();
+        private final LongAdder _sumNanos = new LongAdder();
+        private final LongAccumulator _maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongSupplier _nanoClock;
+        private final Slice[] _recent = new Slice[RECENT_SLICES];
+
+        InMemoryTimer(long maxMillis, LongSupplier nanoClock)
+        {
+            _boundsMillis = boundsMillis(maxMillis);
+            _boundsNanos = new long[_boundsMillis.length];
+            _buckets = new AtomicLongArray(_boundsMillis.length + 1);
+            _nanoClock = nanoClock;
+
+            for (int i = 0; i < _boundsMillis.length; i++)
+            {
+                _boundsNanos[i] = TimeUnit.MILLISECONDS.toNanos(_boundsMillis[i]);
+            }
+
+            for (int i = 0; i < RECENT_SLICES; i++)
+            {
+                _recent[i] = new Slice(_boundsMillis.length + 1);
+            }
+        }
+
+        /**
+         * @return the bounds that are below the maximum, followed by the maximum itself
+         */
+        private static long[] boundsMillis(long maxMillis)
+        {
+            int below = 0;
+
+            while (below < BUCKET_BOUNDS_MILLIS.length && BUCKET_BOUNDS_MILLIS[below] < maxMillis)
+            {
+                below++;
+            }
+
+            long[] bounds = Arrays.copyOf(BUCKET_BOUNDS_MILLIS, below + 1);
+            bounds[below] = maxMillis;
+
+            return bounds;
+        }
+
+        @Override
+        public void record(long nanos)
+        {
+            int bucket = 0;
+
+            while (bucket < _boundsNanos.length && nanos > _boundsNanos[bucket])
+            {
+                bucket++;
+            }
+
+            _buckets.incrementAndGet(bucket);
+            recentSlice(_nanoClock.getAsLong() / RECENT_SLICE_NANOS).increment(bucket);
+            _count.increment();
+            _sumNanos.add(nanos);
+            _maxNanos.accumulate(nanos);
+        }
+
+        @Override
+        public long getCount()
+        {
+            return _count.sum();
+        }
+
+        /**
+         * Estimate a percentile, as the upper bound of the bucket it falls in.
+         *
+         * @param percentile the percentile, between 0 and 1
+         * @return the estimated percentile in milliseconds, or 0 if nothing was recorded
+         */
+        long percentileMillis(double percentile)
+        {
+            long[] counts = new long[_buckets.length()];
+
+            for (int i = 0; i < counts.length; i++)
+            {
+                counts[i] = _buckets.get(i);
+            }
+
+            return percentileMillis(counts, percentile);
+        }
+
+        private long percentileMillis(long[] counts, double percentile)
+        {
+            long total = 0;
+
+            for (long count : counts)
+            {
+                total += count;
+            }
+
+            if (total == 0)
+            {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(percentile * total);
+            long seen = 0;
+
+            for (int i = 0; i < _boundsMillis.length; i++)
+            {
+                seen += counts[i];
+
+                if (seen >= rank)
+                {
+                    return _boundsMillis[i];
+                }
+            }
+
+            // The last bucket has no upper bound, and the maximum of all time is the best estimate there is
+            return TimeUnit.NANOSECONDS.toMillis(_maxNanos.get());
+        }
+
+        /**
+         * @return the counts of the buckets, of what was recorded in the slices of the last minute
+         */
+        private long[] recentCounts()
+        {
+            long now = _nanoClock.getAsLong() / RECENT_SLICE_NANOS;
+            long[] counts = new long[_buckets.length()];
+
+            for (Slice slice : _recent)
+            {
+                // A slice that was last written more than a minute ago is stale, and is reset by the next record
+                if (now - slice._index < RECENT_SLICES)
+                {
+                    slice.addTo(counts);
+                }
+            }
+
+            return counts;
+        }
+
+        private Slice recentSlice(long index)
+        {
+            Slice slice = _recent[(int) (index % RECENT_SLICES)];
+
+            if (slice._index != index)
+            {
+                slice.reset(index);
+            }
+
+            return slice;
+        }
+
+        private void addTo(String name, Map<String, Number> snapshot)
+        {
+            long count = _count.sum();
+            long[] recentCounts = recentCounts();
+            long recentCount = 0;
+
+            for (long bucketCount : recentCounts)
+            {
+                recentCount += bucketCount;
+            }
+
+            snapshot.put(name + ".count", count);
+            snapshot.put(name + ".meanMillis", count == 0 ? 0.0 : _sumNanos.sum() / (double) count / 1_000_000);
+            snapshot.put(name + ".maxMillis", TimeUnit.NANOSECONDS.toMillis(_maxNanos.get()));
+            snapshot.put(name + ".p50Millis", percentileMillis(0.50));
+            snapshot.put(name + ".p95Millis", percentileMillis(0.95));
+            snapshot.put(name + ".p99Millis", percentileMillis(0.99));
+            snapshot.put(name + ".recentCount", recentCount);
+            snapshot.put(name + ".recentP50Millis", percentileMillis(recentCounts, 0.50));
+            snapshot.put(name + ".recentP99Millis", percentileMillis(recentCounts, 0.99));
+        }
+    }
+
+    /**
+     * The buckets of what a timer recorded during one slice of time, which is reused for a later slice when it is
+     * too old to be recent.
+     */
+    private static final class Slice
+    {
+        private final AtomicLongArray _buckets;
+        private volatile long _index = -1;
+
+        private Slice(int buckets)
+        {
+            _buckets = new AtomicLongArray(buckets);
+        }
+
+        private void increment(int bucket)
+        {
+            _buckets.incrementAndGet(bucket);
+        }
+
+        private synchronized void reset(long index)
+        {
+            // Only the first record of the new slice resets it. A record that races with the reset may be lost, which
+            // is fine for an estimate.
+            if (_index != index)
+            {
+                for (int i = 0; i < _buckets.length(); i++)
+                {
+                    _buckets.set(i, 0);
+                }
+
+                _index = index;
+            }
+        }
+
+        private void addTo(long[] counts)
+        {
+            for (int i = 0; i < counts.length; i++)
+            {
+                counts[i] += _buckets.get(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Exposes the metrics of a {@link MetricsRegistry} as the read-only attributes of an MBean, named
+ * {@code io.curity.netid:type=Metrics,name=<authenticator id>}.
+ * <p>
+ * The attributes are read from a snapshot of the registry, so metrics that are created later show up as well.
+ * <p>
+ * If diagnostics are given, they are reported by the {@value #DIAGNOSTICS_OPERATION} operation of the MBean, and if
+ * captured messages are given, they are reported by the {@value #WIRE_CAPTURE_OPERATION} operation. Like the rest of
+ * the MBeans of the server, these are only available to those who are allowed to manage it over JMX.
+ */
+public final class JmxMetricsExporter implements DynamicMBean, Closeable
+{
+    private static final Logger _logger = LoggerFactory.getLogger(JmxMetricsExporter.class);
+    private static final String DOMAIN = "io.curity.netid";
+    static final String DIAGNOSTICS_OPERATION = "diagnostics";
+    static final String WIRE_CAPTURE_OPERATION = "wireCapture";
+
+    // The exporter that currently owns each MBean name
+    private static final ConcurrentMap<ObjectName, JmxMetricsExporter> _owners = new ConcurrentHashMap<>();
+
+    private final MetricsRegistry _registry;
+    @Nullable
+    private final Supplier<Map<String, Object>> _diagnostics;
+    @Nullable
+    private final Supplier<List<String>> _wireCapture;
+    private final MBeanServer _mBeanServer;
+    @Nullable
+    private final ObjectName _objectName;
+
+    private JmxMetricsExporter(MetricsRegistry registry, @Nullable Supplier<Map<String, Object>> diagnostics,
+                               @Nullable Supplier<List<String>> wireCapture, MBeanServer mBeanServer,
+                               @Nullable ObjectName objectName)
+    {
+        _registry = registry;
+        _diagnostics = diagnostics;
+        _wireCapture = wireCapture;
+        _mBeanServer = mBeanServer;
+        _objectName = objectName;
+    }
+
+    /**
+     * Register the metrics of the registry with the platform MBean server, without diagnostics.
+     *
+     * @see #register(MetricsRegistry, Supplier, Supplier, String)
+     */
+    public static JmxMetricsExporter register(MetricsRegistry registry, String name)
+    {
+        return register(registry, null, null, name);
+    }
+
+    /**
+     * Register the metrics of the registry with the platform MBean server. Failing to do so is logged, but does not
+     * prevent the plugin from working.
+     *
+     * @param registry    the registry to export
+     * @param diagnostics the diagnostics to report, or null to leave out the operation that reports them
+     * @param wireCapture the most recently captured messages, or null to leave out the operation that reports them
+     * @param name        the name of the MBean, which should identify the authenticator
+     * @return the exporter, which should be closed to unregister the MBean
+     */
+    public static synchronized JmxMetricsExporter register(MetricsRegistry registry,
+                                                           @Nullable Supplier<Map<String, Object>> diagnostics,
+                                                           @Nullable Supplier<List<String>> wireCapture,
+                                                           String name)
+    {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        @Nullable ObjectName objectName = null;
+
+        try
+        {
+            objectName = new ObjectName(DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+            var exporter = new JmxMetricsExporter(registry, diagnostics, wireCapture, mBeanServer, objectName);
+
+            // A new configuration replaces the plugin instance of the previous one
+            if (mBeanServer.isRegistered(objectName))
+            {
+                mBeanServer.unregisterMBean(objectName);
+            }
+
+            mBeanServer.registerMBean(exporter, objectName);
+            _owners.put(objectName, exporter);
+
+            return exporter;
+        }
+        catch (JMException e)
+        {
+            _logger.info("Could not register metrics MBean {}: {}", objectName, e.getMessage());
+
+            return new JmxMetricsExporter(registry, diagnostics, wireCapture, mBeanServer, null);
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException
+    {
+        @Nullable Number value = _registry.snapshot().get(attribute);
+
+        if (value == null)
+        {
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException
+    {
+        throw new AttributeNotFoundException("Metrics are read-only, and cannot set " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes)
+    {
+        Map<String, Number> snapshot = _registry.snapshot();
+        AttributeList list = new AttributeList(attributes.length);
+
+        for (String attribute : attributes)
+        {
+            @Nullable Number value = snapshot.get(attribute);
+
+            if (value != null)
+            {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes)
+    {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException
+    {
+        if (_diagnostics != null && DIAGNOSTICS_OPERATION.equals(actionName))
+        {
+            return _diagnostics.get();
+        }
+
+        if (_wireCapture != null && WIRE_CAPTURE_OPERATION.equals(actionName))
+        {
+            return _wireCapture.get();
+        }
+
+        throw new ReflectionException(new NoSuchMethodException(actionName),
+                "There is no operation " + actionName + " on metrics");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo()
+    {
+        Map<String, Number> snapshot = _registry.snapshot();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+        int i = 0;
+
+        for (Map.Entry<String, Number> entry : snapshot.entrySet())
+        {
+            attributes[i++] = new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                    entry.getKey(), true, false, false);
+        }
+
+        List<MBeanOperationInfo> operations = new ArrayList<>(2);
+
+        if (_diagnostics != null)
+        {
+            operations.add(new MBeanOperationInfo(DIAGNOSTICS_OPERATION,
+                    "A summary of the state of the calls to the Net iD Access service on this node",
+                    null, Map.class.getName(), MBeanOperationInfo.INFO));
+        }
+
+        if (_wireCapture != null)
+        {
+            operations.add(new MBeanOperationInfo(WIRE_CAPTURE_OPERATION,
+                    "The most recently captured messages exchanged with the Net iD Access service, oldest first",
+                    null, List.class.getName(), MBeanOperationInfo.INFO));
+        }
+
+        return new MBeanInfo(getClass().getName(), "Net iD Access authenticator metrics", attributes,
+                null, operations.toArray(new MBeanOperationInfo[0]), null);
+    }
+
+    @Override
+    public void close()
+    {
+        synchronized (JmxMetricsExporter.class)
+        {
+            // Leave the MBean alone if a newer plugin instance has registered it since
+            if (_objectName == null || !_owners.remove(_objectName, this))
+            {
+                return;
+            }
+
+            try
+            {
+                if (_mBeanServer.isRegistered(_objectName))
+                {
+                    _mBeanServer.unregisterMBean(_objectName);
+                }
+            }
+            catch (JMException e)
+            {
+                _logger.debug("Could not unregister metrics MBean {}: {}", _objectName, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.metrics;
+
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Where the plugin reports its metrics.
+ * <p>
+ * {@link InMemoryMetricsRegistry} is used by default, and can be exported using {@link JmxMetricsExporter}. Another
+ * implementation can be used to report to some other metrics system.
+ */
+public interface MetricsRegistry
+{
+    /**
+     * Get or create a counter.
+     *
+     * @param name the name of the counter
+     * @return the counter with the given name
+     */
+    Counter counter(String name);
+
+    /**
+     * Get or create a timer, keeping a histogram of the recorded durations.
+     *
+     * @param name the name of the timer
+     * @return the timer with the given name
+     */
+    Timer timer(String name);
+
+    /**
+     * Get or create a timer, keeping a histogram of the recorded durations that tells apart durations up to the given
+     * length, for timers of steps that take minutes rather than milliseconds. Registries that do not need to know
+     * this up front create the same timer as {@link #timer(String)}.
+     *
+     * @param name      the name of the timer
+     * @param maxMillis the longest duration, in milliseconds, that the histogram should tell apart
+     * @return the timer with the given name
+     */
+    default Timer timer(String name, long maxMillis)
+    {
+        return timer(name);
+    }
+
+    /**
+     * Register a gauge, whose value is read when the metrics are reported.
+     *
+     * @param name  the name of the gauge
+     * @param value provides the current value of the gauge
+     */
+    void gauge(String name, LongSupplier value);
+
+    /**
+     * @return the current value of every metric, by name
+     */
+    Map<String, Number> snapshot();
+
+    interface Counter
+    {
+        void increment();
+
+        long getCount();
+    }
+
+    interface Timer
+    {
+        /**
+         * @param nanos the duration to record, in nanoseconds
+         */
+        void record(long nanos);
+
+        long getCount();
+    }
+}
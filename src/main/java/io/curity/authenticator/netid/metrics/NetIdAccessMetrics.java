@@ -0,0 +1,256 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.metrics;
+
+import io.curity.authenticator.netid.client.AuthenticationFaultStatus;
+import io.curity.authenticator.netid.client.CollectFaultStatus;
+import io.curity.authenticator.netid.client.CollectStatus;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of the calls to the Net iD Access server, and of their outcome.
+ * <p>
+ * Metrics are named {@code <operation>.<metric>}, for example {@code collect.latency.success},
+ * {@code collect.status.USER_SIGN} or {@code authenticate.fault.UNKNOWN_USER}. All metrics are created up front, so
+ * that recording them does not allocate.
+ * <p>
+ * The timeline of the transactions is kept per flow, as {@code timeline.<flow>.<step>}, for example
+ * {@code timeline.sameDevice.timeToComplete}. Its timers tell apart durations of up to five minutes, as the steps wait
+ * for the user.
+ */
+public final class NetIdAccessMetrics
+{
+    public enum Operation
+    {
+        AUTHENTICATE, COLLECT;
+
+        private final String _metricPrefix = name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The steps of a transaction that are timed.
+     */
+    public enum Step
+    {
+        /**
+         * From the start of the transaction until the app reported that it started.
+         */
+        TIME_TO_APP_START("timeToAppStart"),
+
+        /**
+         * From the start of the transaction until the user was asked to sign.
+         */
+        TIME_TO_USER_SIGN("timeToUserSign"),
+
+        /**
+         * From the start of the transaction until it completed.
+         */
+        TIME_TO_COMPLETE("timeToComplete"),
+
+        /**
+         * From when the user was asked to sign until the transaction completed.
+         */
+        TIME_IN_USER_SIGN("timeInUserSign"),
+
+        /**
+         * From when the transaction completed until its result was picked up.
+         */
+        PICKUP_DELAY("pickupDelay");
+
+        private final String _metricName;
+
+        Step(String metricName)
+        {
+            _metricName = metricName;
+        }
+    }
+
+    private static final long TIMELINE_MAX_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final MetricsRegistry _registry;
+    private final Map<Operation, MetricsRegistry.Timer> _successLatency = new EnumMap<>(Operation.class);
+    private final Map<Operation, MetricsRegistry.Timer> _failureLatency = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> _inFlight = new EnumMap<>(Operation.class);
+    private final Map<CollectStatus, MetricsRegistry.Counter> _collectStatuses = new EnumMap<>(CollectStatus.class);
+    private final Map<CollectFaultStatus, MetricsRegistry.Counter> _collectFaults =
+            new EnumMap<>(CollectFaultStatus.class);
+    private final Map<AuthenticationFaultStatus, MetricsRegistry.Counter> _authenticationFaults =
+            new EnumMap<>(AuthenticationFaultStatus.class);
+    private final MetricsRegistry.Counter _refreshSkipped;
+    private final MetricsRegistry.Counter _refreshCollected;
+    private final MetricsRegistry.Counter _hedged;
+    private final MetricsRegistry.Counter _hedgeWon;
+    private final MetricsRegistry.Counter _pollThrottled;
+    private final MetricsRegistry.Counter _authenticateAvoided;
+    private final Map<Step, MetricsRegistry.Timer> _sameDeviceSteps = new EnumMap<>(Step.class);
+    private final Map<Step, MetricsRegistry.Timer> _otherDeviceSteps = new EnumMap<>(Step.class);
+
+    public NetIdAccessMetrics(MetricsRegistry registry)
+    {
+        _registry = registry;
+
+        for (Operation operation : Operation.values())
+        {
+            var inFlight = new AtomicLong();
+
+            _successLatency.put(operation, registry.timer(operation._metricPrefix + ".latency.success"));
+            _failureLatency.put(operation, registry.timer(operation._metricPrefix + ".latency.failure"));
+            _inFlight.put(operation, inFlight);
+            registry.gauge(operation._metricPrefix + ".inFlight", inFlight::get);
+        }
+
+        for (CollectStatus status : CollectStatus.values())
+        {
+            _collectStatuses.put(status, registry.counter("collect.status." + status.name()));
+        }
+
+        for (CollectFaultStatus status : CollectFaultStatus.values())
+        {
+            _collectFaults.put(status, registry.counter("collect.fault." + status.name()));
+        }
+
+        for (AuthenticationFaultStatus status : AuthenticationFaultStatus.values())
+        {
+            _authenticationFaults.put(status, registry.counter("authenticate.fault." + status.name()));
+        }
+
+        _refreshSkipped = registry.counter("refresh.skipped");
+        _refreshCollected = registry.counter("refresh.collected");
+        _hedged = registry.counter("collect.hedged");
+        _hedgeWon = registry.counter("collect.hedgeWon");
+        _pollThrottled = registry.counter("poll.throttled");
+        _authenticateAvoided = registry.counter("authenticate.avoided");
+
+        for (Step step : Step.values())
+        {
+            _sameDeviceSteps.put(step, registry.timer("timeline.sameDevice." + step._metricName,
+                    TIMELINE_MAX_MILLIS));
+            _otherDeviceSteps.put(step, registry.timer("timeline.otherDevice." + step._metricName,
+                    TIMELINE_MAX_MILLIS));
+        }
+    }
+
+    /**
+     * @return the registry that the metrics are kept in
+     */
+    public MetricsRegistry getRegistry()
+    {
+        return _registry;
+    }
+
+    /**
+     * Call before calling the server.
+     *
+     * @param operation the operation that is called
+     * @return the start time, to pass to {@link #callEnded(Operation, long, boolean)}
+     */
+    public long callStarted(Operation operation)
+    {
+        _inFlight.get(operation).incrementAndGet();
+
+        return System.nanoTime();
+    }
+
+    /**
+     * Call when a call to the server has ended, successfully or not.
+     *
+     * @param operation the operation that was called
+     * @param startTime the time returned by {@link #callStarted(Operation)}
+     * @param success   whether the call succeeded
+     */
+    public void callEnded(Operation operation, long startTime, boolean success)
+    {
+        long latency = System.nanoTime() - startTime;
+
+        _inFlight.get(operation).decrementAndGet();
+        (success ? _successLatency : _failureLatency).get(operation).record(latency);
+    }
+
+    public void collected(CollectStatus status)
+    {
+        _collectStatuses.get(status).increment();
+    }
+
+    public void collectFailed(CollectFaultStatus status)
+    {
+        _collectFaults.get(status).increment();
+    }
+
+    public void authenticationFailed(AuthenticationFaultStatus status)
+    {
+        _authenticationFaults.get(status).increment();
+    }
+
+    /**
+     * Call when a collect was slow, and another one was made.
+     */
+    public void hedged()
+    {
+        _hedged.increment();
+    }
+
+    /**
+     * Call when the other collect answered first.
+     */
+    public void hedgeWon()
+    {
+        _hedgeWon.increment();
+    }
+
+    /**
+     * Call when a transaction was not started, because the personal number was found to be invalid without asking.
+     */
+    public void authenticateAvoided()
+    {
+        _authenticateAvoided.increment();
+    }
+
+    /**
+     * Call when a transaction was polled too often, and the poll was answered without collecting.
+     */
+    public void pollThrottled()
+    {
+        _pollThrottled.increment();
+    }
+
+    /**
+     * Call when the state of a transaction is refreshed before rendering a page.
+     *
+     * @param skipped true if this node recently learned the status of the transaction, so that no collect was made
+     */
+    public void refreshed(boolean skipped)
+    {
+        (skipped ? _refreshSkipped : _refreshCollected).increment();
+    }
+
+    /**
+     * Record how long a step of a transaction took.
+     *
+     * @param step          the step
+     * @param useSameDevice whether the transaction is on the same device as the browser
+     * @param millis        how long the step took, in milliseconds
+     */
+    public void transactionStep(Step step, boolean useSameDevice, long millis)
+    {
+        (useSameDevice ? _sameDeviceSteps : _otherDeviceSteps).get(step).record(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
@@ -17,6 +17,7 @@
 package io.curity.authenticator.netid.model;
 
 import com.google.common.collect.ImmutableMap;
+import io.curity.authenticator.netid.utils.PersonalNumberValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Marker;
@@ -32,14 +33,19 @@ import static org.apache.commons.lang3.StringEscapeUtils.unescapeHtml4;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 
+/**
+ * The request model of the page where the user enters a personal number. The model is not validated by the server,
+ * but if a personal number validator is given, the personal number is checked and normalized by the model.
+ */
 public final class NonValidatingUserNameRequestModel extends UserNameRequestModel
 {
     public NonValidatingUserNameRequestModel(Request request,
                                              AuthenticatedState authenticatedState,
-                                             UserPreferenceManager userPreferenceManager)
+                                             UserPreferenceManager userPreferenceManager,
+                                             @Nullable PersonalNumberValidator personalNumberValidator)
     {
         _postRequestModel = request.isPostRequest() ?
-                new NonValidatingUserNamePostModel(request, userPreferenceManager) : null;
+                new NonValidatingUserNamePostModel(request, userPreferenceManager, personalNumberValidator) : null;
         _getRequestModel = request.isGetRequest() ? new NonValidatingUserNameGetModel(authenticatedState) : null;
     }
 
@@ -69,14 +75,18 @@ public final class NonValidatingUserNameRequestModel extends UserNameRequestMode
 
         @Nullable
         private final String _userName;
+        @Nullable
+        private final String _normalizedUserName;
 
         private final boolean _useSameDevice;
+        private final boolean _invalidPersonalNumber;
 
         private static final Logger _logger = LoggerFactory.getLogger(NonValidatingUserNamePostModel.class);
         private static final Marker MASK_MARKER = MarkerFactory.getMarker("MASK");
 
         NonValidatingUserNamePostModel(Request request,
-                                       UserPreferenceManager userPreferenceManager)
+                                       UserPreferenceManager userPreferenceManager,
+                                       @Nullable PersonalNumberValidator personalNumberValidator)
         {
 
             @Nullable String userName = request.getFormParameterValueOrError(IDENTIFIER_PARAM);
@@ -97,12 +107,25 @@ public final class NonValidatingUserNameRequestModel extends UserNameRequestMode
 
             @Nullable String useSameDevice = request.getFormParameterValueOrError(USE_SAME_DEVICE_PARAM);
             _useSameDevice = Boolean.parseBoolean(useSameDevice);
+
+            // The same device flow does not use the personal number
+            if (personalNumberValidator != null && useOtherDevice() && isNotEmpty(_userName))
+            {
+                @Nullable String normalizedUserName = personalNumberValidator.normalize(_userName);
+                _invalidPersonalNumber = normalizedUserName == null;
+                _normalizedUserName = normalizedUserName == null ? _userName : normalizedUserName;
+            }
+            else
+            {
+                _invalidPersonalNumber = false;
+                _normalizedUserName = _userName;
+            }
         }
 
         @Override
         public boolean isValid()
         {
-            return useSameDevice() || isNotEmpty(_userName);
+            return useSameDevice() || (isNotEmpty(_userName) && !_invalidPersonalNumber);
         }
 
         public Map<String, Object> dataOnError()
@@ -113,7 +136,7 @@ public final class NonValidatingUserNameRequestModel extends UserNameRequestMode
         @Nullable
         public String getUserName()
         {
-            return useSameDevice() ? null : _userName;
+            return useSameDevice() ? null : _normalizedUserName;
         }
 
         public boolean useSameDevice()
@@ -16,6 +16,8 @@
 
 package io.curity.authenticator.netid.model;
 
+import java.util.Objects;
+
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.Endpoints.CANCEL;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.Endpoints.FAILED;
 import static io.curity.authenticator.netid.PollingAuthenticatorConstants.Endpoints.LAUNCH;
@@ -24,11 +26,17 @@ import static io.curity.authenticator.netid.PollingAuthenticatorConstants.Endpoi
 
 public final class PollerPaths
 {
+    private static final PollerPaths DEFAULT = new PollerPaths(WAIT, CANCEL, FAILED, LAUNCH,
+            FailureMode.REDIRECT_CLIENT);
+    private static final PollerPaths HTTP_SEMANTIC_LOGIC = new PollerPaths(POLLER, CANCEL, FAILED, LAUNCH,
+            FailureMode.PROBLEM_JSON);
+
     private final String _pollerPath;
     private final String _cancelPath;
     private final String _failedPath;
     private final String _launcherPath;
     private final FailureMode _failureMode;
+    private final int _hashCode;
 
     public PollerPaths(String pollerPath, String cancelPath,
                        String failedPath, String launcherPath,
@@ -39,16 +47,17 @@ public final class PollerPaths
         _failedPath = failedPath;
         _launcherPath = launcherPath;
         _failureMode = failureMode;
+        _hashCode = Objects.hash(_pollerPath, _cancelPath, _failedPath, _launcherPath, _failureMode);
     }
 
     public static PollerPaths getDefault()
     {
-        return new PollerPaths(WAIT, CANCEL, FAILED, LAUNCH, FailureMode.REDIRECT_CLIENT);
+        return DEFAULT;
     }
 
     public static PollerPaths forHttpSemanticLogic()
     {
-        return new PollerPaths(POLLER, CANCEL, FAILED, LAUNCH, FailureMode.PROBLEM_JSON);
+        return HTTP_SEMANTIC_LOGIC;
     }
 
     public String getPollerPath()
@@ -76,6 +85,34 @@ public final class PollerPaths
         return _launcherPath;
     }
 
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+
+        if (!(o instanceof PollerPaths))
+        {
+            return false;
+        }
+
+        PollerPaths that = (PollerPaths) o;
+
+        return _pollerPath.equals(that._pollerPath)
+                && _cancelPath.equals(that._cancelPath)
+                && _failedPath.equals(that._failedPath)
+                && _launcherPath.equals(that._launcherPath)
+                && _failureMode == that._failureMode;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return _hashCode;
+    }
+
     public enum FailureMode
     {
         REDIRECT_CLIENT, PROBLEM_JSON
@@ -43,6 +43,7 @@ public abstract class PollingResult implements ResponseModel
     private static final String CANCEL_URL = "cancelUrl";
     private static final String REDIRECT_URL = "redirectUrl";
     private static final String USER_MESSAGE = "userMessage";
+    private static final String RETRY_AFTER = "retryAfter";
 
     private final boolean _stopPolling;
 
@@ -106,25 +107,55 @@ public abstract class PollingResult implements ResponseModel
         String getCancelUrl();
     }
 
+    /**
+     * A poll that is still in progress. Instances are immutable and their view data is built once, so that they can
+     * be shared between requests (see {@link PollingResults}).
+     * <p>
+     * A result may ask the poller to wait a number of seconds before polling again, in its {@code retryAfter} field.
+     */
     public static final class Pending extends PollingResult implements NotDone
     {
         private final String _messageId;
         private final String _pollUrl;
         private final String _cancelUrl;
+        private final int _retryAfterSeconds;
+        private final Map<String, Object> _viewData;
 
         public Pending(String messageId, String pollUrl, String cancelUrl)
+        {
+            this(messageId, pollUrl, cancelUrl, 0);
+        }
+
+        /**
+         * @param retryAfterSeconds how long the poller should wait before polling again, or 0 to leave it to the poller
+         */
+        public Pending(String messageId, String pollUrl, String cancelUrl, int retryAfterSeconds)
         {
             super(false);
             _messageId = StringUtils.isBlank(messageId) ? "" : messageId;
             _pollUrl = pollUrl;
             _cancelUrl = cancelUrl;
+            _retryAfterSeconds = Math.max(retryAfterSeconds, 0);
+
+            ImmutableMap.Builder<String, Object> viewData = baseModelBuilder()
+                    .put(POLLER_MESSAGE_KEY, ImmutableMap.of(USER_MESSAGE, _messageId))
+                    .put(POLLER_URL, _pollUrl)
+                    .put(CANCEL_URL, _cancelUrl);
+
+            if (_retryAfterSeconds > 0)
+            {
+                viewData.put(RETRY_AFTER, _retryAfterSeconds);
+            }
+
+            _viewData = viewData.build();
         }
 
         private Pending(Map<String, Object> map)
         {
             this(PollingResult.extractMessageEntry(map, USER_MESSAGE),
                     NullUtils.valueOrError(String.class, map.get(POLLER_URL), POLLER_URL + " is missing"),
-                    NullUtils.valueOrError(String.class, map.get(CANCEL_URL), CANCEL_URL + " is missing"));
+                    NullUtils.valueOrError(String.class, map.get(CANCEL_URL), CANCEL_URL + " is missing"),
+                    map.get(RETRY_AFTER) instanceof Integer ? (Integer) map.get(RETRY_AFTER) : 0);
         }
 
         @Override
@@ -138,6 +169,14 @@ public abstract class PollingResult implements ResponseModel
             return _messageId;
         }
 
+        /**
+         * @return how long the poller should wait before polling again, in seconds, or 0 if it is up to the poller
+         */
+        public int getRetryAfterSeconds()
+        {
+            return _retryAfterSeconds;
+        }
+
         @Override
         public String getPollUrl()
         {
@@ -161,12 +200,7 @@ public abstract class PollingResult implements ResponseModel
         @Override
         public Map<String, Object> getViewData()
         {
-            ImmutableMap.Builder<Object, Object> message = ImmutableMap.builder().put(USER_MESSAGE, _messageId);
-            return baseModelBuilder()
-                    .put(POLLER_MESSAGE_KEY, message.build())
-                    .put(POLLER_URL, _pollUrl)
-                    .put(CANCEL_URL, _cancelUrl)
-                    .build();
+            return _viewData;
         }
     }
 
@@ -272,6 +306,7 @@ public abstract class PollingResult implements ResponseModel
     public static final class Success extends PollingResult
     {
         private final String _finishOffUrl;
+        private final Map<String, Object> _viewData;
 
         public Success(Map<String, Object> map)
         {
@@ -282,6 +317,9 @@ public abstract class PollingResult implements ResponseModel
         {
             super(true);
             _finishOffUrl = finishOffUrl;
+            _viewData = baseModelBuilder()
+                    .put(FINISH_OFF_URL, _finishOffUrl)
+                    .build();
         }
 
         public String getFinishOffUrl()
@@ -306,9 +344,7 @@ public abstract class PollingResult implements ResponseModel
         @Override
         public Map<String, Object> getViewData()
         {
-            return baseModelBuilder()
-                    .put(FINISH_OFF_URL, _finishOffUrl)
-                    .build();
+            return _viewData;
         }
     }
 
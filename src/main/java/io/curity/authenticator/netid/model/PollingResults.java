@@ -0,0 +1,180 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import io.curity.authenticator.netid.client.CollectFaultStatus;
+import io.curity.authenticator.netid.client.CollectStatus;
+
+import javax.annotation.Nullable;
+import java.net.URI;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.EndUserMessageKeys.GENERAL_ERROR;
+
+/**
+ * The polling results of one authenticator, for one flavour of {@link PollerPaths}.
+ * <p>
+ * There are only a handful of different results that the poller can respond with, and they only depend on the
+ * authentication URI of the authenticator and on the poller paths. They are created once, and then shared between
+ * requests.
+ */
+public final class PollingResults
+{
+    // Each authenticator only has a few fully qualified URIs (one per host it is reached on)
+    private static final long MAXIMUM_SIZE = 256;
+    // Long enough for a surge to pass, short enough for the user not to notice much when it was only a blip
+    private static final int BUSY_RETRY_AFTER_SECONDS = 5;
+
+    private static final LoadingCache<Key, PollingResults> _cache = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_SIZE)
+            .build(CacheLoader.from(PollingResults::new));
+
+    private final String _pollUrl;
+    private final String _cancelUrl;
+    private final String _failedUrl;
+    private final PollingResult.Success _success;
+    private final Map<CollectStatus, PollingResult.Pending> _pendingOnSameDevice = new EnumMap<>(CollectStatus.class);
+    private final Map<CollectStatus, PollingResult.Pending> _pendingOnOtherDevice = new EnumMap<>(CollectStatus.class);
+    private final Map<CollectStatus, PollingResult.Pending> _busyOnSameDevice = new EnumMap<>(CollectStatus.class);
+    private final Map<CollectStatus, PollingResult.Pending> _busyOnOtherDevice = new EnumMap<>(CollectStatus.class);
+    private final Map<CollectFaultStatus, PollingResult.Failed> _failed = new EnumMap<>(CollectFaultStatus.class);
+    private final PollingResult.Failed _failedWithGeneralError;
+
+    private PollingResults(Key key)
+    {
+        _pollUrl = key._authenticationUri + "/" + key._pollerPaths.getPollerPath();
+        _cancelUrl = key._authenticationUri + "/" + key._pollerPaths.getCancelPath();
+        _failedUrl = key._authenticationUri + "/" + key._pollerPaths.getFailedPath();
+        _success = new PollingResult.Success(_pollUrl);
+
+        for (CollectStatus status : CollectStatus.values())
+        {
+            _pendingOnSameDevice.put(status,
+                    new PollingResult.Pending(status.getSameDeviceMessageId(), _pollUrl, _cancelUrl));
+            _pendingOnOtherDevice.put(status,
+                    new PollingResult.Pending(status.getOtherDeviceMessageId(), _pollUrl, _cancelUrl));
+            _busyOnSameDevice.put(status, new PollingResult.Pending(status.getSameDeviceMessageId(), _pollUrl,
+                    _cancelUrl, BUSY_RETRY_AFTER_SECONDS));
+            _busyOnOtherDevice.put(status, new PollingResult.Pending(status.getOtherDeviceMessageId(), _pollUrl,
+                    _cancelUrl, BUSY_RETRY_AFTER_SECONDS));
+        }
+
+        for (CollectFaultStatus status : CollectFaultStatus.values())
+        {
+            _failed.put(status, new PollingResult.Failed(_failedUrl, _pollUrl, _cancelUrl, status.getMessageId(),
+                    status));
+        }
+
+        _failedWithGeneralError = new PollingResult.Failed(_failedUrl, _pollUrl, _cancelUrl, GENERAL_ERROR, null);
+    }
+
+    /**
+     * @param authenticationUri the fully qualified authentication URI of the authenticator
+     * @param pollerPaths       the poller paths used by the request
+     * @return the polling results of the authenticator
+     */
+    public static PollingResults of(URI authenticationUri, PollerPaths pollerPaths)
+    {
+        return _cache.getUnchecked(new Key(authenticationUri, pollerPaths));
+    }
+
+    public PollingResult.Pending pending(CollectStatus status, boolean useSameDevice)
+    {
+        return useSameDevice ? _pendingOnSameDevice.get(status) : _pendingOnOtherDevice.get(status);
+    }
+
+    /**
+     * @param status        the last known status of the transaction
+     * @param useSameDevice whether the user logs in on the same device
+     * @return the result telling the poller that the transaction may still be pending, but that the server is too
+     * busy to tell, so it should wait a while before polling again
+     */
+    public PollingResult.Pending busy(CollectStatus status, boolean useSameDevice)
+    {
+        return useSameDevice ? _busyOnSameDevice.get(status) : _busyOnOtherDevice.get(status);
+    }
+
+    /**
+     * @param collectFaultStatus the reason of the failure, or null if it is not known
+     * @return the result telling the poller that polling failed
+     */
+    public PollingResult.Failed failed(@Nullable CollectFaultStatus collectFaultStatus)
+    {
+        return collectFaultStatus == null ? _failedWithGeneralError : _failed.get(collectFaultStatus);
+    }
+
+    public PollingResult.Success success()
+    {
+        return _success;
+    }
+
+    public String getPollUrl()
+    {
+        return _pollUrl;
+    }
+
+    public String getCancelUrl()
+    {
+        return _cancelUrl;
+    }
+
+    public String getFailedUrl()
+    {
+        return _failedUrl;
+    }
+
+    private static final class Key
+    {
+        private final URI _authenticationUri;
+        private final PollerPaths _pollerPaths;
+
+        private Key(URI authenticationUri, PollerPaths pollerPaths)
+        {
+            _authenticationUri = authenticationUri;
+            _pollerPaths = pollerPaths;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+
+            Key that = (Key) o;
+
+            return _authenticationUri.equals(that._authenticationUri) && _pollerPaths.equals(that._pollerPaths);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            // Called on every poll, so avoid the varargs array of Objects.hash
+            return 31 * _authenticationUri.hashCode() + _pollerPaths.hashCode();
+        }
+    }
+}
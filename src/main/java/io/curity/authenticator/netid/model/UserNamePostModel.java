@@ -23,6 +23,10 @@ import java.util.Map;
 public interface UserNamePostModel
 {
 
+    /**
+     * @return false if the user logs in on another device, and either did not enter a personal number, or personal
+     * numbers are validated and the one that was entered is not valid
+     */
     boolean isValid();
 
     Map<String, Object> dataOnError();
@@ -0,0 +1,245 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.tracing;
+
+import io.curity.authenticator.netid.utils.OrderRefs;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A timed operation, that is part of a trace.
+ * <p>
+ * A span is current on the thread that started it, until it is closed, so that the spans that are started meanwhile
+ * become its children. Spans must be closed on the thread that started them, preferably using try-with-resources.
+ * <p>
+ * Each request of a login is a trace of its own. The spans of a transaction have the hash of its order reference as
+ * the {@value #ORDER_REF_HASH} attribute, like the JFR events, so that they can be found across the requests.
+ */
+public final class Span implements AutoCloseable
+{
+    public static final String ORDER_REF_HASH = "orderRefHash";
+
+    static final Span NOOP = new Span();
+
+    private static final ThreadLocal<Span> _current = new ThreadLocal<>();
+
+    private final String _name;
+    private final String _traceId;
+    private final String _spanId;
+    @Nullable
+    private final String _parentSpanId;
+    @Nullable
+    private final SpanExporter _exporter;
+    @Nullable
+    private final Span _previous;
+    private final long _startNanos;
+    private final Map<String, String> _attributes = new LinkedHashMap<>();
+    // Kept apart from the attributes, since a child that is started on another thread reads it
+    @Nullable
+    private volatile String _orderRefHash;
+    private long _durationNanos = -1;
+    private boolean _error;
+
+    private Span()
+    {
+        _name = "";
+        _traceId = "";
+        _spanId = "";
+        _parentSpanId = null;
+        _exporter = null;
+        _previous = null;
+        _startNanos = 0;
+    }
+
+    Span(String name, @Nullable Span parent, SpanExporter exporter)
+    {
+        _name = name;
+        _traceId = parent == null ? randomHex(2) : parent._traceId;
+        _spanId = randomHex(1);
+        _parentSpanId = parent == null ? null : parent._spanId;
+        _exporter = exporter;
+        _previous = _current.get();
+        _startNanos = System.nanoTime();
+
+        @Nullable String orderRefHash = parent == null ? null : parent._orderRefHash;
+
+        if (orderRefHash != null)
+        {
+            _orderRefHash = orderRefHash;
+            _attributes.put(ORDER_REF_HASH, orderRefHash);
+        }
+
+        _current.set(this);
+    }
+
+    /**
+     * @return the span that is current on this thread, or null if there is none
+     */
+    @Nullable
+    public static Span current()
+    {
+        return _current.get();
+    }
+
+    public Span setAttribute(String key, String value)
+    {
+        if (this != NOOP)
+        {
+            _attributes.put(key, value);
+        }
+
+        return this;
+    }
+
+    /**
+     * Mark the span as part of a transaction. The spans that are started under it are marked as well.
+     *
+     * @param orderRef the order reference of the transaction, or null if it is not known
+     */
+    public Span setOrderRef(@Nullable String orderRef)
+    {
+        if (this != NOOP && orderRef != null && !orderRef.isEmpty())
+        {
+            String orderRefHash = Integer.toString(OrderRefs.hash(orderRef));
+
+            _orderRefHash = orderRefHash;
+            _attributes.put(ORDER_REF_HASH, orderRefHash);
+        }
+
+        return this;
+    }
+
+    /**
+     * @return false if tracing is disabled, so that nothing needs to be looked up to describe the span
+     */
+    public boolean isRecording()
+    {
+        return this != NOOP;
+    }
+
+    /**
+     * Mark the operation as failed.
+     *
+     * @param e why it failed
+     */
+    public void setError(Throwable e)
+    {
+        if (this != NOOP)
+        {
+            _error = true;
+            _attributes.put("error", e.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @return the W3C trace context of this span, as sent in a {@code traceparent} header
+     */
+    public String toTraceParent()
+    {
+        return "00-" + _traceId + "-" + _spanId + "-01";
+    }
+
+    public String getName()
+    {
+        return _name;
+    }
+
+    public String getTraceId()
+    {
+        return _traceId;
+    }
+
+    public String getSpanId()
+    {
+        return _spanId;
+    }
+
+    @Nullable
+    public String getParentSpanId()
+    {
+        return _parentSpanId;
+    }
+
+    /**
+     * @return how long the operation took, or -1 if the span is not closed yet
+     */
+    public long getDurationNanos()
+    {
+        return _durationNanos;
+    }
+
+    public Map<String, String> getAttributes()
+    {
+        return Collections.unmodifiableMap(_attributes);
+    }
+
+    public boolean isError()
+    {
+        return _error;
+    }
+
+    @Override
+    public void close()
+    {
+        if (this == NOOP || _durationNanos >= 0)
+        {
+            return;
+        }
+
+        _durationNanos = System.nanoTime() - _startNanos;
+
+        if (_previous == null)
+        {
+            _current.remove();
+        }
+        else
+        {
+            _current.set(_previous);
+        }
+
+        if (_exporter != null)
+        {
+            _exporter.export(this);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return _name + " trace=" + _traceId + " span=" + _spanId + " parent=" + _parentSpanId
+                + " durationMicros=" + _durationNanos / 1000 + (_error ? " error" : "") + " " + _attributes;
+    }
+
+    private static String randomHex(int longs)
+    {
+        var random = ThreadLocalRandom.current();
+        var hex = new StringBuilder(16 * longs);
+
+        for (int i = 0; i < longs; i++)
+        {
+            String part = Long.toHexString(random.nextLong());
+
+            hex.append("0".repeat(16 - part.length())).append(part);
+        }
+
+        return hex.toString();
+    }
+}
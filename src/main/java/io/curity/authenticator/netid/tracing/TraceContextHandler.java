@@ -0,0 +1,72 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.tracing;
+
+import jakarta.xml.ws.handler.MessageContext;
+import jakarta.xml.ws.handler.soap.SOAPHandler;
+import jakarta.xml.ws.handler.soap.SOAPMessageContext;
+
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sends the trace context of the current span to the Net iD Access server, in a W3C {@code traceparent} HTTP header.
+ */
+public final class TraceContextHandler implements SOAPHandler<SOAPMessageContext>
+{
+    private static final String TRACE_PARENT = "traceparent";
+
+    @Override
+    public boolean handleMessage(SOAPMessageContext context)
+    {
+        @Nullable Span span = Span.current();
+
+        if (span != null && Boolean.TRUE.equals(context.get(MessageContext.MESSAGE_OUTBOUND_PROPERTY)))
+        {
+            @SuppressWarnings("unchecked")
+            @Nullable var existing = (Map<String, List<String>>) context.get(MessageContext.HTTP_REQUEST_HEADERS);
+            Map<String, List<String>> headers = existing == null ? new HashMap<>() : new HashMap<>(existing);
+
+            headers.put(TRACE_PARENT, List.of(span.toTraceParent()));
+            context.put(MessageContext.HTTP_REQUEST_HEADERS, headers);
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean handleFault(SOAPMessageContext context)
+    {
+        return true;
+    }
+
+    @Override
+    public void close(MessageContext context)
+    {
+    }
+
+    @Override
+    public Set<QName> getHeaders()
+    {
+        return Collections.emptySet();
+    }
+}
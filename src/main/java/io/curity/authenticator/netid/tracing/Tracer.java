@@ -0,0 +1,68 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.tracing;
+
+import javax.annotation.Nullable;
+
+/**
+ * Starts the spans of the authenticator.
+ * <p>
+ * Tracing is optional. When it is disabled, {@link #NOOP} is used, whose spans do nothing and are never current.
+ */
+public final class Tracer
+{
+    public static final Tracer NOOP = new Tracer(null);
+
+    @Nullable
+    private final SpanExporter _exporter;
+
+    /**
+     * @param exporter where finished spans are sent
+     */
+    public Tracer(@Nullable SpanExporter exporter)
+    {
+        _exporter = exporter;
+    }
+
+    /**
+     * Start a span, as a child of the span that is current on this thread, if any.
+     *
+     * @param name the name of the span
+     * @return the started span, which is current on this thread until it is closed
+     */
+    public Span startSpan(String name)
+    {
+        return startSpan(name, Span.current());
+    }
+
+    /**
+     * Start a span, as a child of the given span. Use this to continue a trace on another thread.
+     *
+     * @param name   the name of the span
+     * @param parent the parent of the span, or null to start a new trace
+     * @return the started span, which is current on this thread until it is closed
+     */
+    public Span startSpan(String name, @Nullable Span parent)
+    {
+        if (_exporter == null)
+        {
+            return Span.NOOP;
+        }
+
+        return new Span(name, parent == Span.NOOP ? null : parent, _exporter);
+    }
+}
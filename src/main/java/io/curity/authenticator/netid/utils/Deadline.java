@@ -0,0 +1,80 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.utils;
+
+import java.time.Duration;
+
+/**
+ * The time by which the caller of an operation stops caring about its result, such as a browser that polls again a
+ * little later. It is passed down to the calls that the operation makes, so that they give up when it has passed.
+ */
+public final class Deadline
+{
+    /**
+     * No deadline; calls are only limited by their own timeouts.
+     */
+    public static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+    private final long _expiresAtNanos;
+
+    private Deadline(long expiresAtNanos)
+    {
+        _expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * @param timeout the time from now until the deadline
+     * @return the deadline
+     */
+    public static Deadline after(Duration timeout)
+    {
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    public boolean isNone()
+    {
+        return this == NONE;
+    }
+
+    public boolean isExpired()
+    {
+        return !isNone() && System.nanoTime() - _expiresAtNanos >= 0;
+    }
+
+    /**
+     * @return the time left until the deadline, in milliseconds, which is 0 when it has passed, and
+     * {@link Long#MAX_VALUE} if there is no deadline
+     */
+    public long remainingMillis()
+    {
+        if (isNone())
+        {
+            return Long.MAX_VALUE;
+        }
+
+        return Math.max(Duration.ofNanos(_expiresAtNanos - System.nanoTime()).toMillis(), 0);
+    }
+
+    /**
+     * @param timeoutMillis a timeout, in milliseconds
+     * @return the timeout, shortened so that it ends by the deadline
+     */
+    public long cap(long timeoutMillis)
+    {
+        return Math.min(timeoutMillis, remainingMillis());
+    }
+}
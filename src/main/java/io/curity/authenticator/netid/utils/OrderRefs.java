@@ -0,0 +1,40 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.authenticator.netid.utils;
+
+import com.google.common.hash.Hashing;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Order references are not recorded as is, in events or spans, since they can be used to collect the result of a
+ * transaction. A hash is enough to correlate what happened in a transaction.
+ */
+public final class OrderRefs
+{
+    private OrderRefs()
+    {
+    }
+
+    public static int hash(@Nullable String orderRef)
+    {
+        return orderRef == null || orderRef.isEmpty()
+                ? 0
+                : Hashing.murmur3_32_fixed().hashString(orderRef, StandardCharsets.UTF_8).asInt();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.curity.authenticator.netid.utils;
+
+import javax.annotation.Nullable;
+import java.time.Clock;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Validates Swedish personal identity numbers (personnummer) and coordination numbers (samordningsnummer), and
+ * normalizes them to 12 digits, {@code YYYYMMDDNNNN}.
+ * <p>
+ * A number may be given with 12 or 10 digits, with or without a separator before the last four. With 10 digits, the
+ * century is the latest one that does not put the date of birth in the future, or the one before that if the
+ * separator is a {@code +}, which is used by those who are 100 or older. Coordination numbers have 60 added to the
+ * day of birth. The last digit is a Luhn checksum of the 10 digits that come before it.
+ */
+public final class PersonalNumberValidator
+{
+    private static final int COORDINATION_NUMBER_DAY_OFFSET = 60;
+
+    private final Clock _clock;
+
+    public PersonalNumberValidator()
+    {
+        this(Clock.systemDefaultZone());
+    }
+
+    public PersonalNumberValidator(Clock clock)
+    {
+        _clock = clock;
+    }
+
+    /**
+     * @param input the number, as entered by the user
+     * @return the number as 12 digits, or null if it is not a valid personal identity or coordination number
+     */
+    @Nullable
+    public String normalize(String input)
+    {
+        String number = input.strip();
+        char separator = '-';
+        int length = number.length();
+
+        if (length == 11 || length == 13)
+        {
+            separator = number.charAt(length - 5);
+
+            if ((separator != '-' && separator != '+') || (separator == '+' && length == 13))
+            {
+                return null;
+            }
+
+            number = number.substring(0, length - 5) + number.substring(length - 4);
+        }
+
+        if (!isDigits(number) || number.length() != 10 && number.length() != 12)
+        {
+            return null;
+        }
+
+        LocalDate today = LocalDate.now(_clock);
+        int year;
+        String tenDigits;
+
+        if (number.length() == 12)
+        {
+            year = Integer.parseInt(number.substring(0, 4));
+            tenDigits = number.substring(2);
+        }
+        else
+        {
+            int yearOfCentury = Integer.parseInt(number.substring(0, 2));
+            year = today.getYear() - Math.floorMod(today.getYear() - yearOfCentury, 100);
+            tenDigits = number;
+        }
+
+        int month = Integer.parseInt(tenDigits.substring(2, 4));
+        int day = Integer.parseInt(tenDigits.substring(4, 6));
+
+        if (day > COORDINATION_NUMBER_DAY_OFFSET)
+        {
+            day -= COORDINATION_NUMBER_DAY_OFFSET;
+        }
+
+        LocalDate dateOfBirth;
+        try
+        {
+            dateOfBirth = LocalDate.of(year, month, day);
+        }
+        catch (DateTimeException e)
+        {
+            return null;
+        }
+
+        if (number.length() == 10)
+        {
+            if (dateOfBirth.isAfter(today))
+            {
+                dateOfBirth = dateOfBirth.minusYears(100);
+            }
+
+            if (separator == '+')
+            {
+                dateOfBirth = dateOfBirth.minusYears(100);
+            }
+
+            // The 29th of February may not exist in the other century
+            if (dateOfBirth.getDayOfMonth() != day)
+            {
+                return null;
+            }
+        }
+
+        if (dateOfBirth.isAfter(today) || !isLuhnValid(tenDigits))
+        {
+            return null;
+        }
+
+        return dateOfBirth.getYear() / 100 + tenDigits;
+    }
+
+    private static boolean isDigits(String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9')
+            {
+                return false;
+            }
+        }
+
+        return !value.isEmpty();
+    }
+
+    private static boolean isLuhnValid(String digits)
+    {
+        int sum = 0;
+
+        for (int i = 0; i < digits.length(); i++)
+        {
+            int digit = digits.charAt(i) - '0';
+
+            // Every other digit is doubled, starting with the first, as there is an even number of them
+            if (i % 2 == 0)
+            {
+                digit *= 2;
+
+                if (digit > 9)
+                {
+                    digit -= 9;
+                }
+            }
+
+            sum += digit;
+        }
+
+        return sum % 10 == 0;
+    }
+}
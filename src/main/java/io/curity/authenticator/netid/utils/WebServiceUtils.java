@@ -22,6 +22,9 @@ import org.slf4j.LoggerFactory;
 
 import java.net.SocketTimeoutException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 public class WebServiceUtils
@@ -29,19 +32,40 @@ public class WebServiceUtils
     private static final Logger _logger = LoggerFactory.getLogger(WebServiceUtils.class);
     private static final int MAX_RETRY_COUNT = 2;
 
+    /**
+     * @throws RejectedExecutionException if the executor has no room for the call, which is then not made
+     */
     public static <U> CompletableFuture<U> callWebServiceWithRetry(Supplier<U> webServiceCall,
+                                                                   Executor executor,
                                                                    Supplier<? extends RuntimeException> throwOnError)
     {
-        return callWebServiceWithRetry(webServiceCall, 0, throwOnError);
+        return callWebServiceWithRetry(webServiceCall, call -> CompletableFuture.supplyAsync(call, executor), 0,
+                throwOnError);
+    }
+
+    /**
+     * @param submit makes the call on another thread, and returns its answer
+     * @throws RejectedExecutionException if there is no room for the call, which is then not made
+     */
+    public static <U> CompletableFuture<U> callWebServiceWithRetry(Supplier<U> webServiceCall,
+                                                                   Function<Supplier<U>, CompletableFuture<U>> submit,
+                                                                   Supplier<? extends RuntimeException> throwOnError)
+    {
+        return callWebServiceWithRetry(webServiceCall, submit, 0, throwOnError);
     }
 
     private static <U> CompletableFuture<U> callWebServiceWithRetry(Supplier<U> webServiceCall,
+                                                                    Function<Supplier<U>, CompletableFuture<U>> submit,
                                                                     int retries,
                                                                     Supplier<? extends RuntimeException> throwOnError)
     {
         try
         {
-            return CompletableFuture.supplyAsync(webServiceCall);
+            return submit.apply(webServiceCall);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            throw ex;
         }
         catch (RuntimeException ex)
         {
@@ -61,7 +85,7 @@ public class WebServiceUtils
                 _logger.info("Caught an exception from NetID. Error was {}. Retrying (attempts: {}, retries: {})",
                         errorMessage, retries + 1, retries);
 
-                return callWebServiceWithRetry(webServiceCall, retries + 1, throwOnError);
+                return callWebServiceWithRetry(webServiceCall, submit, retries + 1, throwOnError);
             }
 
             _logger.warn("Web service call failed. Web service returned the following error: {}. retries: {}.",
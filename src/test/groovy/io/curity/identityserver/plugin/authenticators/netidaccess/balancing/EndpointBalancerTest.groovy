@@ -0,0 +1,158 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.balancing
+
+import com.secmaker.netid.nias.NetiDAccessServerSoap
+import io.curity.authenticator.netid.balancing.EndpointBalancer
+import io.curity.authenticator.netid.balancing.NetIdAccessEndpoint
+import io.curity.authenticator.netid.balancing.RequestTimeouts
+import io.curity.authenticator.netid.metrics.InMemoryMetricsRegistry
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics.Operation
+import io.curity.authenticator.netid.utils.Deadline
+import jakarta.xml.ws.WebServiceException
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+import java.util.function.LongSupplier
+
+class EndpointBalancerTest extends Specification {
+
+    def registry = new InMemoryMetricsRegistry()
+    long now = 0
+    LongSupplier clock = { now } as LongSupplier
+
+    def "The faster of two servers gets most of the calls"() {
+        given: "A server that answered slowly and one that answered quickly"
+        def slow = endpoint('slow')
+        def fast = endpoint('fast')
+        5.times {
+            answer(slow, 200, true)
+            answer(fast, 10, true)
+        }
+        def balancer = new EndpointBalancer([slow, fast])
+
+        when: "Choosing a server many times"
+        def chosen = (1..100).collect { balancer.choose([]) }
+
+        then: "The fast one is always chosen, since both are always compared"
+        chosen.every { it.is(fast) }
+
+        and: "A server that is excluded is not chosen"
+        balancer.choose([fast]).is(slow)
+        balancer.choose([fast, slow]) == null
+    }
+
+    def "A server that keeps failing is left out for a while"() {
+        given:
+        def failing = endpoint('failing')
+        def healthy = endpoint('healthy')
+        def balancer = new EndpointBalancer([failing, healthy])
+
+        when: "Calls to it fail three times in a row"
+        3.times { answer(failing, 5, false) }
+
+        then: "It is left out"
+        !failing.isAvailable()
+        failing.ejected
+        failing.ejectedForMillis == 30_000
+        registry.snapshot()['endpoint.failing.ejections'] == 1L
+        (1..20).every { balancer.choose([]).is(healthy) }
+
+        and: "It is tried anyway when nothing else can be chosen"
+        balancer.choose([healthy]).is(failing)
+
+        when: "The ejection has passed"
+        now += TimeUnit.SECONDS.toNanos(30)
+
+        then: "It is available again, one failure away from being left out"
+        failing.isAvailable()
+        !failing.ejected
+        failing.consecutiveFailures == 2
+
+        when: "It fails once more"
+        answer(failing, 5, false)
+
+        then: "It is left out again"
+        !failing.isAvailable()
+    }
+
+    def "Proxies are reused"() {
+        given:
+        int created = 0
+        def endpoint = new NetIdAccessEndpoint('server', { created++; Mock(NetiDAccessServerSoap) },
+                RequestTimeouts.DEFAULT, registry, clock)
+
+        when:
+        def inUse = (1..3).collect { endpoint.call(Operation.COLLECT) { proxy -> endpoint.proxiesInUse } }
+
+        then:
+        created == 1
+        inUse == [1, 1, 1]
+        endpoint.idleProxies == 1
+        endpoint.proxiesInUse == 0
+    }
+
+    def "A call is not made after the deadline, and does not count against the server"() {
+        given:
+        int created = 0
+        def endpoint = new NetIdAccessEndpoint('server', { created++; Mock(NetiDAccessServerSoap) },
+                RequestTimeouts.DEFAULT, registry, clock)
+        3.times { answer(endpoint, 5, true) }
+        created = 0
+
+        when:
+        endpoint.call(Operation.COLLECT, Deadline.after(Duration.ofMillis(-1))) { proxy -> 'done' }
+
+        then:
+        thrown(WebServiceException)
+        created == 0
+        endpoint.available
+        registry.snapshot()['endpoint.server.latency.success.count'] == 3L
+        registry.snapshot()['endpoint.server.latency.failure.count'] == 0L
+    }
+
+    def "Transactions are collected from the server they were started on, or the first one if it is unknown"() {
+        given:
+        def first = endpoint('first')
+        def second = endpoint('second')
+        def balancer = new EndpointBalancer([first, second])
+
+        expect:
+        balancer.get('second').is(second)
+        balancer.get(null).is(first)
+        balancer.get('removed').is(first)
+    }
+
+    private NetIdAccessEndpoint endpoint(String name) {
+        new NetIdAccessEndpoint(name, { Mock(NetiDAccessServerSoap) }, RequestTimeouts.DEFAULT,
+                registry, clock)
+    }
+
+    private void answer(NetIdAccessEndpoint endpoint, long millis, boolean success) {
+        try {
+            endpoint.call(Operation.COLLECT) { proxy ->
+                now += TimeUnit.MILLISECONDS.toNanos(millis)
+                if (!success) {
+                    throw new WebServiceException('Connection refused')
+                }
+            }
+        }
+        catch (WebServiceException ignored) {
+        }
+    }
+}
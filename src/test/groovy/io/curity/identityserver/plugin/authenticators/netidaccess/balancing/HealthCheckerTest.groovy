@@ -0,0 +1,95 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.balancing
+
+import com.secmaker.netid.nias.NetiDAccessServerSoap
+import io.curity.authenticator.netid.balancing.EndpointBalancer
+import io.curity.authenticator.netid.balancing.HealthChecker
+import io.curity.authenticator.netid.balancing.NetIdAccessEndpoint
+import io.curity.authenticator.netid.balancing.RequestTimeouts
+import io.curity.authenticator.netid.metrics.InMemoryMetricsRegistry
+import jakarta.xml.ws.WebServiceException
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.time.Duration
+
+class HealthCheckerTest extends Specification {
+
+    def registry = new InMemoryMetricsRegistry()
+    boolean down = false
+    def proxy = Stub(NetiDAccessServerSoap) {
+        collect(_) >> {
+            if (down) {
+                throw new WebServiceException('Connection refused')
+            }
+            null
+        }
+    }
+    def flaky = new NetIdAccessEndpoint('flaky', { proxy }, RequestTimeouts.DEFAULT, registry)
+    def stable = new NetIdAccessEndpoint('stable', { Stub(NetiDAccessServerSoap) }, RequestTimeouts.DEFAULT,
+            registry)
+
+    @AutoCleanup
+    def checker = new HealthChecker([flaky, stable], Duration.ofHours(1))
+
+    def "A server is left out after failing two health checks in a row, and taken back after passing two"() {
+        given:
+        def balancer = new EndpointBalancer([flaky, stable])
+
+        when: "One check fails"
+        down = true
+        checker.checkAll()
+
+        then: "The server is still used"
+        flaky.available
+
+        when: "Another one fails"
+        checker.checkAll()
+
+        then: "It is left out"
+        !flaky.available
+        !flaky.healthy
+        registry.snapshot()['endpoint.flaky.healthy'] == 0L
+        (1..20).every { balancer.choose([]).is(stable) }
+
+        when: "It comes back, and passes one check"
+        down = false
+        checker.checkAll()
+
+        then: "It is still left out"
+        !flaky.available
+
+        when: "It passes another one"
+        checker.checkAll()
+
+        then: "It is used again"
+        flaky.available
+        stable.available
+    }
+
+    def "Checks that fail now and then do not change the health of a server"() {
+        when:
+        4.times {
+            down = !down
+            checker.checkAll()
+        }
+
+        then:
+        flaky.healthy
+    }
+}
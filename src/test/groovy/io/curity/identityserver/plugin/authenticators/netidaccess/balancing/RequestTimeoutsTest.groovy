@@ -0,0 +1,91 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.balancing
+
+import io.curity.authenticator.netid.NetIdAccessServerSoapClient
+import io.curity.authenticator.netid.balancing.RequestTimeouts
+import io.curity.authenticator.netid.client.NetIdAccessClient
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics.Operation
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.InMemorySessionManager
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.Latency
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.NetIdAccessStubServer
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.TransactionScript
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicBoolean
+
+class RequestTimeoutsTest extends Specification {
+
+    def timeouts = new RequestTimeouts(Duration.ofSeconds(10), Duration.ofSeconds(5), true, Duration.ofMillis(500))
+
+    def "Adaptive timeouts are twice the p99 latency, within bounds"() {
+        expect:
+        timeouts.getMillis(operation, latencyP99Millis) == expected
+
+        where:
+        operation              | latencyP99Millis || expected
+        Operation.COLLECT      | Double.NaN       || 5000
+        Operation.AUTHENTICATE | Double.NaN       || 10000
+        Operation.COLLECT      | 100              || 500
+        Operation.COLLECT      | 400.2            || 801
+        Operation.COLLECT      | 4000             || 5000
+        Operation.AUTHENTICATE | 4000             || 8000
+    }
+
+    def "Fixed timeouts do not depend on the latency"() {
+        expect:
+        RequestTimeouts.DEFAULT.getMillis(Operation.COLLECT, 100) == 10_000
+    }
+
+    def "A stalled collect frees its thread soon, while a slow authenticate completes"() {
+        given: "A client with adaptive timeouts, that has seen collects answered quickly"
+        def server = NetIdAccessStubServer.http().start()
+        def stallNext = new AtomicBoolean()
+        server.latency('Collect', { -> stallNext.getAndSet(false) ? 5_000L : 5L } as Latency)
+        server.latency('Authenticate', Latency.fixed(1_500))
+        server.script('order', TransactionScript.of('USER_SIGN'))
+        def node = SdkFakes.nodeConfig('netid-timeouts', server.hostName, server.port, server.path) + [
+                isAdaptiveTimeouts       : { true },
+                getAdaptiveTimeoutMinimum: { 300 },
+        ]
+        def config = SdkFakes.requestConfig(node, new InMemorySessionManager())
+        def soapClient = new NetIdAccessServerSoapClient(config)
+        def client = new NetIdAccessClient(config, soapClient)
+        150.times { client.poll('order') }
+
+        when: "A collect stalls"
+        stallNext.set(true)
+        long start = System.nanoTime()
+        client.poll('order')
+
+        then: "It times out at the minimum"
+        thrown(RuntimeException)
+        (System.nanoTime() - start).intdiv(1_000_000) < 2_000
+
+        when: "An authenticate is slow"
+        def response = client.authenticate('198212311234', false)
+
+        then: "It has the full timeout, since its latency is not known"
+        response.transactionId
+
+        cleanup:
+        soapClient?.close()
+        server?.close()
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.capture
+
+import io.curity.authenticator.netid.capture.WireCapture
+import spock.lang.Specification
+
+class WireCaptureTest extends Specification {
+
+    def "Only the text of elements that are known not to be personal is kept"() {
+        given: "A collect response with personal information"
+        def message = '<ns2:CollectResponse>\n  <ns2:CollectResult><ns2:progressStatus>COMPLETE</ns2:progressStatus>' +
+                '<ns2:userInfo><ns2:personalNumber>197001011234</ns2:personalNumber><ns2:name>Anna Svensson</ns2:name>' +
+                '<ns2:givenName>Anna</ns2:givenName><ns2:surname>Svensson</ns2:surname>' +
+                '<ns2:notAfter>2030-01-01</ns2:notAfter>' +
+                '<ns2:certificate format="x509">MIIBxTCCAW</ns2:certificate></ns2:userInfo>' +
+                '<ns2:deviceInfo><ns2:address>192.0.2.10</ns2:address></ns2:deviceInfo>'
+
+        when: "Capturing it"
+        def captured = new WireCapture(100, 8192).capture(false, message, message.length())
+
+        then: "Only what is not sensitive is kept"
+        captured.text == '<ns2:CollectResponse>\n  <ns2:CollectResult><ns2:progressStatus>COMPLETE</ns2:progressStatus>' +
+                '<ns2:userInfo><ns2:personalNumber>[REDACTED]</ns2:personalNumber><ns2:name>[REDACTED]</ns2:name>' +
+                '<ns2:givenName>[REDACTED]</ns2:givenName><ns2:surname>[REDACTED]</ns2:surname>' +
+                '<ns2:notAfter>2030-01-01</ns2:notAfter>' +
+                '<ns2:certificate format="x509">[REDACTED]</ns2:certificate></ns2:userInfo>' +
+                '<ns2:deviceInfo><ns2:address>[REDACTED]</ns2:address></ns2:deviceInfo>'
+    }
+
+    def "Personal numbers are redacted from the text that is kept"() {
+        expect:
+        WireCapture.redact('<faultstring>Unknown user 700101-1234</faultstring><orderRef>abc-123</orderRef>') ==
+                '<faultstring>Unknown user [REDACTED]</faultstring><orderRef>abc-123</orderRef>'
+    }
+
+    def "A message that is cut off inside a redacted element is still redacted"() {
+        expect:
+        WireCapture.redact('<certificate>MIIBxTCCAW') == '<certificate>[REDACTED]'
+    }
+
+    def "Only the most recent messages are kept, oldest first"() {
+        given:
+        def wireCapture = new WireCapture(100, 8192)
+
+        when: "Capturing more messages than fit"
+        (1..WireCapture.CAPACITY + 3).each { wireCapture.capture(true, "message $it", 9) }
+
+        then: "The oldest ones are gone"
+        def messages = wireCapture.dump()
+        messages.size() == WireCapture.CAPACITY
+        messages.first().text == 'message 4'
+        messages.last().text == "message ${WireCapture.CAPACITY + 3}"
+    }
+
+    def "Nothing is sampled when capture is disabled"() {
+        given:
+        def wireCapture = new WireCapture(0, 8192)
+
+        expect:
+        wireCapture.disabled
+        !(1..100).any { wireCapture.sample() }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.client
+
+import com.sun.management.ThreadMXBean
+import groovy.transform.CompileStatic
+
+import java.lang.management.ManagementFactory
+
+/**
+ * Measures the bytes that the calling thread allocates for a call, using the allocation counter of the thread.
+ * <p>
+ * Calls are warmed up first, so that they are compiled like they would be in a running server. The allocations of
+ * the meter itself are measured with an empty call, and left out.
+ */
+@CompileStatic
+final class AllocationMeter {
+
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.threadMXBean
+
+    /**
+     * @param warmupCalls   the number of calls to make before measuring
+     * @param measuredCalls the number of calls to measure
+     * @param setup         what to do before each call, without measuring it
+     * @param call          the call to measure
+     * @return the average number of bytes that a call allocated
+     */
+    static long bytesPerCall(int warmupCalls, int measuredCalls, Runnable setup, Runnable call) {
+        Runnable nothing = {}
+        for (int i = 0; i < warmupCalls; i++) {
+            setup.run()
+            call.run()
+            nothing.run()
+        }
+
+        long overhead = measure(measuredCalls, setup, nothing)
+        long total = measure(measuredCalls, setup, call)
+
+        return Math.max(total - overhead, 0) / measuredCalls as long
+    }
+
+    private static long measure(int calls, Runnable setup, Runnable call) {
+        long total = 0
+        for (int i = 0; i < calls; i++) {
+            setup.run()
+            long before = allocatedBytes()
+            call.run()
+            total += allocatedBytes() - before
+        }
+
+        return total
+    }
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().id)
+    }
+}
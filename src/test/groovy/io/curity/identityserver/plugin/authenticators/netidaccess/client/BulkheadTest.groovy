@@ -0,0 +1,203 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.client
+
+import io.curity.authenticator.netid.NetIdAccessServerSoapClient
+import io.curity.authenticator.netid.client.Bulkhead
+import io.curity.authenticator.netid.client.BulkheadFullException
+import io.curity.authenticator.netid.client.AuthenticationFaultStatus
+import io.curity.authenticator.netid.client.NetIdAccessClient
+import io.curity.authenticator.netid.client.PollingClientAuthenticateException
+import io.curity.authenticator.netid.client.PollingClientOverloadedException
+import io.curity.authenticator.netid.metrics.InMemoryMetricsRegistry
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.InMemorySessionManager
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.Latency
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.NetIdAccessStubServer
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.TransactionScript
+import spock.lang.Specification
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.function.Supplier
+
+class BulkheadTest extends Specification {
+
+    def "Calls beyond those that run and those that wait are rejected"() {
+        given: "A bulkhead that runs one call, and queues two"
+        def registry = new InMemoryMetricsRegistry()
+        def bulkhead = new Bulkhead('test', 1, 2, registry)
+        def release = new CountDownLatch(1)
+        def done = new CountDownLatch(3)
+        def order = new CopyOnWriteArrayList<Integer>()
+
+        when: "Four calls are made while the first one runs"
+        bulkhead.execute { release.await(); order << 1; done.countDown() }
+        bulkhead.execute { order << 2; done.countDown() }
+        bulkhead.execute { order << 3; done.countDown() }
+        bulkhead.execute { order << 4 }
+
+        then: "The last one is rejected"
+        thrown(BulkheadFullException)
+        registry.snapshot()['test.rejected'] == 1L
+        registry.snapshot()['test.queued'] == 2L
+
+        when:
+        release.countDown()
+
+        then: "The others run in the order they were made"
+        done.await(5, TimeUnit.SECONDS)
+        order == [1, 2, 3]
+
+        cleanup:
+        bulkhead?.close()
+    }
+
+    def "Calls of higher priority run first, and calls of low priority only fill half of the queue"() {
+        given: "A bulkhead that runs one call, and queues four"
+        def bulkhead = new Bulkhead('test', 1, 4, new InMemoryMetricsRegistry())
+        def release = new CountDownLatch(1)
+        def done = new CountDownLatch(4)
+        def order = new CopyOnWriteArrayList<String>()
+        bulkhead.execute { release.await() }
+
+        when: "Calls of each priority wait their turn"
+        bulkhead.withPriority(Bulkhead.Priority.LOW).execute { order << 'low 1'; done.countDown() }
+        bulkhead.withPriority(Bulkhead.Priority.LOW).execute { order << 'low 2'; done.countDown() }
+        bulkhead.withPriority(Bulkhead.Priority.NORMAL).execute { order << 'normal'; done.countDown() }
+        bulkhead.withPriority(Bulkhead.Priority.HIGH).execute { order << 'high'; done.countDown() }
+        release.countDown()
+
+        then:
+        done.await(5, TimeUnit.SECONDS)
+        order == ['high', 'normal', 'low 1', 'low 2']
+
+        when: "The queue is half full"
+        release = new CountDownLatch(1)
+        bulkhead.execute { release.await() }
+        2.times { bulkhead.execute { release.await() } }
+        bulkhead.withPriority(Bulkhead.Priority.LOW).execute {}
+
+        then: "There is no room for calls of low priority"
+        thrown(BulkheadFullException)
+
+        when:
+        bulkhead.withPriority(Bulkhead.Priority.HIGH).execute {}
+
+        then: "But there is for the others"
+        noExceptionThrown()
+
+        cleanup:
+        release?.countDown()
+        bulkhead?.close()
+    }
+
+    def "A call that is cancelled while it waits its turn is not made, and leaves its place in the queue"() {
+        given: "A bulkhead that runs one call, and queues one"
+        def registry = new InMemoryMetricsRegistry()
+        def bulkhead = new Bulkhead('test', 1, 1, registry)
+        def release = new CountDownLatch(1)
+        def made = new CopyOnWriteArrayList<String>()
+        bulkhead.execute { release.await() }
+
+        when: "A call that waits its turn is cancelled"
+        def cancelled = bulkhead.supply({ made << 'cancelled'; 'cancelled' } as Supplier, Bulkhead.Priority.NORMAL)
+        cancelled.cancel(true)
+
+        then: "Its place in the queue is free"
+        registry.snapshot()['test.queued'] == 0L
+
+        when: "Another call takes it"
+        def answer = bulkhead.supply({ made << 'made'; 'made' } as Supplier, Bulkhead.Priority.NORMAL)
+        release.countDown()
+
+        then: "Only that one is made"
+        answer.get(5, TimeUnit.SECONDS) == 'made'
+        made == ['made']
+
+        cleanup:
+        release?.countDown()
+        bulkhead?.close()
+    }
+
+    def "Transactions are started while the collects are saturated"() {
+        given: "A client that makes one collect at a time, and a server that is slow to answer collects"
+        def server = NetIdAccessStubServer.http().start()
+        server.script('order', TransactionScript.of('USER_SIGN'))
+        server.latency('Collect', Latency.fixed(2_000))
+        def node = SdkFakes.nodeConfig('netid-bulkhead', server.hostName, server.port, server.path) + [
+                getCollectMaxConcurrentCalls: { 1 },
+                getCollectMaxQueuedCalls    : { 0 },
+        ]
+        def config = SdkFakes.requestConfig(node, new InMemorySessionManager())
+        def registry = new InMemoryMetricsRegistry()
+        def soapClient = new NetIdAccessServerSoapClient(config, registry)
+        def client = new NetIdAccessClient(config, soapClient)
+        def slowPoll = Thread.start { client.poll('order') }
+        Thread.sleep(200)
+
+        when: "Another collect is made"
+        client.poll('order')
+
+        then: "It is not made"
+        thrown(PollingClientOverloadedException)
+        registry.snapshot()['collect.rejected'] == 1L
+
+        when: "A transaction is started"
+        long start = System.nanoTime()
+        def response = client.authenticate('198212311234', false)
+
+        then: "It does not wait for the collects"
+        response.transactionId
+        (System.nanoTime() - start).intdiv(1_000_000) < 1_000
+
+        cleanup:
+        slowPoll?.join()
+        soapClient?.close()
+        server?.close()
+    }
+
+    def "A transaction is not started when too many are being started"() {
+        given: "A client that starts one transaction at a time, and a server that is slow to start them"
+        def server = NetIdAccessStubServer.http().start()
+        server.latency('Authenticate', Latency.fixed(2_000))
+        def node = SdkFakes.nodeConfig('netid-bulkhead', server.hostName, server.port, server.path) + [
+                getAuthenticateMaxConcurrentCalls: { 1 },
+                getAuthenticateMaxQueuedCalls    : { 0 },
+        ]
+        def config = SdkFakes.requestConfig(node, new InMemorySessionManager())
+        def soapClient = new NetIdAccessServerSoapClient(config)
+        def client = new NetIdAccessClient(config, soapClient)
+        def slowStart = Thread.start { client.authenticate('198212311234', false) }
+        Thread.sleep(200)
+
+        when: "Another transaction is started"
+        client.authenticate('198212311235', false)
+
+        then: "It fails at once, with a status that asks the user to try again"
+        def e = thrown(PollingClientAuthenticateException)
+        e.status == AuthenticationFaultStatus.OVERLOADED
+        e.status.messageId == 'overloaded'
+
+        cleanup:
+        slowStart?.join()
+        soapClient?.close()
+        server?.close()
+    }
+}
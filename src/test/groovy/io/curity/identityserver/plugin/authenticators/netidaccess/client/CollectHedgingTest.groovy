@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.client
+
+import io.curity.authenticator.netid.NetIdAccessServerSoapClient
+import io.curity.authenticator.netid.client.CollectStatus
+import io.curity.authenticator.netid.client.HedgeBudget
+import io.curity.authenticator.netid.client.NetIdAccessClient
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.InMemorySessionManager
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.Latency
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.NetIdAccessStubServer
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.TransactionScript
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicBoolean
+
+class CollectHedgingTest extends Specification {
+
+    static final String ORDER_REF = 'hedged-order'
+
+    @AutoCleanup
+    def server = NetIdAccessStubServer.http().start()
+    def slowNext = new AtomicBoolean()
+    NetIdAccessServerSoapClient soapClient
+
+    def setup() {
+        server.script(ORDER_REF, TransactionScript.of('USER_SIGN'))
+        server.latency('Collect', { -> slowNext.getAndSet(false) ? 3_000L : 5L } as Latency)
+    }
+
+    def "A slow collect is hedged, and the faster answer is used"() {
+        given: "A client that may hedge, and has seen how fast the server usually is"
+        def client = client(50)
+        30.times { client.poll(ORDER_REF) }
+
+        when: "A collect is slow"
+        slowNext.set(true)
+        long start = System.nanoTime()
+        def response = client.poll(ORDER_REF)
+        long millis = (System.nanoTime() - start).intdiv(1_000_000)
+
+        then: "The answer of the hedge is used"
+        response.status == CollectStatus.USER_SIGN
+        millis < 1_000
+        metrics()['collect.hedged'] == 1L
+        metrics()['collect.hedgeWon'] == 1L
+    }
+
+    def "Nothing is hedged without a budget"() {
+        given:
+        def client = client(0)
+        30.times { client.poll(ORDER_REF) }
+
+        when:
+        slowNext.set(true)
+        long start = System.nanoTime()
+        client.poll(ORDER_REF)
+        long millis = (System.nanoTime() - start).intdiv(1_000_000)
+
+        then:
+        millis >= 3_000
+        metrics()['collect.hedged'] == 0L
+    }
+
+    def "The budget allows a share of the calls to be hedged"() {
+        given:
+        def budget = new HedgeBudget(5)
+
+        when: "Making a thousand calls, that all would like to be hedged"
+        int hedges = 0
+        1000.times {
+            budget.called()
+            if (budget.tryHedge()) {
+                hedges++
+            }
+        }
+
+        then:
+        hedges == 50
+
+        and: "Only a few hedges can be saved up"
+        2000.times { budget.called() }
+        (1..20).count { budget.tryHedge() } == 10
+    }
+
+    private NetIdAccessClient client(int hedgeBudgetPercent) {
+        def node = SdkFakes.nodeConfig('netid-hedging', server.hostName, server.port, server.path) +
+                [getHedgeBudgetPercent: { hedgeBudgetPercent }]
+        def config = SdkFakes.requestConfig(node, new InMemorySessionManager())
+        soapClient = new NetIdAccessServerSoapClient(config)
+        return new NetIdAccessClient(config, soapClient)
+    }
+
+    private Map<String, Number> metrics() {
+        return soapClient.metrics.registry.snapshot()
+    }
+
+    def cleanup() {
+        soapClient?.close()
+    }
+}
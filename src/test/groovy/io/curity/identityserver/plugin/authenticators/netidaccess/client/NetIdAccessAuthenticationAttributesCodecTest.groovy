@@ -0,0 +1,112 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.client
+
+import com.secmaker.netid.nias.DeviceInfoType
+import com.secmaker.netid.nias.ResultCollect
+import com.secmaker.netid.nias.UserInfoType
+import io.curity.authenticator.netid.client.CollectStatus
+import io.curity.authenticator.netid.client.NetIdAccessAuthenticationAttributes
+import io.curity.authenticator.netid.client.NetIdAccessAuthenticationAttributesCodec
+import se.curity.identityserver.sdk.attribute.MapAttributeValue
+import spock.lang.Specification
+
+class NetIdAccessAuthenticationAttributesCodecTest extends Specification {
+
+    def "Authentication attributes survive encoding and decoding"() {
+        given: "Authentication attributes from a netid response"
+        ResultCollect collected = createResult()
+        NetIdAccessAuthenticationAttributes attributes = NetIdAccessAuthenticationAttributes.of(collected)
+
+        when: "Encoding and decoding the attributes"
+        def decoded = NetIdAccessAuthenticationAttributesCodec.decode(NetIdAccessAuthenticationAttributesCodec.encode(attributes))
+
+        then: "The decoded attributes contain the same data"
+        decoded.subject == attributes.subject
+        decoded.subjectAttributes.personalNumber?.value == collected.userInfo.personalNumber
+        decoded.subjectAttributes.userId?.value == collected.userInfo.userId
+        decoded.subjectAttributes.requestedUserId == null
+
+        MapAttributeValue name = MapAttributeValue.of(decoded.subjectAttributes.attributesByName?.name?.value)
+        name.attributesByName.givenName.value as String == collected.userInfo.givenName
+        name.attributesByName.formatted.value as String == 'Teddie Bäckström'
+
+        List certificates = decoded.subjectAttributes['x509Certificates']?.value
+        certificates.first().value as String == collected.userInfo.certificate
+
+        decoded.contextAttributes?.ipAddress?.value == collected.deviceInfo.address
+        decoded.contextAttributes?.deviceType?.value == collected.deviceInfo.name
+        decoded.contextAttributes?.ocspResponse?.value == collected.ocspResponse
+    }
+
+    def "The encoding is smaller than the certificate and OCSP response it contains"() {
+        given: "Authentication attributes with a realistically sized certificate and OCSP response"
+        ResultCollect collected = createResult()
+        NetIdAccessAuthenticationAttributes attributes = NetIdAccessAuthenticationAttributes.of(collected)
+
+        when: "Encoding the attributes"
+        String encoded = NetIdAccessAuthenticationAttributesCodec.encode(attributes)
+
+        then: "The encoding is compressed"
+        encoded.length() < collected.userInfo.certificate.length() + collected.ocspResponse.length()
+    }
+
+    def "Invalid input is rejected"() {
+        when: "Decoding something that was not produced by the codec"
+        NetIdAccessAuthenticationAttributesCodec.decode(input)
+
+        then: "An exception is thrown"
+        thrown(IllegalArgumentException)
+
+        where:
+        input << ['', 'AA==', Base64.encoder.encodeToString([1, 0, 5, 65] as byte[]), Base64.encoder.encodeToString([1, 1, 1, 2, 3] as byte[])]
+    }
+
+    ResultCollect createResult() {
+        ResultCollect collected = new ResultCollect()
+        UserInfoType userInfo = new UserInfoType()
+        userInfo.name = 'Teddie Bäckström'
+        userInfo.givenName = 'Teddie'
+        userInfo.surname = 'Bäckström'
+        userInfo.personalNumber = '198212311234'
+        userInfo.userId = 'teddie'
+        userInfo.certificate = base64Data(1500)
+
+        DeviceInfoType deviceInfo = new DeviceInfoType()
+        deviceInfo.name = 'tPhone'
+        deviceInfo.address = '1.2.3.4'
+        deviceInfo.version = 'v1'
+
+        collected.userInfo = userInfo
+        collected.deviceInfo = deviceInfo
+        collected.ocspResponse = base64Data(2000)
+        collected.progressStatus = CollectStatus.COMPLETE.name()
+        return collected
+    }
+
+    /**
+     * DER-like data with the kind of repetition found in certificates and OCSP responses.
+     */
+    private static String base64Data(int size) {
+        def random = new Random(size)
+        def bytes = new byte[size]
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (i % 64 < 24) ? (byte) (i % 7) : (byte) random.nextInt(256)
+        }
+        Base64.encoder.encodeToString(bytes)
+    }
+}
@@ -20,6 +20,7 @@ import com.secmaker.netid.nias.DeviceInfoType
 import com.secmaker.netid.nias.ResultCollect
 import com.secmaker.netid.nias.UserInfoType
 import io.curity.authenticator.netid.client.NetIdAccessAuthenticationAttributes
+import io.curity.authenticator.netid.client.NetIdAccessAuthenticationAttributesCodec
 import io.curity.authenticator.netid.client.CollectResponse
 import io.curity.authenticator.netid.client.CollectStatus
 import se.curity.identityserver.sdk.attribute.AuthenticationAttributes
@@ -122,6 +123,23 @@ class NetIdAccessAuthenticationAttributesTest extends Specification {
         null   | null           |  null          | 'TED'           || 'TED'           | null           | null                   | null               | 'TED'
     }
 
+    def "Authentication attributes survive Java serialization"() {
+        given: "Authentication attributes of a completed collect"
+        def attributes = NetIdAccessAuthenticationAttributes.of(minimalResult())
+
+        when: "Serializing and deserializing them"
+        def bytes = new ByteArrayOutputStream()
+        new ObjectOutputStream(bytes).withCloseable { it.writeObject(attributes) }
+        def deserialized = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))
+                .withCloseable { it.readObject() } as NetIdAccessAuthenticationAttributes
+
+        then: "They are the same, and can still be encoded"
+        deserialized.subject == attributes.subject
+        deserialized.contextAttributes.ipAddress.value == '1.2.3.4'
+        NetIdAccessAuthenticationAttributesCodec.encode(deserialized) ==
+                NetIdAccessAuthenticationAttributesCodec.encode(attributes)
+    }
+
     def "A response without userUniqueName, userId, requestedUserId, or personalNumber throws exception"() {
         given: "A result object missing userId and personalNumber"
         ResultCollect collected = new ResultCollect()
@@ -0,0 +1,139 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.client
+
+import com.google.common.base.Ticker
+import com.secmaker.netid.nias.DeviceInfoType
+import com.secmaker.netid.nias.ResultCollect
+import com.secmaker.netid.nias.UserInfoType
+import groovy.transform.CompileStatic
+import io.curity.authenticator.netid.client.CollectFaultStatus
+import io.curity.authenticator.netid.client.CollectResponse
+import io.curity.authenticator.netid.client.CollectStatus
+import io.curity.authenticator.netid.client.CustomPollerStatusCodes
+import io.curity.authenticator.netid.client.NetIdAccessAuthenticationAttributes
+import io.curity.authenticator.netid.client.PollingClient
+import io.curity.authenticator.netid.client.PollingClientCollectException
+import io.curity.authenticator.netid.client.TransactionRegistry
+import io.curity.authenticator.netid.client.WebServicePoller
+import io.curity.authenticator.netid.metrics.InMemoryMetricsRegistry
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics
+import io.curity.authenticator.netid.model.PollerPaths
+import io.curity.authenticator.netid.tracing.Tracer
+import io.curity.authenticator.netid.utils.Deadline
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.InMemorySessionManager
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.RecordingResponse
+import se.curity.identityserver.sdk.attribute.Attribute
+import spock.lang.Requires
+import spock.lang.Specification
+
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.AUTHENTICATION_STATE
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.ORDER_REF
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.USE_SAME_DEVICE
+
+/**
+ * Budgets for the bytes that a poll allocates. When a change makes a poll allocate more than its budget, either
+ * avoid the allocations, or record a new budget that is about a quarter above what the failure reports.
+ * <p>
+ * What is allocated depends on the JVM and on how far the calls have been compiled, so the budgets are only checked
+ * with the benchmarks, in the {@code jmh} profile, which sets {@code netid.allocation.budgets}.
+ */
+@Requires({ System.getProperty('netid.allocation.budgets') })
+class PollAllocationBudgetTest extends Specification {
+
+    private static final String ORDER_REF_VALUE = 'order-1'
+    private static final int WARMUP_CALLS = 20_000
+    private static final int MEASURED_CALLS = 2_000
+
+    def "A poll of the poller stays within its budget"() {
+        given: "A poller of a transaction, with a client that answers with the same outcome every time"
+        def session = new InMemorySessionManager()
+        def poller = poller(session, client)
+        def response = new RecordingResponse()
+
+        when:
+        long bytes = AllocationMeter.bytesPerCall(WARMUP_CALLS, MEASURED_CALLS,
+                {
+                    session.put(Attribute.of(ORDER_REF, ORDER_REF_VALUE))
+                    session.put(Attribute.of(USE_SAME_DEVICE, false))
+                    session.remove(AUTHENTICATION_STATE)
+                },
+                { poller.getAuthenticationResult(false, response.response) })
+
+        then:
+        bytes <= budget
+
+        where:
+        state      | client                                                      || budget
+        'pending'  | pollingClient(new CollectResponse(CollectStatus.USER_SIGN)) || 1_500
+        'failed'   | failingClient(CollectFaultStatus.USER_CANCEL)                || 9_000
+        'complete' | pollingClient(completeResponse())                            || 3_600
+    }
+
+    private static WebServicePoller poller(InMemorySessionManager session, PollingClient client) {
+        return new WebServicePoller(
+                client,
+                new TransactionRegistry(new SteppingTicker()),
+                new NetIdAccessMetrics(new InMemoryMetricsRegistry()),
+                Tracer.NOOP,
+                PollerPaths.getDefault(),
+                session,
+                SdkFakes.INFORMATION_PROVIDER,
+                SdkFakes.EXCEPTION_FACTORY,
+                SdkFakes.UNAUTHENTICATED,
+                CustomPollerStatusCodes.INSTANCE)
+    }
+
+    /**
+     * A second passes between reads, so that the polls are never throttled.
+     */
+    @CompileStatic
+    static final class SteppingTicker extends Ticker {
+
+        private long now
+
+        @Override
+        long read() {
+            now += 1_000_000_000L
+            return now
+        }
+    }
+
+    private static PollingClient pollingClient(CollectResponse collectResponse) {
+        return [poll: { String orderRef, Deadline deadline = Deadline.NONE -> collectResponse },
+                getServiceName: { 'stub' }] as PollingClient
+    }
+
+    private static PollingClient failingClient(CollectFaultStatus status) {
+        // Created once, so that the stack trace of the exception is not measured as part of the poll
+        def exception = new PollingClientCollectException('Unsuccessful poll', status)
+
+        return [poll: { String orderRef, Deadline deadline = Deadline.NONE -> throw exception },
+                getServiceName: { 'stub' }] as PollingClient
+    }
+
+    private static CollectResponse completeResponse() {
+        def userInfo = new UserInfoType(personalNumber: '198212311234', givenName: 'Test', surname: 'Testsson',
+                name: 'Test Testsson')
+        def deviceInfo = new DeviceInfoType(name: 'tPhone', address: '1.2.3.4')
+        def result = new ResultCollect(progressStatus: CollectStatus.COMPLETE.name(), userInfo: userInfo,
+                deviceInfo: deviceInfo)
+
+        return new CollectResponse(CollectStatus.COMPLETE, NetIdAccessAuthenticationAttributes.of(result))
+    }
+}
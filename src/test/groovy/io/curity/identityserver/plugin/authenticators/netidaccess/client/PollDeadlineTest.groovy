@@ -0,0 +1,91 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.client
+
+import io.curity.authenticator.netid.NetIdAccessServerSoapClient
+import io.curity.authenticator.netid.client.CustomPollerStatusCodes
+import io.curity.authenticator.netid.client.NetIdAccessClient
+import io.curity.authenticator.netid.client.WebServicePoller
+import io.curity.authenticator.netid.model.PollerPaths
+import io.curity.authenticator.netid.model.PollingResult
+import io.curity.authenticator.netid.utils.Deadline
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.InMemorySessionManager
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.RecordingResponse
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.Latency
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.NetIdAccessStubServer
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.TransactionScript
+import se.curity.identityserver.sdk.attribute.Attribute
+import spock.lang.Specification
+
+import java.time.Duration
+
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.ORDER_REF
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.USE_SAME_DEVICE
+
+class PollDeadlineTest extends Specification {
+
+    def "A poll that is not answered before its deadline tells the poller to poll again"() {
+        given: "A server that stalls, and a poller of one of its transactions"
+        def server = NetIdAccessStubServer.http().start()
+        server.latency('Collect', Latency.fixed(3_000))
+        server.script('order', TransactionScript.of('USER_SIGN'))
+        def session = new InMemorySessionManager()
+        session.put(Attribute.of(ORDER_REF, 'order'))
+        session.put(Attribute.of(USE_SAME_DEVICE, false))
+        def config = SdkFakes.requestConfig(SdkFakes.nodeConfig('netid-deadline', server.hostName, server.port,
+                server.path), session)
+        def soapClient = new NetIdAccessServerSoapClient(config)
+        def poller = new WebServicePoller(new NetIdAccessClient(config, soapClient), soapClient.transactionRegistry,
+                soapClient.metrics, soapClient.tracer, PollerPaths.getDefault(), session,
+                SdkFakes.INFORMATION_PROVIDER, SdkFakes.EXCEPTION_FACTORY, SdkFakes.UNAUTHENTICATED,
+                CustomPollerStatusCodes.INSTANCE)
+
+        when: "Polling a few times, with a short deadline"
+        def responses = (1..3).collect {
+            def response = new RecordingResponse()
+            long start = System.nanoTime()
+            poller.getAuthenticationResult(false, response.response, Deadline.after(Duration.ofMillis(300)))
+            [response: response, millis: (System.nanoTime() - start).intdiv(1_000_000)]
+        }
+
+        then: "Each poll is answered soon after its deadline, as pending"
+        responses.every { it.millis < 1_500 }
+        responses.every { it.response.model instanceof PollingResult.Pending }
+        responses.every { it.response.httpStatus == CustomPollerStatusCodes.INSTANCE.keepPolling() }
+
+        and: "The poller is asked to back off"
+        responses.every { it.response.model.retryAfterSeconds > 0 }
+        responses.every { it.response.model.viewData.retryAfter == it.response.model.retryAfterSeconds }
+
+        and: "The server is not blamed for it"
+        soapClient.getEndpoints(Optional.empty(), Optional.empty()).get(null).available
+
+        cleanup:
+        soapClient?.close()
+        server?.close()
+    }
+
+    def "Timeouts are capped by the deadline"() {
+        expect:
+        Deadline.NONE.cap(10_000) == 10_000
+        !Deadline.NONE.expired
+        Deadline.after(Duration.ofSeconds(1)).cap(10_000) <= 1_000
+        Deadline.after(Duration.ofMillis(-1)).expired
+        Deadline.after(Duration.ofMillis(-1)).remainingMillis() == 0
+    }
+}
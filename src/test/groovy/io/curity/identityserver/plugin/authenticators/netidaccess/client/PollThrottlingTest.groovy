@@ -0,0 +1,112 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.client
+
+import io.curity.authenticator.netid.client.CollectResponse
+import io.curity.authenticator.netid.client.CollectStatus
+import io.curity.authenticator.netid.client.CustomPollerStatusCodes
+import io.curity.authenticator.netid.client.PollingClient
+import io.curity.authenticator.netid.client.TransactionRegistry
+import io.curity.authenticator.netid.client.WebServicePoller
+import io.curity.authenticator.netid.metrics.InMemoryMetricsRegistry
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics
+import io.curity.authenticator.netid.model.PollerPaths
+import io.curity.authenticator.netid.model.PollingResult
+import io.curity.authenticator.netid.tracing.Tracer
+import io.curity.authenticator.netid.utils.Deadline
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.InMemorySessionManager
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.RecordingResponse
+import se.curity.identityserver.sdk.attribute.Attribute
+import se.curity.identityserver.sdk.service.authentication.AuthenticatorInformationProvider
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.ORDER_REF
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.USE_SAME_DEVICE
+
+class PollThrottlingTest extends Specification {
+
+    def collects = new AtomicInteger()
+    def uriLookups = new AtomicInteger()
+    def status = CollectStatus.USER_SIGN
+    def registry = new InMemoryMetricsRegistry()
+    def session = new InMemorySessionManager()
+    def poller = new WebServicePoller(
+            [poll          : { String orderRef, Deadline deadline = Deadline.NONE ->
+                collects.incrementAndGet()
+                new CollectResponse(status)
+            },
+             getServiceName: { 'stub' }] as PollingClient,
+            new TransactionRegistry(),
+            new NetIdAccessMetrics(registry),
+            Tracer.NOOP,
+            PollerPaths.getDefault(),
+            session,
+            [getFullyQualifiedAuthenticationUri: {
+                uriLookups.incrementAndGet()
+                SdkFakes.AUTHENTICATION_URI
+            }] as AuthenticatorInformationProvider,
+            SdkFakes.EXCEPTION_FACTORY,
+            SdkFakes.UNAUTHENTICATED,
+            CustomPollerStatusCodes.INSTANCE)
+
+    def setup() {
+        session.put(Attribute.of(ORDER_REF, 'order'))
+        session.put(Attribute.of(USE_SAME_DEVICE, false))
+    }
+
+    def "A client that polls too often is answered without collecting"() {
+        when: "A client polls many times in a row"
+        def responses = (1..20).collect {
+            def response = new RecordingResponse()
+            poller.getAuthenticationResult(false, response.response)
+            response
+        }
+
+        then: "Only a few polls collect"
+        collects.get() == 3
+        registry.snapshot()['poll.throttled'] == 17L
+
+        and: "The others repeat the last status, and ask the client to back off"
+        responses.every { it.httpStatus == CustomPollerStatusCodes.INSTANCE.keepPolling() }
+        responses.every { (it.model as PollingResult.Pending).messageId == status.otherDeviceMessageId }
+        responses.drop(3).every { (it.model as PollingResult.Pending).retryAfterSeconds > 0 }
+    }
+
+    def "A poll is not throttled when the last status cannot be repeated"() {
+        given: "A transaction that failed"
+        status = CollectStatus.FAILED
+
+        when: "A client polls many times in a row"
+        5.times { poller.getAuthenticationResult(false, new RecordingResponse().response) }
+
+        then: "Each poll collects"
+        collects.get() == 5
+        registry.snapshot()['poll.throttled'] == 0L
+    }
+
+    def "The authentication URI of the poller is only resolved once"() {
+        when: "A client polls many times in a row"
+        20.times { poller.getAuthenticationResult(false, new RecordingResponse().response) }
+
+        then: "The polling results were looked up on the first poll only"
+        uriLookups.get() == 1
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.client
+
+import com.google.common.base.Ticker
+import io.curity.authenticator.netid.client.CollectStatus
+import io.curity.authenticator.netid.client.TransactionRegistry
+import spock.lang.Specification
+
+import java.time.Duration
+
+class TransactionRegistryTest extends Specification {
+
+    def "A transaction is recently pending until its status gets too old"() {
+        given: "A registry with a transaction that was seen to be in progress"
+        long now = 0
+        def registry = new TransactionRegistry({ now } as Ticker)
+        registry.recordStatus('order-1', CollectStatus.OUTSTANDING_TRANSACTION)
+
+        expect: "It is recently pending right away"
+        registry.isRecentlyPending('order-1', Duration.ofSeconds(2))
+        !registry.isRecentlyPending('order-2', Duration.ofSeconds(2))
+
+        when: "Time passes"
+        now += Duration.ofSeconds(3).toNanos()
+
+        then: "The status is too old"
+        !registry.isRecentlyPending('order-1', Duration.ofSeconds(2))
+    }
+
+    def "A completed transaction is never recently pending"() {
+        given: "A registry"
+        def registry = new TransactionRegistry()
+
+        when: "The transaction completed"
+        registry.recordStatus('order-1', CollectStatus.COMPLETE)
+
+        then: "The server is asked for the result"
+        !registry.isRecentlyPending('order-1', Duration.ofSeconds(2))
+    }
+
+    def "Looking for the timeline of a transaction that this node has not seen does not start one"() {
+        given: "A registry"
+        def registry = new TransactionRegistry()
+
+        expect: "No timeline is found for another node's transaction, and none is kept"
+        registry.findTimeline('order-1') == null
+        registry.size() == 0
+
+        when: "The transaction is started on this node"
+        def timeline = registry.getTimeline('order-1')
+
+        then: "Its timeline is found"
+        registry.findTimeline('order-1').is(timeline)
+    }
+
+    def "A transaction that is polled too often runs out of polls, and gets more over time"() {
+        given: "A registry"
+        long now = 0
+        def registry = new TransactionRegistry({ now } as Ticker)
+
+        expect: "A few polls in a row are allowed"
+        (1..5).collect { registry.tryAcquirePoll('order-1') } == [true, true, true, false, false]
+
+        and: "Other transactions have polls of their own"
+        registry.tryAcquirePoll('order-2')
+
+        when: "Two seconds pass"
+        now += Duration.ofSeconds(2).toNanos()
+
+        then: "Two more polls are allowed"
+        (1..3).collect { registry.tryAcquirePoll('order-1') } == [true, true, false]
+
+        when: "A long time passes"
+        now += Duration.ofMinutes(1).toNanos()
+
+        then: "No more polls than the burst are saved up"
+        (1..4).collect { registry.tryAcquirePoll('order-1') } == [true, true, true, false]
+    }
+}
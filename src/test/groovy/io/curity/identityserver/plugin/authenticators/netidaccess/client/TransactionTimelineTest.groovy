@@ -0,0 +1,61 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.client
+
+import io.curity.authenticator.netid.client.CollectStatus
+import io.curity.authenticator.netid.client.TransactionRegistry
+import spock.lang.Specification
+
+class TransactionTimelineTest extends Specification {
+
+    def "Statuses are timed from the start of the transaction, when they were first seen"() {
+        given: "A transaction that started at 1000"
+        def timeline = new TransactionRegistry().getTimeline('order-1')
+        timeline.startedAt(1000)
+
+        when: "The user is asked to sign twice, and then the transaction completes"
+        def firstSign = timeline.seen(CollectStatus.USER_SIGN, 3000)
+        def secondSign = timeline.seen(CollectStatus.USER_SIGN, 5000)
+        timeline.seen(CollectStatus.COMPLETE, 9000)
+
+        then: "Only the first time the user was asked to sign counts"
+        firstSign
+        !secondSign
+        timeline.millisUntil(CollectStatus.USER_SIGN) == 2000
+        timeline.millisUntil(CollectStatus.COMPLETE) == 8000
+        timeline.millisBetween(CollectStatus.USER_SIGN, CollectStatus.COMPLETE) == 6000
+        timeline.millisSince(CollectStatus.COMPLETE, 9500) == 500
+    }
+
+    def "Steps are not timed when the start or the status is not known"() {
+        given: "A transaction that was started on another node"
+        def timeline = new TransactionRegistry().getTimeline('order-1')
+        timeline.seen(CollectStatus.COMPLETE, 9000)
+
+        expect: "Nothing can be timed from the start"
+        !timeline.isStartKnown()
+        timeline.millisUntil(CollectStatus.COMPLETE) == -1
+        timeline.millisBetween(CollectStatus.USER_SIGN, CollectStatus.COMPLETE) == -1
+
+        when: "The start is learned, twice"
+        timeline.startedAt(4000)
+        timeline.startedAt(6000)
+
+        then: "The first start is kept"
+        timeline.millisUntil(CollectStatus.COMPLETE) == 5000
+    }
+}
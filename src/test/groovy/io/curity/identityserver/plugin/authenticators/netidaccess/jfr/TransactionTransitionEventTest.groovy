@@ -0,0 +1,52 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.jfr
+
+import io.curity.authenticator.netid.jfr.TransactionTransitionEvent
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordingFile
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+class TransactionTransitionEventTest extends Specification {
+
+    def "Transitions are recorded without the order reference"() {
+        given: "A recording of transitions"
+        def recording = new Recording()
+        recording.enable('io.curity.netid.TransactionTransition')
+        recording.start()
+
+        when: "A transition happens"
+        TransactionTransitionEvent.record('order-1', TransactionTransitionEvent.Transition.COMPLETED, true)
+        recording.stop()
+        def file = Files.createTempFile('netid', '.jfr')
+        recording.dump(file)
+        def events = RecordingFile.readAllEvents(file)
+
+        then: "It is in the recording"
+        events.size() == 1
+        events[0].getString('transition') == 'COMPLETED'
+        events[0].getBoolean('useSameDevice')
+        events[0].getInt('orderRefHash') != 0
+        !events[0].fields*.name.contains('orderRef')
+
+        cleanup:
+        recording?.close()
+        file?.toFile()?.delete()
+    }
+}
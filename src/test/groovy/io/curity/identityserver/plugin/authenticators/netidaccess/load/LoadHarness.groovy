@@ -0,0 +1,287 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.load
+
+import io.curity.authenticator.netid.NetIdAccessServerSoapClient
+import io.curity.authenticator.netid.PollingAuthenticatorConstants
+import io.curity.authenticator.netid.client.CustomPollerStatusCodes
+import io.curity.authenticator.netid.endpoints.authenticate.EnterUserNameRequestHandler
+import io.curity.authenticator.netid.endpoints.authenticate.LaunchRequestHandler
+import io.curity.authenticator.netid.endpoints.authenticate.WaitRequestHandler
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.HttpException
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.InMemorySessionManager
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.RecordingResponse
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.Latency
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.NetIdAccessStubServer
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.TransactionScript
+import se.curity.identityserver.sdk.authentication.AuthenticatorRequestHandler
+import se.curity.identityserver.sdk.web.Request
+
+import java.lang.management.ManagementFactory
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.FormValueNames.POLLING_DONE
+
+/**
+ * Simulates concurrent logins through the request handlers of the authenticator, against a
+ * {@link NetIdAccessStubServer}, the way browsers and users would drive them:
+ * <ul>
+ *     <li>Same device: post the username form, open the launch page and switch to the app. Polling is paused while
+ *     the user is in the app, and resumes with an immediate poll when they come back.</li>
+ *     <li>Other device: post the username form with a personal number, open the wait page and poll while the user
+ *     starts the app on the other device and signs.</li>
+ * </ul>
+ * Polls are spaced like the poller script does, starting at 2 seconds and growing to 8. When a poll says that the
+ * transaction is done, the form is posted to pick up the result. Think times and poll delays can be scaled down, to
+ * run quickly.
+ * <p>
+ * Users do not hold a thread while they think. Handler calls run on a fixed number of threads, like the request
+ * threads of a node.
+ */
+final class LoadHarness {
+
+    private static final long INITIAL_POLL_DELAY_MILLIS = 2000
+    private static final double POLL_BACKOFF_FACTOR = 1.5d
+    private static final long MAX_POLL_DELAY_MILLIS = 8000
+    private static final long HEAP_SAMPLE_MILLIS = 100
+
+    /** Number of logins to make */
+    int logins = 1000
+    /** Number of users that are logging in at the same time */
+    int concurrentUsers = 500
+    /** Number of threads that handle requests */
+    int requestThreads = 200
+    /** Share of the users that use the same device flow */
+    double sameDeviceShare = 0.7d
+    /** Multiplies think times and poll delays; below 1 to run faster than real users */
+    double timeScale = 1.0d
+    /** Time to fill in the username form */
+    Latency enterUserNameTime = Latency.logNormal(4000, 0.5d)
+    /** Time from the start of the transaction until the user has opened the app */
+    Latency appStartTime = Latency.logNormal(3000, 0.5d)
+    /** Time from opening the app until the user has signed */
+    Latency signTime = Latency.logNormal(5000, 0.5d)
+    /** Latency of the calls to the stub server */
+    Latency backendLatency = Latency.logNormal(40, 0.5d)
+
+    private final Map<String, Queue<Long>> _handlerNanos = new ConcurrentHashMap<>()
+    private final AtomicInteger _failedLogins = new AtomicInteger()
+    private final AtomicInteger _startedLogins = new AtomicInteger()
+    private final AtomicReference<Exception> _firstError = new AtomicReference<>()
+    private ScheduledExecutorService _executor
+    private CountDownLatch _done
+    private Map<String, Object> _nodeConfig
+    private NetIdAccessServerSoapClient _soapClient
+    private NetIdAccessStubServer _server
+
+    private static final AtomicInteger RUNS = new AtomicInteger()
+
+    LoadReport run() {
+        _server = NetIdAccessStubServer.http().start()
+        _server.latency('Authenticate', backendLatency)
+        _server.latency('Collect', backendLatency)
+        _server.scriptFor { personalNumber -> script() }
+
+        _nodeConfig = SdkFakes.nodeConfig("netid-load-${RUNS.incrementAndGet()}", _server.hostName, _server.port,
+                _server.path)
+        _soapClient = new NetIdAccessServerSoapClient(SdkFakes.requestConfig(_nodeConfig, new InMemorySessionManager()))
+        _executor = Executors.newScheduledThreadPool(requestThreads)
+        _done = new CountDownLatch(logins)
+
+        def memory = ManagementFactory.memoryMXBean
+        long peakHeap = 0
+        def heapSampler = Executors.newSingleThreadScheduledExecutor()
+        heapSampler.scheduleAtFixedRate({ peakHeap = Math.max(peakHeap, memory.heapMemoryUsage.used) },
+                0, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS)
+
+        long startedAt = System.nanoTime()
+        try {
+            Math.min(concurrentUsers, logins).times { nextLogin() }
+            _done.await()
+            def elapsed = Duration.ofNanos(System.nanoTime() - startedAt)
+
+            memory.gc()
+
+            return new LoadReport(
+                    logins: logins,
+                    failedLogins: _failedLogins.get(),
+                    elapsed: elapsed,
+                    backendCalls: _server.requestCount('Authenticate') + _server.requestCount('Collect'),
+                    handlerLatency: _handlerNanos.collectEntries { name, nanos ->
+                        [(name): new LoadReport.Latencies(nanos as List)]
+                    },
+                    peakHeapBytes: peakHeap,
+                    heapAfterGcBytes: memory.heapMemoryUsage.used,
+                    firstError: _firstError.get(),
+            )
+        }
+        finally {
+            heapSampler.shutdownNow()
+            _executor.shutdownNow()
+            _soapClient.close()
+            _server.close()
+        }
+    }
+
+    private TransactionScript script() {
+        long appStart = scaled(appStartTime)
+        long sign = scaled(signTime)
+
+        return TransactionScript.timed([
+                OUTSTANDING_TRANSACTION: 0L,
+                STARTED                : appStart,
+                USER_SIGN              : appStart + 1,
+                COMPLETE               : appStart + sign,
+        ])
+    }
+
+    private void nextLogin() {
+        if (_startedLogins.getAndIncrement() < logins) {
+            new SimulatedUser(ThreadLocalRandom.current().nextDouble() < sameDeviceShare).start()
+        }
+    }
+
+    private long scaled(Latency latency) {
+        return scaled(latency.sampleMillis())
+    }
+
+    private long scaled(long millis) {
+        return Math.round(millis * timeScale)
+    }
+
+    /**
+     * One login, as a chain of requests that are scheduled after the time the user or the poller waits.
+     */
+    private final class SimulatedUser {
+
+        private final boolean _useSameDevice
+        private final InMemorySessionManager _session = new InMemorySessionManager()
+        private long _pollDelay = INITIAL_POLL_DELAY_MILLIS
+
+        SimulatedUser(boolean useSameDevice) {
+            _useSameDevice = useSameDevice
+        }
+
+        void start() {
+            after(0) {
+                request('enterUserName.get', { config -> new EnterUserNameRequestHandler(SdkFakes.UNAUTHENTICATED, config, _soapClient) },
+                        SdkFakes.get())
+                after(scaled(enterUserNameTime)) { enterUserName() }
+            }
+        }
+
+        private void enterUserName() {
+            def form = _useSameDevice
+                    ? [usesamedevice: 'true']
+                    : [userName: String.format('19%010d', ThreadLocalRandom.current().nextLong(10_000_000_000L))]
+            def redirect = request('enterUserName.post', { config -> new EnterUserNameRequestHandler(SdkFakes.UNAUTHENTICATED, config, _soapClient) },
+                    SdkFakes.post(form))
+
+            if (redirect == null || !redirect.redirect) {
+                failed()
+            }
+            else if (_useSameDevice) {
+                request('launch.get', { config -> new LaunchRequestHandler(config, SdkFakes.UNAUTHENTICATED, _soapClient) },
+                        SdkFakes.get())
+                // The app takes over; the page is hidden until the user comes back, so the poller is paused
+                after(scaled(appStartTime) + scaled(signTime)) { poll() }
+            }
+            else {
+                request('wait.get', { config -> waitHandler(config) }, SdkFakes.get())
+                after(scaled(_pollDelay)) { poll() }
+            }
+        }
+
+        private void poll() {
+            def response = new RecordingResponse()
+            request('wait.post', { config -> waitHandler(config) }, SdkFakes.post([:]), response)
+
+            if (_session.get(PollingAuthenticatorConstants.SessionKeys.ERROR_MESSAGE) != null) {
+                failed()
+            }
+            else if (response.httpStatus == CustomPollerStatusCodes.INSTANCE.pollingDone()) {
+                request('wait.post.done', { config -> waitHandler(config) }, SdkFakes.post([(POLLING_DONE): 'true']))
+                finished()
+            }
+            else {
+                _pollDelay = Math.min((long) (_pollDelay * POLL_BACKOFF_FACTOR), MAX_POLL_DELAY_MILLIS)
+                after(scaled(_pollDelay)) { poll() }
+            }
+        }
+
+        private WaitRequestHandler waitHandler(config) {
+            return new WaitRequestHandler(config, SdkFakes.UNAUTHENTICATED, _soapClient)
+        }
+
+        /**
+         * Handle a request like the server does, timing the handler.
+         *
+         * @return the exception that the handler ended the request with, if any, such as a redirect
+         */
+        private HttpException request(String name, Closure<AuthenticatorRequestHandler> handlerFactory,
+                                      Request request, RecordingResponse response = new RecordingResponse()) {
+            long startedAt = System.nanoTime()
+            try {
+                def handler = handlerFactory(SdkFakes.requestConfig(_nodeConfig, _session))
+                def requestModel = handler.preProcess(request, response.response)
+                request.isGetRequest()
+                        ? handler.get(requestModel, response.response)
+                        : handler.post(requestModel, response.response)
+
+                return null
+            }
+            catch (HttpException e) {
+                return e
+            }
+            finally {
+                _handlerNanos.computeIfAbsent(name) { new ConcurrentLinkedQueue<>() }
+                        .add(System.nanoTime() - startedAt)
+            }
+        }
+
+        private void after(long delayMillis, Closure step) {
+            _executor.schedule({
+                try {
+                    step()
+                }
+                catch (Exception e) {
+                    _firstError.compareAndSet(null, e)
+                    failed()
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS)
+        }
+
+        private void failed() {
+            _failedLogins.incrementAndGet()
+            finished()
+        }
+
+        private void finished() {
+            _done.countDown()
+            nextLogin()
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.load
+
+import io.curity.identityserver.plugin.authenticators.netidaccess.stub.Latency
+import spock.lang.Requires
+import spock.lang.Specification
+
+/**
+ * Runs the load harness. A full run, with real think times, is made when the number of logins is given, for example:
+ * <pre>
+ * mvn test -Dtest=LoadHarnessTest -Dnetid.load.logins=5000 -Dnetid.load.users=2000 -Dnetid.load.threads=200
+ * </pre>
+ */
+class LoadHarnessTest extends Specification {
+
+    def "Concurrent logins of both flows complete"() {
+        given: "A short run, with think times scaled down to milliseconds"
+        def harness = new LoadHarness(logins: 200, concurrentUsers: 100, requestThreads: 20, timeScale: 0.01d,
+                backendLatency: Latency.fixed(1))
+
+        when:
+        def report = harness.run()
+
+        then:
+        assert report.failedLogins == 0 : "Logins failed, the first one with: $report.firstError"
+        report.logins == 200
+        report.handlerLatency.keySet().containsAll(['enterUserName.post', 'wait.post', 'wait.post.done'])
+        report.handlerLatency['wait.post.done'].count == 200
+        // One authenticate, and at least the collect that saw the transaction complete
+        report.backendCallsPerLogin >= 2
+    }
+
+    @Requires({ System.getProperty('netid.load.logins') })
+    def "Full run"() {
+        given:
+        def harness = new LoadHarness(
+                logins: Integer.getInteger('netid.load.logins'),
+                concurrentUsers: Integer.getInteger('netid.load.users', 1000),
+                requestThreads: Integer.getInteger('netid.load.threads', 200),
+                timeScale: Double.parseDouble(System.getProperty('netid.load.timeScale', '1')),
+        )
+
+        when:
+        def report = harness.run()
+        println report
+
+        then:
+        report.logins > 0
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.load
+
+import java.time.Duration
+
+/**
+ * The outcome of a {@link LoadHarness} run.
+ */
+final class LoadReport {
+
+    int logins
+    int failedLogins
+    Duration elapsed
+    long backendCalls
+    /** Latency of the handlers, in milliseconds, by handler and method, e.g. {@code wait.post} */
+    Map<String, Latencies> handlerLatency
+    long peakHeapBytes
+    long heapAfterGcBytes
+    /** The first unexpected error that failed a login, if any */
+    Exception firstError
+
+    double getLoginsPerSecond() {
+        return logins / Math.max(elapsed.toMillis(), 1) * 1000
+    }
+
+    double getBackendCallsPerLogin() {
+        return logins == 0 ? 0 : backendCalls / logins
+    }
+
+    @Override
+    String toString() {
+        def lines = [
+                String.format('%d logins (%d failed) in %.1f s: %.1f logins/s, %.2f backend calls per login',
+                        logins, failedLogins, elapsed.toMillis() / 1000d, loginsPerSecond, backendCallsPerLogin),
+                String.format('heap: %d MiB peak, %d MiB after GC', peakHeapBytes >> 20, heapAfterGcBytes >> 20),
+                String.format('%-22s %8s %10s %10s', 'handler', 'count', 'p50 ms', 'p99 ms'),
+        ]
+        handlerLatency.sort().each { name, latencies ->
+            lines << String.format('%-22s %8d %10.2f %10.2f', name, latencies.count, latencies.p50, latencies.p99)
+        }
+        if (firstError) {
+            lines << "first error: $firstError".toString()
+        }
+
+        return lines.join(System.lineSeparator())
+    }
+
+    static final class Latencies {
+
+        final int count
+        final double p50
+        final double p99
+
+        Latencies(List<Long> nanos) {
+            def sorted = nanos.sort(false)
+            count = sorted.size()
+            p50 = percentile(sorted, 0.50d)
+            p99 = percentile(sorted, 0.99d)
+        }
+
+        private static double percentile(List<Long> sorted, double quantile) {
+            if (sorted.isEmpty()) {
+                return 0
+            }
+
+            return sorted[Math.min((int) Math.ceil(quantile * sorted.size()) - 1, sorted.size() - 1)] / 1_000_000d
+        }
+    }
+}
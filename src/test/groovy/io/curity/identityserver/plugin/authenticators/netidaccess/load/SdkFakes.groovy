@@ -0,0 +1,186 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.load
+
+import io.curity.authenticator.netid.config.NetIdAccessConfig
+import se.curity.identityserver.sdk.attribute.Attribute
+import se.curity.identityserver.sdk.authentication.AuthenticatedState
+import se.curity.identityserver.sdk.http.HttpStatus
+import se.curity.identityserver.sdk.service.ExceptionFactory
+import se.curity.identityserver.sdk.service.SessionManager
+import se.curity.identityserver.sdk.service.UserPreferenceManager
+import se.curity.identityserver.sdk.service.authentication.AuthenticatorInformationProvider
+import se.curity.identityserver.sdk.web.Request
+import se.curity.identityserver.sdk.web.Response
+import se.curity.identityserver.sdk.web.ResponseModel
+
+import java.lang.reflect.InvocationHandler
+import java.lang.reflect.Proxy
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * In-memory fakes of the SDK services that the request handlers use, standing in for the Curity Identity Server.
+ */
+final class SdkFakes {
+
+    static final URI AUTHENTICATION_URI = URI.create('https://localhost:8443/authn/authentication/netid')
+
+    private SdkFakes() {
+    }
+
+    /**
+     * The configuration of a request, with the session of the user that made it.
+     *
+     * @param node the settings of the Net iD Access server, for example from {@link #nodeConfig}
+     */
+    static NetIdAccessConfig requestConfig(Map<String, Object> node, SessionManager sessionManager) {
+        return (node + [
+                getSessionManager                  : { sessionManager },
+                getExceptionFactory                : { EXCEPTION_FACTORY },
+                getAuthenticatorInformationProvider: { INFORMATION_PROVIDER },
+                getUserPreferenceManager           : { USER_PREFERENCE_MANAGER },
+        ]) as NetIdAccessConfig
+    }
+
+    static Map<String, Object> nodeConfig(String id, String hostName, int port, String path) {
+        return [
+                id                          : { id },
+                getHostName                 : { hostName },
+                getPort                     : { port },
+                getPath                     : { path },
+                getAdditionalServers        : { [] },
+                getHealthCheckInterval      : { 0 },
+                getConnectTimeout           : { 3000 },
+                getAuthenticateTimeout      : { 10000 },
+                getCollectTimeout           : { 10000 },
+                isAdaptiveTimeouts          : { false },
+                getAdaptiveTimeoutMinimum   : { 1000 },
+                getPollDeadline             : { 3000 },
+                isDisableHttps              : { true },
+                getTrustStore               : { Optional.empty() },
+                getClientKeyStore           : { Optional.empty() },
+                isEnableDiagnostics         : { false },
+                isEnableTracing             : { false },
+                getWireCaptureSamplePercent : { 0 },
+                getWireCaptureMaxBytes      : { 8192 },
+                getHedgeBudgetPercent       : { 0 },
+                getAuthenticateMaxConcurrentCalls: { 16 },
+                getAuthenticateMaxQueuedCalls: { 64 },
+                getCollectMaxConcurrentCalls: { 32 },
+                getCollectMaxQueuedCalls    : { 64 },
+                isValidatePersonalNumber    : { false },
+        ]
+    }
+
+    static final AuthenticatedState UNAUTHENTICATED = [
+            isAuthenticated: { false },
+            getUsername    : { null },
+    ] as AuthenticatedState
+
+    static Request get() {
+        return request(true, [:])
+    }
+
+    static Request post(Map<String, String> form) {
+        return request(false, form)
+    }
+
+    private static Request request(boolean isGet, Map<String, String> form) {
+        return [
+                isGetRequest                : { isGet },
+                isPostRequest               : { !isGet },
+                getAcceptableMediaTypes     : { ['text/html'] },
+                getFormParameterValueOrError: { String name -> form[name] },
+        ] as Request
+    }
+
+    /**
+     * A session, which in the server is shared by the requests of a user.
+     */
+    static final class InMemorySessionManager implements SessionManager {
+
+        private final Map<String, Attribute> _attributes = new ConcurrentHashMap<>()
+
+        @Override
+        Attribute get(String name) {
+            return _attributes[name]
+        }
+
+        @Override
+        void put(Attribute attribute) {
+            _attributes[attribute.name.value] = attribute
+        }
+
+        @Override
+        Attribute remove(String name) {
+            return _attributes.remove(name)
+        }
+    }
+
+    /**
+     * The parts of a response that the harness looks at.
+     */
+    static final class RecordingResponse {
+
+        HttpStatus httpStatus = HttpStatus.OK
+        ResponseModel model
+
+        final Response response = [
+                setResponseModel: { ResponseModel model, Object statusOrScope ->
+                    this.model = model
+                    if (statusOrScope instanceof HttpStatus) {
+                        httpStatus = statusOrScope
+                    }
+                },
+                setHttpStatus   : { HttpStatus status -> httpStatus = status },
+                putViewData     : { String key, Object value, Response.ResponseModelScope scope -> },
+                addErrorMessage : { message -> },
+        ] as Response
+    }
+
+    /**
+     * What the exception factory creates. In the server, these become redirects and error pages.
+     */
+    static final class HttpException extends RuntimeException {
+
+        final String kind
+
+        HttpException(String kind, String message) {
+            super(message, null, false, false)
+            this.kind = kind
+        }
+
+        boolean isRedirect() {
+            return kind == 'redirectException'
+        }
+    }
+
+    static final ExceptionFactory EXCEPTION_FACTORY = Proxy.newProxyInstance(
+            SdkFakes.classLoader, [ExceptionFactory] as Class[],
+            { proxy, method, args -> new HttpException(method.name, args?.join(' ')) } as InvocationHandler
+    ) as ExceptionFactory
+
+    static final AuthenticatorInformationProvider INFORMATION_PROVIDER = [
+            getFullyQualifiedAuthenticationUri: { AUTHENTICATION_URI },
+            getAuthenticationBaseUri          : { AUTHENTICATION_URI },
+    ] as AuthenticatorInformationProvider
+
+    private static final UserPreferenceManager USER_PREFERENCE_MANAGER = [
+            getUsername : { null },
+            saveUsername: { String userName -> },
+    ] as UserPreferenceManager
+}
@@ -0,0 +1,161 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.metrics
+
+import io.curity.authenticator.netid.NetIdAccessServerSoapClient
+import io.curity.authenticator.netid.balancing.EndpointBalancer
+import io.curity.authenticator.netid.balancing.NetIdAccessEndpoint
+import io.curity.authenticator.netid.balancing.RequestTimeouts
+import io.curity.authenticator.netid.capture.WireCapture
+import io.curity.authenticator.netid.client.TransactionRegistry
+import io.curity.authenticator.netid.endpoints.authenticate.DiagnosticsRequestHandler
+import io.curity.authenticator.netid.metrics.Diagnostics
+import io.curity.authenticator.netid.metrics.InMemoryMetricsRegistry
+import io.curity.authenticator.netid.metrics.JmxMetricsExporter
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.HttpException
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.InMemorySessionManager
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.RecordingResponse
+import spock.lang.Specification
+
+import javax.management.ObjectName
+import java.lang.management.ManagementFactory
+import java.util.concurrent.TimeUnit
+
+class DiagnosticsTest extends Specification {
+
+    def "Diagnostics summarize the calls and transactions of the node"() {
+        given: "Some calls and transactions"
+        def metrics = new NetIdAccessMetrics(new InMemoryMetricsRegistry())
+        def registry = new TransactionRegistry()
+        registry.getTimeline('order-1')
+        registry.getTimeline('order-2')
+        metrics.callEnded(NetIdAccessMetrics.Operation.COLLECT,
+                metrics.callStarted(NetIdAccessMetrics.Operation.COLLECT) - TimeUnit.MILLISECONDS.toNanos(40), true)
+        metrics.callStarted(NetIdAccessMetrics.Operation.AUTHENTICATE)
+        metrics.refreshed(true)
+        metrics.refreshed(true)
+        metrics.refreshed(true)
+        metrics.refreshed(false)
+
+        when: "Getting the diagnostics"
+        def diagnostics = Diagnostics.of(metrics, registry, endpoints(metrics))
+
+        then: "They reflect what happened"
+        diagnostics.outstandingTransactions == 2
+        diagnostics.calls.authenticate.inFlight == 1
+        diagnostics.calls.collect.inFlight == 0
+        diagnostics.calls.collect.success.count == 1
+        diagnostics.calls.collect.success.recentCount == 1
+        diagnostics.calls.collect.success.recentP99Millis >= 25
+        diagnostics.calls.collect.failure.count == 0
+        diagnostics.recentStatusHitRatio == 0.75d
+        !diagnostics.containsKey('wireCapture')
+        diagnostics.endpoints.name == ['netid.example.com:443']
+        diagnostics.endpoints.available == [true]
+        diagnostics.endpoints.ejected == [false]
+        diagnostics.endpoints.consecutiveFailures == [0]
+        diagnostics.endpoints.proxiesInUse == [0]
+    }
+
+    def "The hit ratio is unknown before a page was refreshed"() {
+        expect:
+        def metrics = new NetIdAccessMetrics(new InMemoryMetricsRegistry())
+        Diagnostics.of(metrics, new TransactionRegistry(), endpoints(metrics)).recentStatusHitRatio == -1d
+    }
+
+    def "Diagnostics are reported by the diagnostics endpoint, only when they are enabled"() {
+        given: "An authenticator with diagnostics, and one without"
+        def node = SdkFakes.nodeConfig('diagnostics-endpoint', 'localhost', 1, '/')
+        def enabled = SdkFakes.requestConfig(node + [isEnableDiagnostics: { true }], new InMemorySessionManager())
+        def disabled = SdkFakes.requestConfig(node, new InMemorySessionManager())
+        def soapClient = new NetIdAccessServerSoapClient(enabled)
+        def response = new RecordingResponse()
+
+        when: "Asking the one with diagnostics"
+        def handler = new DiagnosticsRequestHandler(enabled, soapClient)
+        handler.get(handler.preProcess(SdkFakes.get(), response.response), response.response)
+
+        then: "It reports them"
+        response.model.viewData.outstandingTransactions == 0
+        response.model.viewData.calls.collect.inFlight == 0
+
+        when: "Asking the one without"
+        new DiagnosticsRequestHandler(disabled, soapClient).preProcess(SdkFakes.get(), response.response)
+
+        then: "Access is denied"
+        def e = thrown(HttpException)
+        e.kind == 'forbiddenException'
+
+        cleanup:
+        soapClient?.close()
+    }
+
+    def "Diagnostics are only reported by the metrics MBean, when they are enabled"() {
+        given:
+        def metrics = new NetIdAccessMetrics(new InMemoryMetricsRegistry())
+        def mBeanServer = ManagementFactory.platformMBeanServer
+
+        when: "Exporting the metrics with diagnostics"
+        def exporter = JmxMetricsExporter.register(metrics.registry,
+                { Diagnostics.of(metrics, new TransactionRegistry(), null) }, null, 'diagnostics-authenticator')
+        def objectName = new ObjectName('io.curity.netid:type=Metrics,name=' +
+                ObjectName.quote('diagnostics-authenticator'))
+
+        then: "They are an operation of the MBean"
+        mBeanServer.getMBeanInfo(objectName).operations*.name == ['diagnostics']
+        mBeanServer.invoke(objectName, 'diagnostics', null, null).outstandingTransactions == 0
+
+        when: "Exporting them without"
+        exporter.close()
+        exporter = JmxMetricsExporter.register(metrics.registry, 'diagnostics-authenticator')
+
+        then: "There is no such operation"
+        mBeanServer.getMBeanInfo(objectName).operations.length == 0
+
+        cleanup:
+        exporter?.close()
+    }
+
+    def "The most recently captured messages are reported by the metrics MBean, when capture is enabled"() {
+        given:
+        def wireCapture = new WireCapture(100, 8192)
+        wireCapture.capture(true, '<orderRef>abc-123</orderRef>', 28)
+        def mBeanServer = ManagementFactory.platformMBeanServer
+        def objectName = new ObjectName('io.curity.netid:type=Metrics,name=' +
+                ObjectName.quote('wire-capture-authenticator'))
+
+        when:
+        def exporter = JmxMetricsExporter.register(new InMemoryMetricsRegistry(), null, wireCapture.&dumpText,
+                'wire-capture-authenticator')
+
+        then:
+        mBeanServer.getMBeanInfo(objectName).operations*.name == ['wireCapture']
+        def lines = mBeanServer.invoke(objectName, 'wireCapture', null, null)
+        lines.size() == 1
+        lines[0].endsWith('Sent 28 bytes: <orderRef>abc-123</orderRef>')
+
+        cleanup:
+        exporter?.close()
+    }
+
+    private static EndpointBalancer endpoints(NetIdAccessMetrics metrics) {
+        new EndpointBalancer([new NetIdAccessEndpoint('netid.example.com:443', { null }, RequestTimeouts.DEFAULT,
+                metrics.registry)])
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.metrics
+
+import io.curity.authenticator.netid.client.CollectStatus
+import io.curity.authenticator.netid.metrics.InMemoryMetricsRegistry
+import io.curity.authenticator.netid.metrics.JmxMetricsExporter
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics
+import spock.lang.Specification
+
+import javax.management.Attribute
+import javax.management.AttributeNotFoundException
+import javax.management.ObjectName
+import javax.management.ReflectionException
+import java.lang.management.ManagementFactory
+import java.util.concurrent.TimeUnit
+import java.util.function.LongSupplier
+
+class InMemoryMetricsRegistryTest extends Specification {
+
+    def "Timers estimate percentiles from their histogram"() {
+        given: "A timer with 100 recorded durations"
+        def registry = new InMemoryMetricsRegistry()
+        def timer = registry.timer('collect.latency.success')
+        90.times { timer.record(TimeUnit.MILLISECONDS.toNanos(20)) }
+        10.times { timer.record(TimeUnit.MILLISECONDS.toNanos(700)) }
+
+        when: "Taking a snapshot"
+        def snapshot = registry.snapshot()
+
+        then: "The percentiles are the upper bounds of their buckets"
+        snapshot['collect.latency.success.count'] == 100
+        snapshot['collect.latency.success.p50Millis'] == 25
+        snapshot['collect.latency.success.p95Millis'] == 1000
+        snapshot['collect.latency.success.maxMillis'] == 700
+    }
+
+    def "The timers of the timeline tell apart durations of minutes"() {
+        given: "Metrics of Net iD Access calls"
+        def metrics = new NetIdAccessMetrics(new InMemoryMetricsRegistry())
+        def timer = metrics.registry.timer('collect.latency.success')
+
+        when: "Logins take 45 and 100 seconds, and so do calls"
+        [45, 100].each {
+            metrics.transactionStep(NetIdAccessMetrics.Step.TIME_TO_COMPLETE, false, TimeUnit.SECONDS.toMillis(it))
+            timer.record(TimeUnit.SECONDS.toNanos(it))
+        }
+
+        then: "The timeline tells them apart, while the calls are all estimated as the longest one"
+        def snapshot = metrics.registry.snapshot()
+        snapshot['timeline.otherDevice.timeToComplete.p50Millis'] == 60000
+        snapshot['timeline.otherDevice.timeToComplete.p99Millis'] == 120000
+        snapshot['collect.latency.success.p50Millis'] == 100000
+
+        when: "A login takes longer than the timeline tells apart"
+        metrics.transactionStep(NetIdAccessMetrics.Step.TIME_TO_COMPLETE, false, TimeUnit.MINUTES.toMillis(7))
+
+        then: "It is estimated as the longest one"
+        metrics.registry.snapshot()['timeline.otherDevice.timeToComplete.p99Millis'] == 420000
+    }
+
+    def "Recent percentiles only cover the last minute"() {
+        given: "A timer that recorded slow durations a while ago"
+        long now = 0
+        def registry = new InMemoryMetricsRegistry({ now } as LongSupplier)
+        def timer = registry.timer('collect.latency.success')
+        10.times { timer.record(TimeUnit.MILLISECONDS.toNanos(700)) }
+
+        when: "It records fast durations a few minutes later"
+        now += TimeUnit.MINUTES.toNanos(3)
+        10.times { timer.record(TimeUnit.MILLISECONDS.toNanos(20)) }
+        def snapshot = registry.snapshot()
+
+        then: "The recent percentiles only see the fast ones, while the others see them all"
+        snapshot['collect.latency.success.recentCount'] == 10
+        snapshot['collect.latency.success.recentP99Millis'] == 25
+        snapshot['collect.latency.success.p99Millis'] == 1000
+
+        when: "Another minute passes"
+        now += TimeUnit.MINUTES.toNanos(1)
+
+        then: "Nothing is recent"
+        registry.snapshot()['collect.latency.success.recentCount'] == 0
+        registry.snapshot()['collect.latency.success.recentP99Millis'] == 0
+    }
+
+    def "Outcomes and in-flight calls are counted"() {
+        given: "Metrics of Net iD Access calls"
+        def metrics = new NetIdAccessMetrics(new InMemoryMetricsRegistry())
+
+        when: "A call is in progress, and another one has completed"
+        metrics.callStarted(NetIdAccessMetrics.Operation.COLLECT)
+        def startTime = metrics.callStarted(NetIdAccessMetrics.Operation.COLLECT)
+        metrics.callEnded(NetIdAccessMetrics.Operation.COLLECT, startTime, true)
+        metrics.collected(CollectStatus.USER_SIGN)
+
+        then: "The snapshot contains them"
+        def snapshot = metrics.registry.snapshot()
+        snapshot['collect.inFlight'] == 1
+        snapshot['collect.latency.success.count'] == 1
+        snapshot['collect.status.USER_SIGN'] == 1
+        snapshot['collect.status.COMPLETE'] == 0
+    }
+
+    def "Metrics are exported using JMX"() {
+        given: "A registry with a counter"
+        def registry = new InMemoryMetricsRegistry()
+        registry.counter('collect.status.STARTED').increment()
+
+        when: "Exporting it"
+        def exporter = JmxMetricsExporter.register(registry, 'test-authenticator')
+        def objectName = new ObjectName('io.curity.netid:type=Metrics,name=' + ObjectName.quote('test-authenticator'))
+
+        then: "The counter can be read as an attribute"
+        ManagementFactory.platformMBeanServer.getAttribute(objectName, 'collect.status.STARTED') == 1
+
+        when: "Setting it"
+        ManagementFactory.platformMBeanServer.setAttribute(objectName, new Attribute('collect.status.STARTED', 2))
+
+        then: "It is read-only"
+        thrown(AttributeNotFoundException)
+
+        when: "Invoking an operation that there is none of"
+        ManagementFactory.platformMBeanServer.invoke(objectName, 'reset', null, null)
+
+        then: "It is not found"
+        def e = thrown(ReflectionException)
+        e.targetException instanceof NoSuchMethodException
+
+        when: "Closing the exporter"
+        exporter.close()
+
+        then: "The MBean is gone"
+        !ManagementFactory.platformMBeanServer.isRegistered(objectName)
+    }
+}
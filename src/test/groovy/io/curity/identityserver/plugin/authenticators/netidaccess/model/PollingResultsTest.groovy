@@ -0,0 +1,75 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.model
+
+import io.curity.authenticator.netid.client.CollectFaultStatus
+import io.curity.authenticator.netid.client.CollectStatus
+import io.curity.authenticator.netid.model.PollerPaths
+import io.curity.authenticator.netid.model.PollingResults
+import spock.lang.Specification
+
+class PollingResultsTest extends Specification {
+
+    static final URI AUTHENTICATION_URI = URI.create('https://localhost/authn/authentication/netid')
+
+    def "Polling results are shared between requests for the same authenticator"() {
+        when: "Getting the polling results twice"
+        def first = PollingResults.of(AUTHENTICATION_URI, PollerPaths.getDefault())
+        def second = PollingResults.of(URI.create(AUTHENTICATION_URI.toString()), PollerPaths.getDefault())
+
+        then: "The same results are used"
+        first.is(second)
+        first.pending(CollectStatus.STARTED, true).is(second.pending(CollectStatus.STARTED, true))
+        first.pending(CollectStatus.STARTED, true).viewData.is(first.pending(CollectStatus.STARTED, true).viewData)
+    }
+
+    def "Polling results contain the URLs of the poller paths"() {
+        when: "Getting the polling results for the HTTP semantic poller"
+        def results = PollingResults.of(AUTHENTICATION_URI, PollerPaths.forHttpSemanticLogic())
+
+        then: "The URLs are relative to the authentication URI"
+        results.pollUrl == "$AUTHENTICATION_URI/${PollerPaths.forHttpSemanticLogic().pollerPath}"
+        results.cancelUrl == "$AUTHENTICATION_URI/${PollerPaths.forHttpSemanticLogic().cancelPath}"
+        results.success().finishOffUrl == results.pollUrl
+        results.failed(null).redirectUrl == results.failedUrl
+    }
+
+    def "Pending results carry the message of the device in use"() {
+        given: "The polling results of an authenticator"
+        def results = PollingResults.of(AUTHENTICATION_URI, PollerPaths.getDefault())
+
+        expect: "The message depends on the device"
+        results.pending(status, true).messageId == status.sameDeviceMessageId
+        results.pending(status, false).messageId == status.otherDeviceMessageId
+        results.failed(CollectFaultStatus.USER_CANCEL).messageId == CollectFaultStatus.USER_CANCEL.messageId
+
+        where:
+        status << CollectStatus.values()
+    }
+
+    def "Busy results ask the poller to wait before polling again"() {
+        given:
+        def results = PollingResults.of(AUTHENTICATION_URI, PollerPaths.getDefault())
+
+        expect: "Only busy results carry a delay"
+        results.busy(CollectStatus.USER_SIGN, true).messageId == CollectStatus.USER_SIGN.sameDeviceMessageId
+        results.busy(CollectStatus.USER_SIGN, true).retryAfterSeconds > 0
+        results.busy(CollectStatus.USER_SIGN, true).viewData.retryAfter > 0
+        results.pending(CollectStatus.USER_SIGN, true).retryAfterSeconds == 0
+        !results.pending(CollectStatus.USER_SIGN, true).viewData.containsKey('retryAfter')
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.stub
+
+/**
+ * A failure that the stub server can inject instead of answering.
+ */
+class Fault {
+
+    enum Type {
+        /** Answer with a SOAP fault */
+        SOAP_FAULT,
+        /** Wait a long time, then close the connection without answering */
+        TIMEOUT,
+        /** Close the connection without answering */
+        RESET
+    }
+
+    final Type type
+    final String faultString
+    final long timeoutMillis
+
+    private Fault(Type type, String faultString, long timeoutMillis) {
+        this.type = type
+        this.faultString = faultString
+        this.timeoutMillis = timeoutMillis
+    }
+
+    /**
+     * @param faultString the fault string, which the plugin maps to a fault status, for example UNKNOWN_USER
+     */
+    static Fault soapFault(String faultString) {
+        return new Fault(Type.SOAP_FAULT, faultString, 0)
+    }
+
+    /**
+     * @param timeoutMillis how long to wait; the plugin gives up after 10 seconds
+     */
+    static Fault timeout(long timeoutMillis = 15_000) {
+        return new Fault(Type.TIMEOUT, null, timeoutMillis)
+    }
+
+    static Fault reset() {
+        return new Fault(Type.RESET, null, 0)
+    }
+}
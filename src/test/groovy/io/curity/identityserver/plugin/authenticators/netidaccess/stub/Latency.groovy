@@ -0,0 +1,47 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.stub
+
+import java.util.concurrent.ThreadLocalRandom
+
+/**
+ * How long the stub server takes to answer, in milliseconds.
+ */
+abstract class Latency {
+
+    static final Latency NONE = fixed(0)
+
+    abstract long sampleMillis()
+
+    static Latency fixed(long millis) {
+        return { -> millis } as Latency
+    }
+
+    static Latency uniform(long minMillis, long maxMillis) {
+        return { -> ThreadLocalRandom.current().nextLong(minMillis, maxMillis + 1) } as Latency
+    }
+
+    /**
+     * A long tail, like real network services have.
+     *
+     * @param medianMillis half of the answers are faster than this
+     * @param sigma the spread; 0.5 gives a p99 of about three times the median
+     */
+    static Latency logNormal(double medianMillis, double sigma) {
+        return { -> Math.round(medianMillis * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian())) } as Latency
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.stub
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import com.sun.net.httpserver.HttpsConfigurator
+import com.sun.net.httpserver.HttpsServer
+
+import javax.net.ssl.KeyManagerFactory
+import javax.net.ssl.SSLContext
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.security.KeyStore
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * A stand-in for the Net iD Access server, serving the operations of {@code service-server.wsdl} on localhost, for
+ * testing the plugin offline and under load.
+ * <p>
+ * Transactions follow a {@link TransactionScript} per order reference. The latency of each operation can be set, and
+ * faults can be injected with a given probability.
+ * <pre>
+ * def server = NetIdAccessStubServer.http()
+ * server.latency('Collect', Latency.logNormal(40, 0.5))
+ * server.fault('Collect', Fault.soapFault('INTERNAL_ERROR'), 0.01)
+ * server.start()
+ * // Point the plugin at server.hostName, server.port and server.path, with HTTPS disabled
+ * server.close()
+ * </pre>
+ */
+class NetIdAccessStubServer implements AutoCloseable {
+
+    static final String PATH = '/nias/ServiceServer.asmx'
+    static final List<String> OPERATIONS = ['Authenticate', 'Sign', 'Collect', 'Register'].asImmutable()
+
+    private static final String NAMESPACE = 'http://netid.secmaker.com/nias/'
+    private static final String SOAP_11 = 'http://schemas.xmlsoap.org/soap/envelope/'
+    private static final String SOAP_12 = 'http://www.w3.org/2003/05/soap-envelope'
+    private static final char[] KEY_STORE_PASSWORD = 'changeit'.toCharArray()
+
+    static {
+        // Otherwise, small answers wait for delayed acknowledgements, adding about 40 ms to each call
+        System.setProperty('sun.net.httpserver.nodelay', 'true')
+    }
+
+    private final HttpServer _server
+    private final ExecutorService _executor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat('netid-stub-%d').setDaemon(true).build())
+    private final Map<String, TransactionScript> _transactions = new ConcurrentHashMap<>()
+    private final Map<String, Latency> _latencies = new ConcurrentHashMap<>()
+    private final Map<String, List<Map.Entry<Fault, Double>>> _faults = new ConcurrentHashMap<>()
+    private final Map<String, LongAdder> _requests = new ConcurrentHashMap<>()
+    private final AtomicLong _orderRefs = new AtomicLong()
+    private volatile Closure<TransactionScript> _scriptFor = { String personalNumber -> TransactionScript.completing() }
+
+    private NetIdAccessStubServer(HttpServer server) {
+        _server = server
+        _server.createContext(PATH, this.&handle)
+        _server.executor = _executor
+        OPERATIONS.each { _requests[it] = new LongAdder() }
+    }
+
+    /**
+     * @param port the port to listen on, or 0 for any free port
+     */
+    static NetIdAccessStubServer http(int port = 0) {
+        return new NetIdAccessStubServer(HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0))
+    }
+
+    /**
+     * @param keyStore the key and certificate of the server, for example from {@link #selfSignedKeyStore()}
+     * @param port the port to listen on, or 0 for any free port
+     */
+    static NetIdAccessStubServer https(KeyStore keyStore = selfSignedKeyStore(), int port = 0) {
+        def keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.defaultAlgorithm)
+        keyManagerFactory.init(keyStore, KEY_STORE_PASSWORD)
+        def sslContext = SSLContext.getInstance('TLS')
+        sslContext.init(keyManagerFactory.keyManagers, null, null)
+
+        def server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0)
+        server.httpsConfigurator = new HttpsConfigurator(sslContext)
+
+        return new NetIdAccessStubServer(server)
+    }
+
+    /**
+     * Create a key store with a new self-signed certificate for localhost, using the keytool of the running JDK.
+     * Clients can use it as their trust store. Its password is {@code changeit}.
+     */
+    static KeyStore selfSignedKeyStore() {
+        def keyStoreFile = Files.createTempFile('netid-stub', '.p12')
+        Files.delete(keyStoreFile)
+        keyStoreFile.toFile().deleteOnExit()
+
+        def keytool = new File(System.getProperty('java.home'), 'bin/keytool').path
+        def process = new ProcessBuilder(keytool, '-genkeypair', '-alias', 'localhost', '-keyalg', 'EC',
+                '-dname', 'CN=localhost', '-ext', 'SAN=dns:localhost,ip:127.0.0.1', '-validity', '1',
+                '-storetype', 'PKCS12', '-keystore', keyStoreFile.toString(),
+                '-storepass', new String(KEY_STORE_PASSWORD))
+                .redirectErrorStream(true)
+                .start()
+        def output = process.inputStream.text
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("keytool failed: ${output}")
+        }
+
+        def keyStore = KeyStore.getInstance('PKCS12')
+        keyStoreFile.toFile().withInputStream { keyStore.load(it, KEY_STORE_PASSWORD) }
+
+        return keyStore
+    }
+
+    NetIdAccessStubServer start() {
+        _server.start()
+
+        return this
+    }
+
+    String getHostName() {
+        return 'localhost'
+    }
+
+    int getPort() {
+        return _server.address.port
+    }
+
+    String getPath() {
+        return PATH
+    }
+
+    URI getUri() {
+        return URI.create("${_server instanceof HttpsServer ? 'https' : 'http'}://localhost:${port}${PATH}")
+    }
+
+    /**
+     * @param scriptFor the script of new transactions, given the personal number they were started with, if any
+     */
+    void scriptFor(Closure<TransactionScript> scriptFor) {
+        _scriptFor = scriptFor
+    }
+
+    /**
+     * Set the script of a transaction, for example one that was started before.
+     */
+    void script(String orderRef, TransactionScript script) {
+        _transactions[orderRef] = script
+    }
+
+    void latency(String operation, Latency latency) {
+        _latencies[checked(operation)] = latency
+    }
+
+    /**
+     * Inject a fault into a share of the calls of an operation. Faults are tried in the order they were added.
+     */
+    void fault(String operation, Fault fault, double probability = 1.0d) {
+        _faults.computeIfAbsent(checked(operation)) { new CopyOnWriteArrayList<>() } << Map.entry(fault, probability)
+    }
+
+    void clearFaults() {
+        _faults.clear()
+    }
+
+    long requestCount(String operation) {
+        return _requests[checked(operation)].sum()
+    }
+
+    @Override
+    void close() {
+        _server.stop(0)
+        _executor.shutdownNow()
+    }
+
+    private void handle(HttpExchange exchange) {
+        def soapNamespace = exchange.requestHeaders.getFirst('Content-Type')?.contains('soap+xml') ? SOAP_12 : SOAP_11
+
+        try {
+            def request = exchange.requestBody.getText(StandardCharsets.UTF_8.name())
+            def operation = OPERATIONS.find { request =~ /<(?:\w+:)?${it}[\s>\/]/ }
+
+            if (!operation) {
+                respond(exchange, 500, soapNamespace, soapFault(soapNamespace, 'Unknown operation'))
+                return
+            }
+
+            _requests[operation].increment()
+            Thread.sleep(_latencies.getOrDefault(operation, Latency.NONE).sampleMillis())
+
+            def fault = _faults[operation]?.find { ThreadLocalRandom.current().nextDouble() < it.value }?.key
+            switch (fault?.type) {
+                case Fault.Type.SOAP_FAULT:
+                    respond(exchange, 500, soapNamespace, soapFault(soapNamespace, fault.faultString))
+                    return
+                case Fault.Type.TIMEOUT:
+                    Thread.sleep(fault.timeoutMillis)
+                    exchange.close()
+                    return
+                case Fault.Type.RESET:
+                    exchange.close()
+                    return
+            }
+
+            respond(exchange, 200, soapNamespace, answer(operation, request))
+        }
+        catch (StubFault e) {
+            respond(exchange, 500, soapNamespace, soapFault(soapNamespace, e.message))
+        }
+        catch (InterruptedException ignored) {
+            exchange.close()
+        }
+    }
+
+    private String answer(String operation, String request) {
+        switch (operation) {
+            case 'Authenticate':
+                return "<AuthenticateResponse xmlns=\"${NAMESPACE}\"><AuthenticateResult>${startTransaction(request)}</AuthenticateResult></AuthenticateResponse>"
+            case 'Sign':
+                return "<SignResponse xmlns=\"${NAMESPACE}\"><SignResult>${startTransaction(request)}</SignResult></SignResponse>"
+            case 'Register':
+                return "<RegisterResponse xmlns=\"${NAMESPACE}\"><RegisterResult><scheme>netid</scheme><provider><name>Net iD Access stub</name></provider></RegisterResult></RegisterResponse>"
+            default:
+                return collect(request)
+        }
+    }
+
+    private String collect(String request) {
+        def orderRef = element(request, 'orderRef')
+        def script = orderRef == null ? null : _transactions[orderRef]
+
+        if (script == null) {
+            throw new StubFault('INVALID_PARAMETERS')
+        }
+
+        def step = script.next()
+
+        if (!TransactionScript.isStatus(step)) {
+            throw new StubFault(step)
+        }
+
+        def userInfo = step == 'COMPLETE'
+                ? '<userInfo><name>Test Testsson</name><personalNumber>198212311234</personalNumber>' +
+                '<givenName>Test</givenName><surname>Testsson</surname></userInfo>' +
+                '<deviceInfo><name>Stub</name><address>127.0.0.1</address></deviceInfo>'
+                : ''
+
+        return "<CollectResponse xmlns=\"${NAMESPACE}\"><CollectResult><progressStatus>${step}</progressStatus>${userInfo}</CollectResult></CollectResponse>"
+    }
+
+    private String startTransaction(String request) {
+        def orderRef = UUID.nameUUIDFromBytes("stub-${_orderRefs.incrementAndGet()}".bytes).toString()
+        _transactions[orderRef] = _scriptFor(element(request, 'personalNumber')).copy()
+
+        return orderRef
+    }
+
+    private void respond(HttpExchange exchange, int status, String soapNamespace, String body) {
+        def envelope = "<?xml version=\"1.0\" encoding=\"utf-8\"?><soap:Envelope xmlns:soap=\"${soapNamespace}\"><soap:Body>${body}</soap:Body></soap:Envelope>"
+        def bytes = envelope.getBytes(StandardCharsets.UTF_8)
+
+        exchange.responseHeaders.set('Content-Type', soapNamespace == SOAP_12
+                ? 'application/soap+xml; charset=utf-8'
+                : 'text/xml; charset=utf-8')
+        exchange.sendResponseHeaders(status, bytes.length)
+        exchange.responseBody.withStream { it.write(bytes) }
+    }
+
+    private static String soapFault(String soapNamespace, String faultString) {
+        return soapNamespace == SOAP_12
+                ? "<soap:Fault><soap:Code><soap:Value>soap:Receiver</soap:Value></soap:Code><soap:Reason><soap:Text xml:lang=\"en\">${faultString}</soap:Text></soap:Reason></soap:Fault>"
+                : "<soap:Fault><faultcode>soap:Server</faultcode><faultstring>${faultString}</faultstring></soap:Fault>"
+    }
+
+    private static String element(String request, String name) {
+        def matcher = request =~ /<(?:\w+:)?${name}(?:\s[^>]*)?>([^<]*)</
+        return matcher.find() ? matcher.group(1) : null
+    }
+
+    private static String checked(String operation) {
+        if (!OPERATIONS.contains(operation)) {
+            throw new IllegalArgumentException("Unknown operation ${operation}, expected one of ${OPERATIONS}")
+        }
+        return operation
+    }
+
+    private static class StubFault extends RuntimeException {
+        StubFault(String faultString) {
+            super(faultString)
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.stub
+
+import com.secmaker.netid.nias.NetiDAccessServer
+import com.secmaker.netid.nias.NetiDAccessServerSoap
+import jakarta.xml.ws.BindingProvider
+import jakarta.xml.ws.WebServiceException
+import jakarta.xml.ws.soap.SOAPFaultException
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import javax.net.ssl.SSLContext
+import javax.net.ssl.TrustManagerFactory
+
+class NetIdAccessStubServerTest extends Specification {
+
+    private static final String SSL_SOCKET_FACTORY = 'com.sun.xml.ws.transport.https.client.SSLSocketFactory'
+
+    @AutoCleanup
+    def server = NetIdAccessStubServer.http().start()
+
+    def "A transaction goes through its script, one step per collect"() {
+        given:
+        def client = client()
+
+        when: "Starting a transaction and collecting until it is complete"
+        def orderRef = client.authenticate('198212311234', null, null, null)
+        def results = (1..4).collect { client.collect(orderRef) }
+
+        then: "It stays complete"
+        results*.progressStatus == ['OUTSTANDING_TRANSACTION', 'USER_SIGN', 'COMPLETE', 'COMPLETE']
+        results[2].userInfo.personalNumber == '198212311234'
+        server.requestCount('Authenticate') == 1
+        server.requestCount('Collect') == 4
+    }
+
+    def "A script can end in a failure"() {
+        given:
+        def client = client()
+        server.scriptFor { TransactionScript.of('OUTSTANDING_TRANSACTION', 'USER_CANCEL') }
+        def orderRef = client.authenticate(null, null, null, null)
+        client.collect(orderRef)
+
+        when:
+        client.collect(orderRef)
+
+        then:
+        def e = thrown(SOAPFaultException)
+        e.fault.faultString == 'USER_CANCEL'
+    }
+
+    def "Faults can be injected"() {
+        given:
+        def client = client()
+        server.fault('Authenticate', fault)
+
+        when:
+        client.authenticate(null, null, null, null)
+
+        then:
+        thrown(WebServiceException)
+
+        where:
+        fault << [Fault.soapFault('UNKNOWN_USER'), Fault.reset()]
+    }
+
+    def "Latency is added to the answers"() {
+        given:
+        def client = client()
+        server.latency('Authenticate', Latency.fixed(200))
+
+        when:
+        long start = System.nanoTime()
+        client.authenticate(null, null, null, null)
+
+        then:
+        System.nanoTime() - start >= 200_000_000
+    }
+
+    def "Transactions can be started over HTTPS"() {
+        given: "A server with a self-signed certificate, which the client trusts"
+        def keyStore = NetIdAccessStubServer.selfSignedKeyStore()
+        def httpsServer = NetIdAccessStubServer.https(keyStore).start()
+        def trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.defaultAlgorithm)
+        trustManagerFactory.init(keyStore)
+        def sslContext = SSLContext.getInstance('TLS')
+        sslContext.init(null, trustManagerFactory.trustManagers, null)
+        def client = client(httpsServer)
+        ((BindingProvider) client).requestContext[SSL_SOCKET_FACTORY] = sslContext.socketFactory
+
+        expect:
+        httpsServer.uri.scheme == 'https'
+        client.authenticate(null, null, null, null)
+
+        cleanup:
+        httpsServer?.close()
+    }
+
+    private NetiDAccessServerSoap client(NetIdAccessStubServer server = this.server) {
+        def port = new NetiDAccessServer().netiDAccessServerSoap
+        ((BindingProvider) port).requestContext[BindingProvider.ENDPOINT_ADDRESS_PROPERTY] = server.uri.toString()
+
+        return port
+    }
+}
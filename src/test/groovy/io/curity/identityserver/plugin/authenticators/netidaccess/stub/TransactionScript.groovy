@@ -0,0 +1,90 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.stub
+
+import io.curity.authenticator.netid.client.CollectStatus
+
+import javax.annotation.Nullable
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * The progress of a transaction, as reported by the stub server. Each collect moves the transaction one step ahead,
+ * and it stays at the last step. A {@link #timed(Map) timed} script moves ahead with time instead, like a user would.
+ * <p>
+ * A step is either a {@link CollectStatus}, or the fault string of a failed collect, for example USER_CANCEL.
+ */
+class TransactionScript {
+
+    private static final Set<String> STATUSES = CollectStatus.values()*.name() as Set
+
+    private final List<String> _steps
+    @Nullable
+    private final List<Long> _offsetMillis
+    private final AtomicInteger _next = new AtomicInteger()
+    private final long _startedAt = System.currentTimeMillis()
+
+    private TransactionScript(List<String> steps, @Nullable List<Long> offsetMillis = null) {
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException('A script needs at least one step')
+        }
+        _steps = steps
+        _offsetMillis = offsetMillis
+    }
+
+    static TransactionScript of(String... steps) {
+        return new TransactionScript(steps as List)
+    }
+
+    /**
+     * The usual login: the user opens the app, signs, and the transaction completes.
+     */
+    static TransactionScript completing() {
+        return of('OUTSTANDING_TRANSACTION', 'USER_SIGN', 'COMPLETE')
+    }
+
+    /**
+     * @param stepsAtMillis the steps, in order, with the number of milliseconds after the start of the transaction
+     * that each of them is reached. The first step is reported until then.
+     */
+    static TransactionScript timed(Map<String, Long> stepsAtMillis) {
+        return new TransactionScript(stepsAtMillis.keySet() as List, stepsAtMillis.values() as List)
+    }
+
+    /**
+     * @return the step of the next collect
+     */
+    String next() {
+        if (_offsetMillis == null) {
+            return _steps[Math.min(_next.getAndIncrement(), _steps.size() - 1)]
+        }
+
+        long elapsed = System.currentTimeMillis() - _startedAt
+
+        return _steps[Math.max(_offsetMillis.findLastIndexOf { it <= elapsed }, 0)]
+    }
+
+    static boolean isStatus(String step) {
+        return STATUSES.contains(step)
+    }
+
+    /**
+     * @return a new script with the same steps, which starts from the beginning
+     */
+    TransactionScript copy() {
+        return new TransactionScript(_steps, _offsetMillis)
+    }
+}
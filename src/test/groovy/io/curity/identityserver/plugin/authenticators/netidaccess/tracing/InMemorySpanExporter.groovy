@@ -0,0 +1,46 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.tracing
+
+import io.curity.authenticator.netid.tracing.Span
+import io.curity.authenticator.netid.tracing.SpanExporter
+
+import java.util.concurrent.ConcurrentLinkedQueue
+
+/**
+ * Keeps finished spans in memory.
+ */
+class InMemorySpanExporter implements SpanExporter {
+
+    private final ConcurrentLinkedQueue<Span> _spans = new ConcurrentLinkedQueue<>()
+
+    @Override
+    void export(Span span) {
+        _spans.add(span)
+    }
+
+    /**
+     * @return the finished spans, in the order they were closed
+     */
+    List<Span> getSpans() {
+        return new ArrayList<>(_spans)
+    }
+
+    void reset() {
+        _spans.clear()
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.tracing
+
+import io.curity.authenticator.netid.client.CollectResponse
+import io.curity.authenticator.netid.client.CollectStatus
+import io.curity.authenticator.netid.client.CustomPollerStatusCodes
+import io.curity.authenticator.netid.client.PollingClient
+import io.curity.authenticator.netid.client.TransactionRegistry
+import io.curity.authenticator.netid.client.WebServicePoller
+import io.curity.authenticator.netid.metrics.InMemoryMetricsRegistry
+import io.curity.authenticator.netid.metrics.NetIdAccessMetrics
+import io.curity.authenticator.netid.model.PollerPaths
+import io.curity.authenticator.netid.tracing.Span
+import io.curity.authenticator.netid.tracing.TraceContextHandler
+import io.curity.authenticator.netid.tracing.Tracer
+import io.curity.authenticator.netid.utils.Deadline
+import io.curity.authenticator.netid.utils.OrderRefs
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.InMemorySessionManager
+import io.curity.identityserver.plugin.authenticators.netidaccess.load.SdkFakes.RecordingResponse
+import jakarta.xml.ws.handler.MessageContext
+import jakarta.xml.ws.handler.soap.SOAPMessageContext
+import se.curity.identityserver.sdk.attribute.Attribute
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.ORDER_REF
+import static io.curity.authenticator.netid.PollingAuthenticatorConstants.SessionKeys.USE_SAME_DEVICE
+
+class TracerTest extends Specification {
+
+    def exporter = new InMemorySpanExporter()
+    def tracer = new Tracer(exporter)
+
+    def "Spans that are started while another is current are its children"() {
+        when: "Starting a span inside another"
+        def parent = tracer.startSpan('parent')
+        def child = tracer.startSpan('child')
+        child.close()
+        parent.close()
+
+        then: "They are in the same trace, and exported as they are closed"
+        exporter.spans*.name == ['child', 'parent']
+        child.traceId == parent.traceId
+        child.parentSpanId == parent.spanId
+        parent.parentSpanId == null
+        Span.current() == null
+    }
+
+    def "A trace can be continued on another thread"() {
+        given:
+        def call = tracer.startSpan('call')
+
+        when: "Starting a child on another thread"
+        def attempt = CompletableFuture.supplyAsync {
+            def span = tracer.startSpan('attempt', call)
+            def traceParent = Span.current().toTraceParent()
+            span.close()
+            [span, traceParent]
+        }.join()
+        call.close()
+
+        then: "It belongs to the same trace"
+        attempt[0].traceId == call.traceId
+        attempt[0].parentSpanId == call.spanId
+        attempt[1] ==~ /00-${call.traceId}-[0-9a-f]{16}-01/
+    }
+
+    def "The spans of a transaction are marked with the hash of its order reference, as are their children"() {
+        given: "A span of a request of a transaction"
+        def request = tracer.startSpan('request').setOrderRef('order-1')
+
+        when: "Starting children, on this thread and another"
+        def child = tracer.startSpan('child')
+        child.close()
+        def attempt = CompletableFuture.supplyAsync {
+            def span = tracer.startSpan('attempt', request)
+            span.close()
+            span
+        }.join()
+        request.close()
+
+        then: "All of them are marked, without the order reference itself"
+        def hash = Integer.toString(OrderRefs.hash('order-1'))
+        [request, child, attempt].every { it.attributes[Span.ORDER_REF_HASH] == hash }
+        !request.attributes.values().contains('order-1')
+    }
+
+    def "The polls of a transaction can be correlated, although each request is a trace of its own"() {
+        given: "A poller of a transaction"
+        def session = new InMemorySessionManager()
+        session.put(Attribute.of(ORDER_REF, 'order-1'))
+        session.put(Attribute.of(USE_SAME_DEVICE, false))
+        def poller = new WebServicePoller(
+                [poll          : { String orderRef, Deadline deadline = Deadline.NONE ->
+                    new CollectResponse(CollectStatus.USER_SIGN)
+                },
+                 getServiceName: { 'stub' }] as PollingClient,
+                new TransactionRegistry(), new NetIdAccessMetrics(new InMemoryMetricsRegistry()), tracer,
+                PollerPaths.getDefault(), session, SdkFakes.INFORMATION_PROVIDER, SdkFakes.EXCEPTION_FACTORY,
+                SdkFakes.UNAUTHENTICATED, CustomPollerStatusCodes.INSTANCE)
+
+        when: "It is polled by two requests"
+        2.times {
+            def request = tracer.startSpan('request')
+            poller.getAuthenticationResult(false, new RecordingResponse().response)
+            request.close()
+        }
+
+        then: "The polls are in different traces, with the same hash"
+        def polls = exporter.spans.findAll { it.name == 'netid.poll' }
+        polls.traceId.unique().size() == 2
+        polls*.attributes*.get(Span.ORDER_REF_HASH) == [Integer.toString(OrderRefs.hash('order-1'))] * 2
+    }
+
+    def "Nothing is traced by the no-op tracer"() {
+        when:
+        def span = Tracer.NOOP.startSpan('ignored')
+
+        then:
+        Span.current() == null
+
+        cleanup:
+        span.close()
+    }
+
+    def "The trace context is sent in a traceparent header"() {
+        given:
+        def context = Mock(SOAPMessageContext)
+        context.get(MessageContext.MESSAGE_OUTBOUND_PROPERTY) >> true
+        context.get(MessageContext.HTTP_REQUEST_HEADERS) >> ['SOAPAction': ['collect']]
+        def span = tracer.startSpan('call')
+
+        when:
+        new TraceContextHandler().handleMessage(context)
+
+        then:
+        1 * context.put(MessageContext.HTTP_REQUEST_HEADERS,
+                ['SOAPAction': ['collect'], 'traceparent': [span.toTraceParent()]])
+
+        cleanup:
+        span.close()
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ *  Copyright 2022 Curity AB
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.curity.identityserver.plugin.authenticators.netidaccess.utils
+
+import io.curity.authenticator.netid.utils.PersonalNumberValidator
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneOffset
+
+class PersonalNumberValidatorTest extends Specification {
+
+    def validator = new PersonalNumberValidator(Clock.fixed(Instant.parse('2026-06-15T12:00:00Z'), ZoneOffset.UTC))
+
+    def "Valid numbers are normalized to 12 digits"() {
+        expect:
+        validator.normalize(input) == normalized
+
+        where:
+        input           || normalized
+        '198112289874'  || '198112289874'
+        '19811228-9874' || '198112289874'
+        '8112289874'    || '198112289874'
+        '811228-9874'   || '198112289874'
+        ' 811228-9874 ' || '198112289874'
+        '811228+9874'   || '188112289874'
+        '2501011239'    || '202501011239'
+        '2612311239'    || '192612311239'
+        '9901011230'    || '199901011230'
+        '000229-0005'   || '200002290005'
+        '701063-2391'   || '197010632391'
+    }
+
+    def "Invalid numbers are rejected"() {
+        expect:
+        validator.normalize(input) == null
+
+        where:
+        input           | reason
+        ''              | 'empty'
+        'user@example'  | 'not digits'
+        '81122898'      | 'too short'
+        '811228*9874'   | 'unknown separator'
+        '19811228+9874' | 'plus with 12 digits'
+        '8112289875'    | 'wrong checksum'
+        '8113289873'    | 'no such month'
+        '190229-0004'   | 'no 29th of February in 2019'
+        '000229+0005'   | 'no 29th of February in 1900'
+        '202612311239'  | 'born in the future'
+    }
+}